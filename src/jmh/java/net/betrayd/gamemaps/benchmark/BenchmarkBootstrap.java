@@ -0,0 +1,126 @@
+package net.betrayd.gamemaps.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.mojang.serialization.Lifecycle;
+
+import net.betrayd.gamemaps.GameChunk;
+import net.betrayd.gamemaps.GameMap;
+import net.minecraft.Bootstrap;
+import net.minecraft.SharedConstants;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.registry.BuiltinRegistries;
+import net.minecraft.registry.Registry;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.registry.SimpleRegistry;
+import net.minecraft.registry.entry.RegistryEntry;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.biome.Biome;
+
+/**
+ * Sets up just enough of Minecraft to build game maps outside of a server, and
+ * builds synthetic maps for the benchmarks to work on.
+ */
+public final class BenchmarkBootstrap {
+
+    private static Registry<Biome> biomeRegistry;
+
+    private BenchmarkBootstrap() {
+    }
+
+    /**
+     * Bootstrap the game's static registries, and build a biome registry from
+     * the builtin biomes, as a server would when loading vanilla data.
+     *
+     * @return The biome registry.
+     */
+    public static synchronized Registry<Biome> getBiomeRegistry() {
+        if (biomeRegistry != null)
+            return biomeRegistry;
+
+        SharedConstants.createGameVersion();
+        Bootstrap.initialize();
+
+        SimpleRegistry<Biome> registry = new SimpleRegistry<>(RegistryKeys.BIOME, Lifecycle.stable());
+        BuiltinRegistries.createWrapperLookup().getWrapperOrThrow(RegistryKeys.BIOME).streamEntries()
+                .forEach(entry -> Registry.register(registry, entry.registryKey(), entry.value()));
+        registry.freeze();
+
+        biomeRegistry = registry;
+        return registry;
+    }
+
+    /**
+     * Pick a random set of block states, never including air.
+     *
+     * @param count Number of states.
+     * @param seed  Random seed.
+     * @return The states.
+     */
+    public static List<BlockState> createPalette(int count, long seed) {
+        List<BlockState> states = new ArrayList<>();
+        for (BlockState state : Block.STATE_IDS) {
+            if (!state.isAir())
+                states.add(state);
+        }
+        Collections.shuffle(states, new Random(seed));
+        return states.subList(0, Math.min(count, states.size()));
+    }
+
+    /**
+     * Create a section filled with random blocks and biomes.
+     *
+     * @param palette Block states to use.
+     * @param random  Random to pick with.
+     * @return The section.
+     */
+    public static GameChunk createSection(List<BlockState> palette, Random random) {
+        Registry<Biome> registry = getBiomeRegistry();
+        GameChunk chunk = new GameChunk(registry);
+        for (int y = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    chunk.setBlockState(x, y, z, palette.get(random.nextInt(palette.size())));
+                }
+            }
+        }
+
+        List<RegistryEntry.Reference<Biome>> biomes = registry.streamEntries().toList();
+        for (int y = 0; y < 16; y += 4) {
+            for (int z = 0; z < 16; z += 4) {
+                for (int x = 0; x < 16; x += 4) {
+                    chunk.setBiome(x, y, z, biomes.get(random.nextInt(Math.min(biomes.size(), 4))));
+                }
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Create a map of random blocks.
+     *
+     * @param size        Width and depth in chunks.
+     * @param height      Height in sections.
+     * @param paletteSize Number of distinct block states to use.
+     * @param seed        Random seed.
+     * @return The map.
+     */
+    public static GameMap createMap(int size, int height, int paletteSize, long seed) {
+        GameMap map = new GameMap(getBiomeRegistry());
+        List<BlockState> palette = createPalette(paletteSize, seed);
+        Random random = new Random(seed);
+
+        for (int x = 0; x < size; x++) {
+            for (int z = 0; z < size; z++) {
+                for (int y = 0; y < height; y++) {
+                    map.putChunk(ChunkSectionPos.from(x, y, z), createSection(palette, random));
+                }
+            }
+        }
+        return map;
+    }
+}
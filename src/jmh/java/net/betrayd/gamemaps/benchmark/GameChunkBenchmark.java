@@ -0,0 +1,89 @@
+package net.betrayd.gamemaps.benchmark;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.betrayd.gamemaps.GameChunk;
+import net.betrayd.gamemaps.GameMapTransform;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.BlockRotation;
+
+/**
+ * Per-block access to a single section.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameChunkBenchmark {
+
+    @Param({ "1", "16", "256" })
+    public int paletteSize;
+
+    private List<BlockState> palette;
+    private GameChunk chunk;
+    private GameMapTransform rotation;
+
+    @Setup
+    public void setup() {
+        palette = BenchmarkBootstrap.createPalette(paletteSize, 0);
+        chunk = BenchmarkBootstrap.createSection(palette, new Random(0));
+        rotation = GameMapTransform.of(BlockRotation.CLOCKWISE_90);
+    }
+
+    @Benchmark
+    public void readBlocks(Blackhole blackhole) {
+        for (int y = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    blackhole.consume(chunk.getBlockState(x, y, z));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void readRotatedBlocks(Blackhole blackhole) {
+        for (int y = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    blackhole.consume(rotation.getBlock(chunk, x, y, z));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public GameChunk writeBlocks() {
+        int i = 0;
+        for (int y = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    chunk.setBlockState(x, y, z, palette.get(i++ % palette.size()));
+                }
+            }
+        }
+        return chunk;
+    }
+
+    @Benchmark
+    public GameChunk copy() {
+        return chunk.copy();
+    }
+}
@@ -0,0 +1,78 @@
+package net.betrayd.gamemaps.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.betrayd.gamemaps.GameMap;
+import net.betrayd.gamemaps.GameMapTransform;
+import net.betrayd.gamemaps.world_interface.GameMapChunkGenerator;
+import net.betrayd.gamemaps.world_interface.TemplateChunkStore;
+import net.minecraft.util.BlockRotation;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.HeightLimitView;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ProtoChunk;
+import net.minecraft.world.chunk.UpgradeData;
+
+/**
+ * Noise population of a single chunk column into a fresh proto chunk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenerationBenchmark {
+
+    private static final HeightLimitView WORLD = HeightLimitView.create(-64, 384);
+
+    @Param({ "4", "16" })
+    public int height;
+
+    @Param({ "16", "256" })
+    public int paletteSize;
+
+    @Param({ "plain", "rotated", "template" })
+    public String mode;
+
+    private GameMap map;
+    private GameMapChunkGenerator generator;
+    private ChunkPos chunkPos;
+
+    @Setup
+    public void setup() {
+        map = BenchmarkBootstrap.createMap(1, height, paletteSize, 0).freeze();
+        generator = switch (mode) {
+            case "rotated" -> new GameMapChunkGenerator(map, GameMapTransform.of(BlockRotation.CLOCKWISE_180));
+            case "template" -> new GameMapChunkGenerator(map).setTemplateStore(new TemplateChunkStore(Long.MAX_VALUE));
+            default -> new GameMapChunkGenerator(map);
+        };
+
+        // Transforms move the map's one column away from the origin.
+        chunkPos = new ChunkPos(generator.getIndex().getColumnPositions().iterator().nextLong());
+
+        // Fill the template store, so only copies are measured.
+        if (generator.getTemplateStore() != null)
+            populateNoise();
+    }
+
+    @Benchmark
+    public Chunk populateNoise() {
+        ProtoChunk chunk = new ProtoChunk(chunkPos, UpgradeData.NO_UPGRADE_DATA, WORLD,
+                map.getBiomeRegistry(), null);
+        // Generation doesn't touch the noise or structure state.
+        return generator.populateNoise(Runnable::run, null, null, null, chunk).join();
+    }
+}
@@ -0,0 +1,90 @@
+package net.betrayd.gamemaps.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.betrayd.gamemaps.GameChunk;
+import net.betrayd.gamemaps.GameMap;
+import net.betrayd.gamemaps.serialization.GameMapDeserializer;
+import net.betrayd.gamemaps.serialization.GameMapSerializer;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.util.math.ChunkSectionPos;
+
+/**
+ * Encoding and decoding of single sections and of whole compressed maps.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({ "2", "8" })
+    public int size;
+
+    @Param({ "4" })
+    public int height;
+
+    @Param({ "16", "256" })
+    public int paletteSize;
+
+    private GameMapSerializer serializer;
+    private GameMapDeserializer deserializer;
+
+    private GameMap map;
+    private GameChunk section;
+    private NbtCompound sectionNbt;
+    private byte[] mapBytes;
+
+    @Setup
+    public void setup() throws IOException {
+        serializer = new GameMapSerializer();
+        deserializer = new GameMapDeserializer(BenchmarkBootstrap.getBiomeRegistry());
+
+        map = BenchmarkBootstrap.createMap(size, height, paletteSize, 0);
+        section = map.getChunk(ChunkSectionPos.from(0, 0, 0));
+        sectionNbt = serializer.serializeChunk(section);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serializeMap(map, out);
+        mapBytes = out.toByteArray();
+    }
+
+    @Benchmark
+    public NbtCompound encodeSection() {
+        return serializer.serializeChunk(section);
+    }
+
+    @Benchmark
+    public GameChunk decodeSection() {
+        return deserializer.deserializeChunk(sectionNbt);
+    }
+
+    @Benchmark
+    public byte[] saveMap() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(mapBytes.length);
+        serializer.serializeMap(map, out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public GameMap loadMap() throws IOException {
+        return deserializer.deserializeMap(new ByteArrayInputStream(mapBytes));
+    }
+}
@@ -1,5 +1,6 @@
 package net.betrayd.gamemaps;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.stream.Stream;
@@ -17,6 +18,7 @@ import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.biome.Biome;
 import net.minecraft.world.biome.BiomeKeys;
 import net.minecraft.world.biome.source.BiomeCoords;
+import net.minecraft.world.chunk.ChunkNibbleArray;
 import net.minecraft.world.chunk.PalettedContainer;
 
 public class GameChunk {
@@ -26,6 +28,13 @@ public class GameChunk {
 
     private final Map<BlockPos, NbtCompound> blockEntities = new HashMap<>();
 
+    @Nullable
+    private ChunkNibbleArray skyLight;
+    @Nullable
+    private ChunkNibbleArray blockLight;
+
+    private boolean frozen;
+
     public GameChunk(@Nullable PalettedContainer<BlockState> blockStateContainer,
             @Nullable PalettedContainer<RegistryEntry<Biome>> biomeContainer, Registry<Biome> biomeRegistry) {
 
@@ -50,8 +59,40 @@ public class GameChunk {
         this(null, null, biomeRegistry);
     }
 
+    /**
+     * Create a deep copy of this chunk. The copy is never frozen.
+     * 
+     * @return The new chunk.
+     */
+    public GameChunk copy() {
+        GameChunk copy = new GameChunk(blockStateContainer.copy(), biomeContainer.copy(), biomeRegistry);
+        blockEntities.forEach((pos, nbt) -> copy.blockEntities.put(pos, nbt.copy()));
+        if (skyLight != null)
+            copy.skyLight = skyLight.copy();
+        if (blockLight != null)
+            copy.blockLight = blockLight.copy();
+        return copy;
+    }
+
+    /**
+     * Make this chunk read-only. Any further attempts to modify it through its
+     * setters will throw an {@link IllegalStateException}. Note that the
+     * containers returned by {@link #getBlockStateContainer()} and
+     * {@link #getBiomeContainer()} must not be modified either.
+     * 
+     * @return <code>this</code>
+     */
+    public GameChunk freeze() {
+        frozen = true;
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
     public Map<BlockPos, NbtCompound> getBlockEntities() {
-        return blockEntities;
+        return frozen ? Collections.unmodifiableMap(blockEntities) : blockEntities;
     }
 
     /**
@@ -59,6 +100,7 @@ public class GameChunk {
      * @param blockEntity Block entity NBT.
      */
     public void putBlockEntity(NbtCompound blockEntity) {
+        assertMutable();
         blockEntity = blockEntity.copy();
         // Block entities are stored relative to the chunk.
         int x = blockEntity.getInt("x") & 0xF;
@@ -77,6 +119,7 @@ public class GameChunk {
     }
 
     public void putBlockEntity(BlockPos pos, NbtCompound blockEntity) {
+        assertMutable();
         assertInBounds(pos.getX());
         assertInBounds(pos.getY());
         assertInBounds(pos.getZ());
@@ -129,11 +172,15 @@ public class GameChunk {
     }
 
     public void setBlockState(int x, int y, int z, BlockState state) {
+        assertMutable();
         assertInBounds(x);
         assertInBounds(y);
         assertInBounds(z);
 
         blockStateContainer.set(x, y, z, state);
+        // Any change to the blocks may change the light.
+        skyLight = null;
+        blockLight = null;
     }
 
     public void setBlockState(BlockPos pos, BlockState state) {
@@ -158,6 +205,7 @@ public class GameChunk {
     }
 
     public void setBiome(int x, int y, int z, RegistryEntry<Biome> biome) {
+        assertMutable();
         assertInBounds(x);
         assertInBounds(y);
         assertInBounds(z);
@@ -173,6 +221,55 @@ public class GameChunk {
         return biomeRegistry;
     }
 
+    /**
+     * Get the sky light that was captured with this chunk.
+     * 
+     * @return The sky light, or <code>null</code> if none was captured or the
+     *         dimension has no sky light.
+     */
+    @Nullable
+    public ChunkNibbleArray getSkyLight() {
+        return skyLight;
+    }
+
+    /**
+     * Get the block light that was captured with this chunk.
+     * 
+     * @return The block light, or <code>null</code> if none was captured or the
+     *         chunk has been modified since.
+     */
+    @Nullable
+    public ChunkNibbleArray getBlockLight() {
+        return blockLight;
+    }
+
+    /**
+     * Check if this chunk has precomputed light that's still valid. Light is
+     * discarded whenever a block in the chunk changes.
+     * 
+     * @return If there's light data.
+     */
+    public boolean hasLight() {
+        return blockLight != null;
+    }
+
+    /**
+     * Set the precomputed light of this chunk. The arrays are not copied.
+     * 
+     * @param skyLight   Sky light, or <code>null</code> if the dimension has
+     *                   none.
+     * @param blockLight Block light, or <code>null</code> for no light data.
+     */
+    public void setLight(@Nullable ChunkNibbleArray skyLight, @Nullable ChunkNibbleArray blockLight) {
+        assertMutable();
+        this.skyLight = skyLight;
+        this.blockLight = blockLight;
+    }
+
+    protected void assertMutable() throws IllegalStateException {
+        if (frozen) throw new IllegalStateException("This game chunk is frozen.");
+    }
+
     protected static int assertInBounds(int x) throws IndexOutOfBoundsException {
         if (x < 0 || x >= 16) throw new IndexOutOfBoundsException(x);
         return x;
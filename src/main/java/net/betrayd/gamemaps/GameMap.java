@@ -2,6 +2,7 @@ package net.betrayd.gamemaps;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -31,10 +32,76 @@ public class GameMap {
     private final Collection<MapMarker> markers = new ArrayList<>();
 
     private final GameMapMeta meta = new GameMapMeta();
+
+    private boolean frozen;
     
     public GameMap(Registry<Biome> biomeRegistry) {
         this.biomeRegistry = biomeRegistry;
     }
+
+    /**
+     * Make this game map read-only. Its chunks and metadata, and the chunk,
+     * entity and marker collections, can no longer be modified, and any attempt
+     * to do so through them will throw an {@link IllegalStateException}.
+     * <p>
+     * The values they hold are shared rather than copied: block entity NBT,
+     * entity NBT, markers and the containers of chunks must not be modified
+     * either, although this isn't enforced. As long as that holds, frozen maps
+     * can be shared between threads and consumers. Use {@link #copy()} to
+     * obtain a mutable version.
+     * 
+     * @return <code>this</code>
+     */
+    public GameMap freeze() {
+        if (frozen) return this;
+        for (GameChunk chunk : chunks.values()) {
+            chunk.freeze();
+        }
+        meta.freeze();
+        frozen = true;
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Create a deep copy of this game map. The copy is never frozen, so this can
+     * be used to "fork" a frozen map.
+     * 
+     * @return The new game map.
+     */
+    public GameMap copy() {
+        GameMap copy = new GameMap(biomeRegistry);
+        copy.meta.copyFrom(meta);
+
+        chunks.forEach((pos, chunk) -> copy.chunks.put(pos, chunk.copy()));
+
+        for (GameMapEntity ent : entities) {
+            copy.entities.add(new GameMapEntity(ent.pos(), ent.nbt().copy()));
+        }
+
+        for (MapMarker marker : markers) {
+            copy.markers.add(marker.copy());
+        }
+
+        return copy;
+    }
+    
+    /**
+     * Create a rotated and/or mirrored copy of this game map. To place or
+     * generate a transformed map without copying it, pass the transform to
+     * {@link net.betrayd.gamemaps.world_interface.GameMapPlacer} or
+     * {@link net.betrayd.gamemaps.world_interface.GameMapChunkGenerator}
+     * instead.
+     * 
+     * @param transform Transform to apply.
+     * @return The new game map. Never frozen.
+     */
+    public GameMap transform(GameMapTransform transform) {
+        return transform.apply(this);
+    }
     
     public final GameMapMeta getMeta() {
         return meta;
@@ -45,7 +112,7 @@ public class GameMap {
     }
 
     public Map<ChunkSectionPos, GameChunk> getChunks() {
-        return chunks;
+        return frozen ? Collections.unmodifiableMap(chunks) : chunks;
     }
 
     @Nullable
@@ -54,17 +121,19 @@ public class GameMap {
     }
     
     public GameChunk getOrCreateChunk(ChunkSectionPos pos) {
+        assertMutable();
         return chunks.computeIfAbsent(pos, p -> new GameChunk(biomeRegistry));
     }
 
     public void putChunk(ChunkSectionPos pos, GameChunk chunk) {
+        assertMutable();
         chunks.put(pos, chunk);
     }
 
     public BlockState getBlock(int x, int y, int z) {
         ChunkSectionPos chunkPos = getChunkPos(x, y, z);
 
-        GameChunk chunk = getOrCreateChunk(chunkPos);
+        GameChunk chunk = getChunk(chunkPos);
         if (chunk == null) {
             return AIR;
         }
@@ -128,15 +197,17 @@ public class GameMap {
     }
 
     public Collection<GameMapEntity> getEntities() {
-        return entities;
+        return frozen ? Collections.unmodifiableCollection(entities) : entities;
     }
 
     public void addEntity(GameMapEntity entity) {
+        assertMutable();
         if (entity == null) return;
         entities.add(entity);
     }
 
     public GameMapEntity addEntity(Entity entity) {
+        assertMutable();
         GameMapEntity ent = GameMapEntity.fromEntity(entity);
         if (ent == null) return null;
         entities.add(ent);
@@ -144,10 +215,11 @@ public class GameMap {
     }
 
     public Collection<MapMarker> getMarkers() {
-        return markers;
+        return frozen ? Collections.unmodifiableCollection(markers) : markers;
     }
 
     public void addMarker(MapMarker mapMarker) {
+        assertMutable();
         this.markers.add(mapMarker);
     }
 
@@ -178,6 +250,10 @@ public class GameMap {
         setBiome(pos.getX(), pos.getY(), pos.getZ(), biome);
     }
 
+    private void assertMutable() throws IllegalStateException {
+        if (frozen) throw new IllegalStateException("This game map is frozen.");
+    }
+
     private static ChunkSectionPos getChunkPos(int x, int y, int z) {
         return ChunkSectionPos.from(x >> 4, y >> 4, z >> 4); // x >> 4 == x / 16
     }
@@ -22,16 +22,18 @@ public class GameMapMeta {
     }
 
     public void setDimensionType(RegistryKey<DimensionType> dimensionType) {
+        assertMutable();
         this.dimensionType = dimensionType;
     }
 
     private GameRules gameRules = new GameRules();
 
     public GameRules getGameRules() {
-        return gameRules;
+        return frozen ? gameRules.copy() : gameRules;
     }
 
     public void setGameRules(GameRules gameRules) {
+        assertMutable();
         this.gameRules = gameRules.copy();
     }
 
@@ -42,22 +44,62 @@ public class GameMapMeta {
     }
 
     public void setDayTime(long dayTime) {
+        assertMutable();
         this.dayTime = dayTime;
     }
 
     @Nullable
     private NbtCompound customData;
 
+    /**
+     * Get the custom data of this map. If the map is frozen, this returns a copy.
+     * 
+     * @return Custom NBT data.
+     */
     public NbtCompound getCustomData() {
+        if (frozen)
+            return customData != null ? customData.copy() : new NbtCompound();
         if (customData == null)
             customData = new NbtCompound();
         return customData;
     }
 
     public void removeCustomData() {
+        assertMutable();
         customData = null;
     }
 
+    private boolean frozen;
+
+    /**
+     * Make this metadata read-only. Setters will throw and mutable getters will
+     * return copies.
+     */
+    public void freeze() {
+        frozen = true;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Copy all values from another meta object into this one.
+     * 
+     * @param other Meta to copy from.
+     */
+    public void copyFrom(GameMapMeta other) {
+        assertMutable();
+        this.dimensionType = other.dimensionType;
+        this.gameRules = other.gameRules.copy();
+        this.dayTime = other.dayTime;
+        this.customData = other.customData != null ? other.customData.copy() : null;
+    }
+
+    private void assertMutable() throws IllegalStateException {
+        if (frozen) throw new IllegalStateException("This game map is frozen.");
+    }
+
     public void setFromWorld(World world) {
         setDimensionType(world.getDimensionKey());
         setGameRules(world.getGameRules());
@@ -76,6 +118,7 @@ public class GameMapMeta {
     }
 
     public void readNbt(NbtCompound nbt) {
+        assertMutable();
         if (nbt.contains("dimensionType", NbtElement.STRING_TYPE)) {
             Identifier dimensionId = new Identifier(nbt.getString("dimensionType"));
             dimensionType = RegistryKey.of(RegistryKeys.DIMENSION_TYPE, dimensionId);
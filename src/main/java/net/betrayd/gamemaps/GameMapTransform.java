@@ -0,0 +1,400 @@
+package net.betrayd.gamemaps;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.betrayd.gamemaps.map_markers.MapMarker;
+import net.minecraft.block.BlockState;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtFloat;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.registry.entry.RegistryEntry;
+import net.minecraft.util.BlockMirror;
+import net.minecraft.util.BlockRotation;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.Direction;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.chunk.ChunkNibbleArray;
+import net.minecraft.world.chunk.PalettedContainer;
+
+/**
+ * A rotation and/or mirror around the vertical axis through the map origin.
+ * Like structures, the mirror is applied first. Transforms keep section
+ * alignment: every block of a section lands in the same transformed section,
+ * so maps are transformed one whole section at a time.
+ * <p>
+ * Instances are shared, and each one caches its transformed block states, so
+ * {@link BlockState#mirror} and {@link BlockState#rotate} are only called once
+ * per state.
+ */
+public final class GameMapTransform {
+
+    private static final GameMapTransform[] INSTANCES = new GameMapTransform[BlockMirror.values().length
+            * BlockRotation.values().length];
+
+    static {
+        for (BlockMirror mirror : BlockMirror.values()) {
+            for (BlockRotation rotation : BlockRotation.values()) {
+                INSTANCES[mirror.ordinal() * BlockRotation.values().length + rotation.ordinal()]
+                        = new GameMapTransform(mirror, rotation);
+            }
+        }
+    }
+
+    public static final GameMapTransform NONE = of(BlockMirror.NONE, BlockRotation.NONE);
+
+    /**
+     * Get a transform.
+     *
+     * @param mirror   Mirror to apply first.
+     * @param rotation Rotation to apply after mirroring.
+     * @return The shared transform instance.
+     */
+    public static GameMapTransform of(BlockMirror mirror, BlockRotation rotation) {
+        return INSTANCES[mirror.ordinal() * BlockRotation.values().length + rotation.ordinal()];
+    }
+
+    public static GameMapTransform of(BlockRotation rotation) {
+        return of(BlockMirror.NONE, rotation);
+    }
+
+    public static GameMapTransform of(BlockMirror mirror) {
+        return of(mirror, BlockRotation.NONE);
+    }
+
+    private final BlockMirror mirror;
+    private final BlockRotation rotation;
+
+    private final Map<BlockState, BlockState> stateCache = new ConcurrentHashMap<>();
+
+    private GameMapTransform(BlockMirror mirror, BlockRotation rotation) {
+        this.mirror = mirror;
+        this.rotation = rotation;
+    }
+
+    public BlockMirror getMirror() {
+        return mirror;
+    }
+
+    public BlockRotation getRotation() {
+        return rotation;
+    }
+
+    public boolean isIdentity() {
+        return mirror == BlockMirror.NONE && rotation == BlockRotation.NONE;
+    }
+
+    /**
+     * Get the transform that undoes this one.
+     *
+     * @return The inverse transform.
+     */
+    public GameMapTransform inverse() {
+        // Any transform that includes a mirror is its own inverse.
+        if (mirror != BlockMirror.NONE)
+            return this;
+        return switch (rotation) {
+            case CLOCKWISE_90 -> of(BlockRotation.COUNTERCLOCKWISE_90);
+            case COUNTERCLOCKWISE_90 -> of(BlockRotation.CLOCKWISE_90);
+            default -> this;
+        };
+    }
+
+    /*
+     * Cells are flipped within [0, max] rather than around 0, so cells in
+     * [0, 16) stay within one section. Use -1 for world cells, 15 for blocks
+     * in a section and 3 for biomes in a section.
+     */
+
+    /**
+     * Transform the X coordinate of a grid cell.
+     *
+     * @param x   Cell X.
+     * @param z   Cell Z.
+     * @param max The highest cell coordinate of the grid, or -1 if the grid is
+     *            unbounded.
+     * @return Transformed cell X.
+     */
+    public int transformX(int x, int z, int max) {
+        if (mirror == BlockMirror.FRONT_BACK)
+            x = max - x;
+        else if (mirror == BlockMirror.LEFT_RIGHT)
+            z = max - z;
+
+        return switch (rotation) {
+            case NONE -> x;
+            case CLOCKWISE_90 -> max - z;
+            case CLOCKWISE_180 -> max - x;
+            case COUNTERCLOCKWISE_90 -> z;
+        };
+    }
+
+    /**
+     * Transform the Z coordinate of a grid cell.
+     *
+     * @param x   Cell X.
+     * @param z   Cell Z.
+     * @param max The highest cell coordinate of the grid, or -1 if the grid is
+     *            unbounded.
+     * @return Transformed cell Z.
+     */
+    public int transformZ(int x, int z, int max) {
+        if (mirror == BlockMirror.FRONT_BACK)
+            x = max - x;
+        else if (mirror == BlockMirror.LEFT_RIGHT)
+            z = max - z;
+
+        return switch (rotation) {
+            case NONE -> z;
+            case CLOCKWISE_90 -> x;
+            case CLOCKWISE_180 -> max - z;
+            case COUNTERCLOCKWISE_90 -> max - x;
+        };
+    }
+
+    public BlockPos apply(BlockPos pos) {
+        return new BlockPos(transformX(pos.getX(), pos.getZ(), -1), pos.getY(), transformZ(pos.getX(), pos.getZ(), -1));
+    }
+
+    public ChunkSectionPos apply(ChunkSectionPos pos) {
+        return ChunkSectionPos.from(transformX(pos.getX(), pos.getZ(), -1), pos.getY(),
+                transformZ(pos.getX(), pos.getZ(), -1));
+    }
+
+    /**
+     * Transform a block position within a section.
+     *
+     * @param pos Local position, 0-15 on each axis.
+     * @return Transformed local position.
+     */
+    public BlockPos applyLocal(BlockPos pos) {
+        return new BlockPos(transformX(pos.getX(), pos.getZ(), 15), pos.getY(), transformZ(pos.getX(), pos.getZ(), 15));
+    }
+
+    public Vec3d apply(Vec3d pos) {
+        double x = pos.x;
+        double z = pos.z;
+        if (mirror == BlockMirror.FRONT_BACK)
+            x = -x;
+        else if (mirror == BlockMirror.LEFT_RIGHT)
+            z = -z;
+
+        return switch (rotation) {
+            case NONE -> new Vec3d(x, pos.y, z);
+            case CLOCKWISE_90 -> new Vec3d(-z, pos.y, x);
+            case CLOCKWISE_180 -> new Vec3d(-x, pos.y, -z);
+            case COUNTERCLOCKWISE_90 -> new Vec3d(z, pos.y, -x);
+        };
+    }
+
+    public Direction apply(Direction direction) {
+        return rotation.rotate(mirror.apply(direction));
+    }
+
+    /**
+     * Transform a yaw angle, matching how entities are transformed in
+     * structures.
+     *
+     * @param yaw Yaw in degrees.
+     * @return Transformed yaw in degrees.
+     */
+    public float applyYaw(float yaw) {
+        yaw = MathHelper.wrapDegrees(yaw);
+        if (mirror == BlockMirror.FRONT_BACK)
+            yaw = -yaw;
+        else if (mirror == BlockMirror.LEFT_RIGHT)
+            yaw = 180 - yaw;
+
+        return MathHelper.wrapDegrees(yaw + switch (rotation) {
+            case NONE -> 0;
+            case CLOCKWISE_90 -> 90;
+            case CLOCKWISE_180 -> 180;
+            case COUNTERCLOCKWISE_90 -> 270;
+        });
+    }
+
+    /**
+     * Read a block from an untransformed chunk, as it would be in the
+     * transformed chunk.
+     *
+     * @param chunk Untransformed chunk.
+     * @param x     Local X in the transformed chunk.
+     * @param y     Local Y.
+     * @param z     Local Z in the transformed chunk.
+     * @return The transformed block state.
+     */
+    public BlockState getBlock(GameChunk chunk, int x, int y, int z) {
+        if (isIdentity())
+            return chunk.getBlockState(x, y, z);
+        GameMapTransform inverse = inverse();
+        return apply(chunk.getBlockState(inverse.transformX(x, z, 15), y, inverse.transformZ(x, z, 15)));
+    }
+
+    /**
+     * Transform a block state. Results are cached.
+     *
+     * @param state Block state.
+     * @return Transformed block state.
+     */
+    public BlockState apply(BlockState state) {
+        if (isIdentity())
+            return state;
+        return stateCache.computeIfAbsent(state, s -> s.mirror(mirror).rotate(rotation));
+    }
+
+    /**
+     * Create a transformed copy of a game chunk. Each distinct block state is
+     * transformed once, then the block, biome and light data are permuted into
+     * their new positions.
+     *
+     * @param chunk Chunk to transform.
+     * @return The transformed chunk, or a copy if this is the identity.
+     */
+    public GameChunk apply(GameChunk chunk) {
+        if (isIdentity())
+            return chunk.copy();
+
+        GameChunk result = new GameChunk(chunk.getBiomeRegistry());
+
+        PalettedContainer<BlockState> srcBlocks = chunk.getBlockStateContainer();
+        PalettedContainer<BlockState> dstBlocks = result.getBlockStateContainer();
+        // Most sections only have a handful of states, so look up the last one before going to the cache.
+        BlockState lastState = null;
+        BlockState lastTransformed = null;
+        for (int y = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    BlockState state = srcBlocks.get(x, y, z);
+                    if (state != lastState) {
+                        lastState = state;
+                        lastTransformed = apply(state);
+                    }
+                    // Not shared with anything yet, so no need to lock.
+                    dstBlocks.swapUnsafe(transformX(x, z, 15), y, transformZ(x, z, 15), lastTransformed);
+                }
+            }
+        }
+
+        PalettedContainer<RegistryEntry<Biome>> srcBiomes = chunk.getBiomeContainer();
+        PalettedContainer<RegistryEntry<Biome>> dstBiomes = result.getBiomeContainer();
+        for (int y = 0; y < 4; y++) {
+            for (int z = 0; z < 4; z++) {
+                for (int x = 0; x < 4; x++) {
+                    dstBiomes.swapUnsafe(transformX(x, z, 3), y, transformZ(x, z, 3), srcBiomes.get(x, y, z));
+                }
+            }
+        }
+
+        chunk.getBlockEntities().forEach((pos, nbt) -> result.putBlockEntity(applyLocal(pos), nbt.copy()));
+
+        if (chunk.hasLight()) {
+            ChunkNibbleArray skyLight = chunk.getSkyLight();
+            result.setLight(skyLight != null ? apply(skyLight) : null, apply(chunk.getBlockLight()));
+        }
+        return result;
+    }
+
+    /**
+     * Create a transformed copy of a section's light.
+     *
+     * @param light Light to transform.
+     * @return The transformed light.
+     */
+    public ChunkNibbleArray apply(ChunkNibbleArray light) {
+        if (isIdentity() || light.isUninitialized())
+            return light.copy();
+
+        ChunkNibbleArray result = new ChunkNibbleArray();
+        for (int y = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    result.set(transformX(x, z, 15), y, transformZ(x, z, 15), light.get(x, y, z));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Create a transformed copy of a map entity, including its rotation and the
+     * facing of hanging entities.
+     *
+     * @param entity Entity to transform.
+     * @return The transformed entity.
+     */
+    public GameMapEntity apply(GameMapEntity entity) {
+        NbtCompound nbt = entity.nbt().copy();
+        if (!isIdentity()) {
+            applyEntityNbt(nbt);
+        }
+        return new GameMapEntity(apply(entity.pos()), nbt);
+    }
+
+    private void applyEntityNbt(NbtCompound nbt) {
+        NbtList rotation = nbt.getList("Rotation", NbtElement.FLOAT_TYPE);
+        if (rotation.size() >= 2) {
+            rotation.set(0, NbtFloat.of(applyYaw(rotation.getFloat(0))));
+        }
+
+        // Item frames store a 3D direction, paintings a horizontal one.
+        if (nbt.contains("Facing", NbtElement.BYTE_TYPE)) {
+            Direction facing = Direction.byId(nbt.getByte("Facing"));
+            nbt.putByte("Facing", (byte) apply(facing).getId());
+        }
+        if (nbt.contains("facing", NbtElement.BYTE_TYPE)) {
+            Direction facing = Direction.fromHorizontal(nbt.getByte("facing"));
+            nbt.putByte("facing", (byte) apply(facing).getHorizontal());
+        }
+
+        NbtList passengers = nbt.getList("Passengers", NbtElement.COMPOUND_TYPE);
+        for (int i = 0; i < passengers.size(); i++) {
+            applyEntityNbt(passengers.getCompound(i));
+        }
+    }
+
+    /**
+     * Create a transformed copy of a map marker.
+     *
+     * @param marker Marker to transform.
+     * @return The transformed marker.
+     */
+    public MapMarker apply(MapMarker marker) {
+        MapMarker copy = marker.copy();
+        copy.setPos(apply(marker.getPos()));
+        copy.setYaw(applyYaw(marker.getYaw()));
+        return copy;
+    }
+
+    /**
+     * Create a transformed copy of a game map. Prefer transforming maps while
+     * they're placed or generated, which doesn't keep a second copy around.
+     *
+     * @param map Map to transform.
+     * @return The transformed map. Never frozen.
+     * @see GameMap#transform
+     */
+    public GameMap apply(GameMap map) {
+        GameMap result = new GameMap(map.getBiomeRegistry());
+        result.getMeta().copyFrom(map.getMeta());
+
+        map.getChunks().forEach((pos, chunk) -> result.putChunk(apply(pos), apply(chunk)));
+
+        for (GameMapEntity ent : map.getEntities()) {
+            result.addEntity(apply(ent));
+        }
+
+        for (MapMarker marker : map.getMarkers()) {
+            result.addMarker(apply(marker));
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "GameMapTransform[mirror=" + mirror + ", rotation=" + rotation + "]";
+    }
+}
@@ -91,6 +91,25 @@ public abstract class MapMarker {
         setPitch(entity.getPitch());
     }
 
+    /**
+     * Create a copy of this marker with the same type, transform and custom data.
+     * 
+     * @return The new marker.
+     */
+    public MapMarker copy() {
+        MapMarker copy = type.create();
+        NbtCompound nbt = new NbtCompound();
+        writeCustomNbt(nbt);
+        copy.readCustomNbt(nbt);
+
+        copy.setX(x);
+        copy.setY(y);
+        copy.setZ(z);
+        copy.setYaw(yaw);
+        copy.setPitch(pitch);
+        return copy;
+    }
+
     protected abstract void readCustomNbt(NbtCompound nbt);
     protected abstract void writeCustomNbt(NbtCompound nbt);
 
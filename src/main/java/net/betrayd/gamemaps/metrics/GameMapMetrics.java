@@ -0,0 +1,105 @@
+package net.betrayd.gamemaps.metrics;
+
+/**
+ * Receives timings and sizes of game map operations. All methods do nothing
+ * by default, so implementations only override what they care about. Install
+ * one with {@link MapMetrics#setListener}.
+ * <p>
+ * Methods are called from whichever thread did the work, including worldgen
+ * and executor threads, so implementations must be thread-safe and cheap.
+ *
+ * @see MetricsRecorder
+ */
+public interface GameMapMetrics {
+
+    /**
+     * A kind of operation that reports metrics.
+     */
+    public static enum Operation {
+        /**
+         * Saving a whole map to a stream. Made up of {@link #ENCODE} and
+         * {@link #WRITE}.
+         */
+        SAVE("save"),
+        /**
+         * Converting a map to NBT.
+         */
+        ENCODE("encode"),
+        /**
+         * Compressing and writing map NBT to a stream.
+         */
+        WRITE("write"),
+        /**
+         * Loading a whole map from a stream. Made up of {@link #READ} and
+         * {@link #DECODE}.
+         */
+        LOAD("load"),
+        /**
+         * Reading and decompressing map NBT from a stream.
+         */
+        READ("read"),
+        /**
+         * Converting NBT to a map.
+         */
+        DECODE("decode"),
+        /**
+         * Capturing a map from the world.
+         */
+        CAPTURE("capture"),
+        /**
+         * Placing a map into the world.
+         */
+        PLACE("place"),
+        /**
+         * Populating the blocks of one chunk from a map.
+         */
+        GENERATE("generate");
+
+        private final String name;
+
+        private Operation(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * A listener that ignores everything.
+     */
+    public static final GameMapMetrics NONE = new GameMapMetrics() {
+    };
+
+    /**
+     * Called when an operation finishes.
+     *
+     * @param operation The operation.
+     * @param nanos     How long it took. For jobs that run over several ticks,
+     *                  this is the time from their first tick until they
+     *                  finished.
+     * @param sections  Number of map sections involved.
+     * @param entities  Number of entities involved.
+     */
+    public default void onOperation(Operation operation, long nanos, int sections, int entities) {
+    }
+
+    /**
+     * Called when an operation reads or writes encoded data.
+     *
+     * @param operation The operation.
+     * @param bytes     Number of bytes, as stored.
+     */
+    public default void onBytes(Operation operation, long bytes) {
+    }
+
+    /**
+     * Called with the current length of a work queue.
+     *
+     * @param queue Name of the queue.
+     * @param depth Number of queued items.
+     */
+    public default void onQueueDepth(String queue, int depth) {
+    }
+}
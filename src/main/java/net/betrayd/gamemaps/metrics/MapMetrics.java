@@ -0,0 +1,34 @@
+package net.betrayd.gamemaps.metrics;
+
+/**
+ * Holds the {@link GameMapMetrics} listener that the library reports to.
+ */
+public final class MapMetrics {
+
+    private static volatile GameMapMetrics listener = GameMapMetrics.NONE;
+
+    private MapMetrics() {
+    }
+
+    /**
+     * Get the current metrics listener.
+     *
+     * @return The listener. {@link GameMapMetrics#NONE} if none is installed.
+     */
+    public static GameMapMetrics get() {
+        return listener;
+    }
+
+    /**
+     * Set the metrics listener. There is one listener for the whole game, as
+     * maps can be shared between servers.
+     *
+     * @param listener The listener, or {@link GameMapMetrics#NONE} to stop
+     *                 reporting.
+     */
+    public static void setListener(GameMapMetrics listener) {
+        if (listener == null)
+            throw new IllegalArgumentException("Use GameMapMetrics.NONE to remove the listener.");
+        MapMetrics.listener = listener;
+    }
+}
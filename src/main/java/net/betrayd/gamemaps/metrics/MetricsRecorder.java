@@ -0,0 +1,194 @@
+package net.betrayd.gamemaps.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link GameMapMetrics} listener that keeps running totals and duration
+ * histograms of every operation. Recording only touches striped counters, so
+ * it's cheap even from many worldgen threads at once.
+ * <p>
+ * Use {@link #snapshot()} to read everything as flat named values, for
+ * printing or for exporting to another metrics system.
+ */
+public class MetricsRecorder implements GameMapMetrics {
+
+    /**
+     * Totals and a duration histogram of one operation. Durations are bucketed
+     * by powers of two, so percentiles are accurate to within a factor of two.
+     */
+    public static class Timer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder sections = new LongAdder();
+        private final LongAdder entities = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        // Bucket i holds durations below 2^i nanoseconds.
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+        void record(long nanos, int sections, int entities) {
+            count.increment();
+            this.nanos.add(nanos);
+            this.sections.add(sections);
+            this.entities.add(entities);
+            maxNanos.accumulate(nanos);
+            buckets.incrementAndGet(Math.min(64 - Long.numberOfLeadingZeros(Math.max(nanos, 0)), 63));
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalNanos() {
+            return nanos.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        public long getSections() {
+            return sections.sum();
+        }
+
+        public long getEntities() {
+            return entities.sum();
+        }
+
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        /**
+         * Estimate a percentile of the recorded durations.
+         *
+         * @param percentile Percentile, from 0 to 1.
+         * @return The upper bound of the bucket the percentile falls in, in
+         *         nanoseconds. 0 if nothing was recorded.
+         */
+        public long getPercentileNanos(double percentile) {
+            long total = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                total += buckets.get(i);
+            }
+            if (total == 0)
+                return 0;
+
+            long rank = (long) Math.ceil(percentile * total);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank && seen > 0)
+                    return i == 0 ? 0 : i == 63 ? getMaxNanos() : Math.min((1L << i) - 1, getMaxNanos());
+            }
+            return getMaxNanos();
+        }
+
+        void reset() {
+            count.reset();
+            nanos.reset();
+            sections.reset();
+            entities.reset();
+            bytes.reset();
+            maxNanos.reset();
+            for (int i = 0; i < buckets.length(); i++) {
+                buckets.set(i, 0);
+            }
+        }
+    }
+
+    private static class QueueGauge {
+        private volatile int depth;
+        private final AtomicInteger maxDepth = new AtomicInteger();
+    }
+
+    private final Map<Operation, Timer> timers = new EnumMap<>(Operation.class);
+    private final Map<String, QueueGauge> queues = new ConcurrentHashMap<>();
+
+    public MetricsRecorder() {
+        for (Operation operation : Operation.values()) {
+            timers.put(operation, new Timer());
+        }
+    }
+
+    /**
+     * Create a recorder and install it as the metrics listener.
+     *
+     * @return The recorder.
+     */
+    public static MetricsRecorder install() {
+        MetricsRecorder recorder = new MetricsRecorder();
+        MapMetrics.setListener(recorder);
+        return recorder;
+    }
+
+    @Override
+    public void onOperation(Operation operation, long nanos, int sections, int entities) {
+        timers.get(operation).record(nanos, sections, entities);
+    }
+
+    @Override
+    public void onBytes(Operation operation, long bytes) {
+        timers.get(operation).bytes.add(bytes);
+    }
+
+    @Override
+    public void onQueueDepth(String queue, int depth) {
+        QueueGauge gauge = queues.computeIfAbsent(queue, q -> new QueueGauge());
+        gauge.depth = depth;
+        gauge.maxDepth.accumulateAndGet(depth, Math::max);
+    }
+
+    public Timer getTimer(Operation operation) {
+        return timers.get(operation);
+    }
+
+    /**
+     * Read all metrics as named values, such as <code>load.count</code>,
+     * <code>generate.p99_ns</code> or <code>queue.tick_scheduler.max</code>.
+     *
+     * @return A new map, sorted by name.
+     */
+    public SortedMap<String, Long> snapshot() {
+        SortedMap<String, Long> values = new TreeMap<>();
+        for (Map.Entry<Operation, Timer> entry : timers.entrySet()) {
+            Timer timer = entry.getValue();
+            String name = entry.getKey().getName();
+            if (timer.getCount() == 0 && timer.getBytes() == 0)
+                continue;
+
+            values.put(name + ".count", timer.getCount());
+            values.put(name + ".total_ns", timer.getTotalNanos());
+            values.put(name + ".max_ns", timer.getMaxNanos());
+            values.put(name + ".p50_ns", timer.getPercentileNanos(0.5));
+            values.put(name + ".p99_ns", timer.getPercentileNanos(0.99));
+            values.put(name + ".sections", timer.getSections());
+            values.put(name + ".entities", timer.getEntities());
+            values.put(name + ".bytes", timer.getBytes());
+        }
+        queues.forEach((name, gauge) -> {
+            values.put("queue." + name + ".depth", (long) gauge.depth);
+            values.put("queue." + name + ".max", (long) gauge.maxDepth.get());
+        });
+        return values;
+    }
+
+    /**
+     * Clear all totals, histograms and queue maximums.
+     */
+    public void reset() {
+        for (Timer timer : timers.values()) {
+            timer.reset();
+        }
+        queues.clear();
+    }
+}
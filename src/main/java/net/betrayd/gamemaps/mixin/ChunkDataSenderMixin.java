@@ -0,0 +1,24 @@
+package net.betrayd.gamemaps.mixin;
+
+import java.util.BitSet;
+
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Redirect;
+
+import net.betrayd.gamemaps.world_interface.ChunkPacketCache;
+import net.minecraft.network.packet.s2c.play.ChunkDataS2CPacket;
+import net.minecraft.server.network.ChunkDataSender;
+import net.minecraft.world.chunk.WorldChunk;
+import net.minecraft.world.chunk.light.LightingProvider;
+
+@Mixin(ChunkDataSender.class)
+public class ChunkDataSenderMixin {
+
+    @Redirect(method = "sendChunkPacket", at = @At(value = "NEW",
+            target = "net/minecraft/network/packet/s2c/play/ChunkDataS2CPacket"))
+    private static ChunkDataS2CPacket gamemaps$getCachedPacket(WorldChunk chunk, LightingProvider lighting,
+            BitSet skyBits, BitSet blockBits) {
+        return ChunkPacketCache.getPacket(chunk, lighting);
+    }
+}
@@ -0,0 +1,27 @@
+package net.betrayd.gamemaps.mixin;
+
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import net.betrayd.gamemaps.world_interface.ChunkPacketCache;
+import net.minecraft.server.world.ChunkHolder;
+import net.minecraft.world.LightType;
+import net.minecraft.world.chunk.WorldChunk;
+
+@Mixin(ChunkHolder.class)
+public abstract class ChunkHolderMixin {
+
+    @Shadow
+    public abstract WorldChunk getWorldChunk();
+
+    // Light changes spill into neighboring chunks, which are all reported here.
+    @Inject(method = "markForLightUpdate", at = @At("HEAD"))
+    private void gamemaps$onLightUpdate(LightType lightType, int y, CallbackInfo ci) {
+        WorldChunk chunk = getWorldChunk();
+        if (chunk != null)
+            ChunkPacketCache.invalidate(chunk);
+    }
+}
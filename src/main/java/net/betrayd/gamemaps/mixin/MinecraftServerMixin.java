@@ -0,0 +1,25 @@
+package net.betrayd.gamemaps.mixin;
+
+import java.util.function.BooleanSupplier;
+
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import net.betrayd.gamemaps.scheduling.TickScheduler;
+import net.minecraft.server.MinecraftServer;
+
+@Mixin(MinecraftServer.class)
+public class MinecraftServerMixin {
+
+    @Inject(method = "tick", at = @At("TAIL"))
+    private void gamemaps$onTick(BooleanSupplier shouldKeepTicking, CallbackInfo ci) {
+        TickScheduler.tickServer((MinecraftServer) (Object) this);
+    }
+
+    @Inject(method = "shutdown", at = @At("HEAD"))
+    private void gamemaps$onShutdown(CallbackInfo ci) {
+        TickScheduler.shutdownServer((MinecraftServer) (Object) this);
+    }
+}
@@ -0,0 +1,26 @@
+package net.betrayd.gamemaps.mixin;
+
+import org.jetbrains.annotations.Nullable;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+
+import net.betrayd.gamemaps.world_interface.PrecomputedLight;
+import net.minecraft.world.chunk.ProtoChunk;
+
+@Mixin(ProtoChunk.class)
+public abstract class ProtoChunkMixin implements PrecomputedLight.Holder {
+
+    @Unique
+    @Nullable
+    private volatile PrecomputedLight gamemaps$precomputedLight;
+
+    @Override
+    public PrecomputedLight gamemaps$getPrecomputedLight() {
+        return gamemaps$precomputedLight;
+    }
+
+    @Override
+    public void gamemaps$setPrecomputedLight(PrecomputedLight light) {
+        this.gamemaps$precomputedLight = light;
+    }
+}
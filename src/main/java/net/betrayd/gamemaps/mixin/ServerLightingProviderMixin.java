@@ -0,0 +1,34 @@
+package net.betrayd.gamemaps.mixin;
+
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.ModifyVariable;
+
+import net.betrayd.gamemaps.world_interface.PrecomputedLight;
+import net.minecraft.server.world.ServerLightingProvider;
+import net.minecraft.world.chunk.Chunk;
+
+@Mixin(ServerLightingProvider.class)
+public class ServerLightingProviderMixin {
+
+    // Treat chunks with precomputed light like chunks that were loaded lit.
+    @ModifyVariable(method = "initializeLight", at = @At("HEAD"), argsOnly = true)
+    private boolean gamemaps$initializePrecomputedLight(boolean lightOn, Chunk chunk) {
+        if (chunk instanceof PrecomputedLight.Holder holder) {
+            PrecomputedLight light = holder.gamemaps$getPrecomputedLight();
+            if (light != null) {
+                if (!light.isEnqueued())
+                    light.enqueue((ServerLightingProvider) (Object) this, chunk.getPos());
+                return true;
+            }
+        }
+        return lightOn;
+    }
+
+    @ModifyVariable(method = "light", at = @At("HEAD"), argsOnly = true)
+    private boolean gamemaps$skipPrecomputedLight(boolean excludeBlocks, Chunk chunk) {
+        if (chunk instanceof PrecomputedLight.Holder holder && holder.gamemaps$getPrecomputedLight() != null)
+            return true;
+        return excludeBlocks;
+    }
+}
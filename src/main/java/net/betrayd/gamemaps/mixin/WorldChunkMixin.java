@@ -0,0 +1,74 @@
+package net.betrayd.gamemaps.mixin;
+
+import org.jetbrains.annotations.Nullable;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+import net.betrayd.gamemaps.world_interface.ChunkPacketCache;
+import net.betrayd.gamemaps.world_interface.DirtySectionTracker;
+import net.betrayd.gamemaps.world_interface.DirtyTrackingWorld;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.WorldChunk;
+
+@Mixin(WorldChunk.class)
+public abstract class WorldChunkMixin implements ChunkPacketCache.CachedChunk {
+
+    @Unique
+    @Nullable
+    private ChunkPacketCache.CachedPacket gamemaps$cachedPacket;
+
+    @Override
+    public ChunkPacketCache.CachedPacket gamemaps$getCachedPacket() {
+        return gamemaps$cachedPacket;
+    }
+
+    @Override
+    public void gamemaps$setCachedPacket(ChunkPacketCache.CachedPacket packet) {
+        this.gamemaps$cachedPacket = packet;
+    }
+
+    @Shadow
+    public abstract World getWorld();
+
+    @Shadow
+    public abstract BlockState getBlockState(BlockPos pos);
+
+    @Inject(method = "setBlockState", at = @At("HEAD"))
+    private void gamemaps$beforeSetBlockState(BlockPos pos, BlockState state, boolean moved,
+            CallbackInfoReturnable<BlockState> cir) {
+        // Only snapshots care about the old state, so skip the lookup when there are none.
+        DirtySectionTracker tracker = ((DirtyTrackingWorld) getWorld()).gamemaps$getDirtyTracker();
+        if (tracker != null && tracker.hasSnapshots() && getBlockState(pos) != state)
+            tracker.beforeBlockChange(pos);
+    }
+
+    @Inject(method = "setBlockState", at = @At("RETURN"))
+    private void gamemaps$onSetBlockState(BlockPos pos, BlockState state, boolean moved,
+            CallbackInfoReturnable<BlockState> cir) {
+        // A null return means nothing changed.
+        if (cir.getReturnValue() != null) {
+            DirtySectionTracker.markDirty(getWorld(), pos);
+            gamemaps$cachedPacket = null;
+        }
+    }
+
+    @Inject(method = "setBlockEntity", at = @At("TAIL"))
+    private void gamemaps$onSetBlockEntity(BlockEntity blockEntity, CallbackInfo ci) {
+        DirtySectionTracker.markDirty(getWorld(), blockEntity.getPos());
+        gamemaps$cachedPacket = null;
+    }
+
+    @Inject(method = "removeBlockEntity", at = @At("HEAD"))
+    private void gamemaps$onRemoveBlockEntity(BlockPos pos, CallbackInfo ci) {
+        DirtySectionTracker.markDirty(getWorld(), pos);
+        gamemaps$cachedPacket = null;
+    }
+}
@@ -0,0 +1,55 @@
+package net.betrayd.gamemaps.mixin;
+
+import org.jetbrains.annotations.Nullable;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import net.betrayd.gamemaps.world_interface.ChunkPacketCache;
+import net.betrayd.gamemaps.world_interface.DirtySectionTracker;
+import net.betrayd.gamemaps.world_interface.DirtyTrackingWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+@Mixin(World.class)
+public abstract class WorldMixin implements DirtyTrackingWorld, ChunkPacketCache.CachingWorld {
+
+    @Unique
+    @Nullable
+    private DirtySectionTracker gamemaps$dirtyTracker;
+
+    @Unique
+    @Nullable
+    private ChunkPacketCache gamemaps$packetCache;
+
+    @Override
+    public DirtySectionTracker gamemaps$getDirtyTracker() {
+        return gamemaps$dirtyTracker;
+    }
+
+    @Override
+    public void gamemaps$setDirtyTracker(DirtySectionTracker tracker) {
+        this.gamemaps$dirtyTracker = tracker;
+    }
+
+    @Override
+    public ChunkPacketCache gamemaps$getPacketCache() {
+        return gamemaps$packetCache;
+    }
+
+    @Override
+    public void gamemaps$setPacketCache(ChunkPacketCache cache) {
+        this.gamemaps$packetCache = cache;
+    }
+
+    // Block entities call this when their data changes.
+    @Inject(method = "markDirty", at = @At("HEAD"))
+    private void gamemaps$onMarkDirty(BlockPos pos, CallbackInfo ci) {
+        if (gamemaps$dirtyTracker != null)
+            gamemaps$dirtyTracker.markDirty(pos);
+        if (gamemaps$packetCache != null)
+            ChunkPacketCache.invalidate((World) (Object) this, pos);
+    }
+}
@@ -0,0 +1,191 @@
+package net.betrayd.gamemaps.scheduling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.betrayd.gamemaps.metrics.MapMetrics;
+import net.minecraft.server.MinecraftServer;
+
+/**
+ * Runs {@link TickedJob}s at the end of every server tick, limited to a time
+ * budget per tick that's shared fairly between jobs. Jobs may only be
+ * submitted from the server thread.
+ */
+public class TickScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TickScheduler.class);
+
+    private static final Map<MinecraftServer, TickScheduler> SCHEDULERS = new WeakHashMap<>();
+
+    /**
+     * The default time budget per tick, in nanoseconds.
+     */
+    public static final long DEFAULT_BUDGET = 10_000_000;
+
+    /**
+     * Get the tick scheduler of a server, creating it if it doesn't exist.
+     *
+     * @param server The server.
+     * @return The tick scheduler.
+     */
+    public static synchronized TickScheduler get(MinecraftServer server) {
+        return SCHEDULERS.computeIfAbsent(server, TickScheduler::new);
+    }
+
+    /**
+     * Tick the scheduler of a server if it has one. Called at the end of every
+     * server tick.
+     *
+     * @param server The server.
+     */
+    public static void tickServer(MinecraftServer server) {
+        TickScheduler scheduler;
+        synchronized (TickScheduler.class) {
+            scheduler = SCHEDULERS.get(server);
+        }
+        if (scheduler != null)
+            scheduler.tick();
+    }
+
+    /**
+     * Cancel all jobs of a server's scheduler and remove it.
+     *
+     * @param server The server.
+     */
+    public static void shutdownServer(MinecraftServer server) {
+        TickScheduler scheduler;
+        synchronized (TickScheduler.class) {
+            scheduler = SCHEDULERS.remove(server);
+        }
+        if (scheduler != null)
+            scheduler.cancelAll();
+    }
+
+    private final MinecraftServer server;
+    private final List<TickedJob> jobs = new ArrayList<>();
+
+    private long budget = DEFAULT_BUDGET;
+    private int tickCount;
+
+    private TickScheduler(MinecraftServer server) {
+        this.server = server;
+    }
+
+    public MinecraftServer getServer() {
+        return server;
+    }
+
+    /**
+     * Get the total amount of time jobs may take each tick.
+     *
+     * @return Time budget in nanoseconds.
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Set the total amount of time jobs may take each tick.
+     *
+     * @param budget Time budget in nanoseconds.
+     */
+    public void setBudget(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Add a job to this scheduler. It will start ticking at the end of the
+     * current tick.
+     *
+     * @param job Job to add.
+     * @return <code>job</code>
+     */
+    public <T extends TickedJob> T submit(T job) {
+        assertOnServerThread();
+        jobs.add(job);
+        return job;
+    }
+
+    /**
+     * Remove a job from this scheduler, cancelling it.
+     *
+     * @param job Job to remove.
+     * @return If the job was found.
+     */
+    public boolean cancel(TickedJob job) {
+        assertOnServerThread();
+        if (jobs.remove(job)) {
+            job.cancel();
+            return true;
+        }
+        return false;
+    }
+
+    public int getQueueSize() {
+        return jobs.size();
+    }
+
+    public List<TickedJob> getJobs() {
+        return List.copyOf(jobs);
+    }
+
+    /**
+     * Tick all jobs. The budget is split evenly between jobs, with time left
+     * over by one job going to the ones after it. The job that goes first
+     * rotates every tick so no job is starved.
+     */
+    protected void tick() {
+        MapMetrics.get().onQueueDepth("tick_scheduler", jobs.size());
+        if (jobs.isEmpty())
+            return;
+
+        long endTime = System.nanoTime() + budget;
+
+        // Jobs may submit more jobs while ticking; those start next tick.
+        List<TickedJob> toTick = new ArrayList<>(jobs);
+        int start = Math.floorMod(tickCount++, toTick.size());
+
+        for (int i = 0; i < toTick.size(); i++) {
+            long now = System.nanoTime();
+            if (now >= endTime)
+                break;
+
+            TickedJob job = toTick.get((start + i) % toTick.size());
+            long deadline = now + (endTime - now) / (toTick.size() - i);
+            if (runJob(job, deadline)) {
+                jobs.remove(job);
+            }
+        }
+    }
+
+    /**
+     * Tick a single job, removing it if it throws.
+     *
+     * @return If the job should be removed.
+     */
+    protected final boolean runJob(TickedJob job, long deadline) {
+        try {
+            return job.tick(deadline);
+        } catch (Exception e) {
+            LOGGER.error("Error ticking job " + job, e);
+            job.cancel();
+            return true;
+        }
+    }
+
+    protected void cancelAll() {
+        for (TickedJob job : jobs) {
+            job.cancel();
+        }
+        jobs.clear();
+    }
+
+    private void assertOnServerThread() {
+        if (!server.isOnThread())
+            throw new IllegalStateException("Tick scheduler may only be accessed from the server thread.");
+    }
+}
@@ -0,0 +1,26 @@
+package net.betrayd.gamemaps.scheduling;
+
+/**
+ * A long-running job that is performed a little bit at a time on the server
+ * thread, as part of a {@link TickScheduler}.
+ */
+public interface TickedJob {
+
+    /**
+     * Perform a portion of this job's work. Implementations should return as
+     * soon as possible once <code>deadline</code> has passed.
+     *
+     * @param deadline The {@link System#nanoTime()} by which this job should
+     *                 yield.
+     * @return <code>true</code> if the job is finished and should be removed from
+     *         the scheduler.
+     */
+    public boolean tick(long deadline);
+
+    /**
+     * Called if this job is removed from the scheduler before it finished, for
+     * instance because the server is shutting down.
+     */
+    public default void cancel() {
+    }
+}
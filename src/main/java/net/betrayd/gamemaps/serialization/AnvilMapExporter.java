@@ -0,0 +1,290 @@
+package net.betrayd.gamemaps.serialization;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mojang.serialization.Codec;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.betrayd.gamemaps.GameChunk;
+import net.betrayd.gamemaps.GameMap;
+import net.betrayd.gamemaps.GameMapEntity;
+import net.minecraft.SharedConstants;
+import net.minecraft.block.BlockState;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.registry.Registry;
+import net.minecraft.registry.entry.RegistryEntry;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.Vec3i;
+import net.minecraft.world.HeightLimitView;
+import net.minecraft.world.Heightmap;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.biome.BiomeKeys;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.PalettedContainer;
+import net.minecraft.world.chunk.ProtoChunk;
+import net.minecraft.world.chunk.UpgradeData;
+import net.minecraft.world.storage.RegionFile;
+
+/**
+ * Writes a game map directly into vanilla Anvil region files, producing a
+ * world that can be opened without any worldgen. Chunks are written with full
+ * status, so the server only has to light them on load. Runs offline; no world
+ * or server is required.
+ */
+public class AnvilMapExporter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AnvilMapExporter.class);
+
+    private static final EnumSet<Heightmap.Type> HEIGHTMAPS = EnumSet.of(Heightmap.Type.WORLD_SURFACE,
+            Heightmap.Type.OCEAN_FLOOR, Heightmap.Type.MOTION_BLOCKING, Heightmap.Type.MOTION_BLOCKING_NO_LEAVES);
+
+    private final HeightLimitView heightLimit;
+    private final Registry<Biome> biomeRegistry;
+
+    private Vec3i sectionOffset = Vec3i.ZERO;
+
+    /**
+     * Create an Anvil exporter.
+     *
+     * @param heightLimit   Height limits of the dimension the region files will
+     *                      be loaded into. Sections outside of this range are
+     *                      dropped.
+     * @param biomeRegistry Biome registry.
+     */
+    public AnvilMapExporter(HeightLimitView heightLimit, Registry<Biome> biomeRegistry) {
+        this.heightLimit = heightLimit;
+        this.biomeRegistry = biomeRegistry;
+    }
+
+    public Vec3i getSectionOffset() {
+        return sectionOffset;
+    }
+
+    /**
+     * Set an offset to apply to the map when exporting, in chunk sections.
+     *
+     * @param sectionOffset Section offset.
+     * @return <code>this</code>
+     */
+    public AnvilMapExporter setSectionOffset(Vec3i sectionOffset) {
+        this.sectionOffset = sectionOffset;
+        return this;
+    }
+
+    /**
+     * Export a game map into a dimension directory. Chunk data is written to
+     * <code>region/</code> and entities to <code>entities/</code>. Existing
+     * chunks at the same positions are overwritten.
+     *
+     * @param map          Map to export.
+     * @param dimensionDir Dimension save directory.
+     * @param executor     Executor to write regions on. Each region file is
+     *                     written by a separate task.
+     * @return A future that completes when all regions have been written.
+     */
+    public CompletableFuture<Void> export(GameMap map, Path dimensionDir, Executor executor) {
+        Path regionDir = dimensionDir.resolve("region");
+        Path entityDir = dimensionDir.resolve("entities");
+
+        // Group chunk columns by region so each region file has a single writer.
+        Long2ObjectMap<Long2ObjectMap<GameChunk[]>> regions = new Long2ObjectOpenHashMap<>();
+        int dropped = 0;
+
+        int bottomSection = heightLimit.getBottomSectionCoord();
+        int sectionCount = heightLimit.countVerticalSections();
+
+        for (Map.Entry<ChunkSectionPos, GameChunk> entry : map.getChunks().entrySet()) {
+            ChunkSectionPos pos = entry.getKey();
+            int x = pos.getX() + sectionOffset.getX();
+            int y = pos.getY() + sectionOffset.getY();
+            int z = pos.getZ() + sectionOffset.getZ();
+
+            int index = y - bottomSection;
+            if (index < 0 || index >= sectionCount) {
+                dropped++;
+                continue;
+            }
+
+            regions.computeIfAbsent(ChunkPos.toLong(x >> 5, z >> 5), l -> new Long2ObjectOpenHashMap<>())
+                    .computeIfAbsent(ChunkPos.toLong(x, z), l -> new GameChunk[sectionCount])[index] = entry.getValue();
+        }
+
+        if (dropped > 0) {
+            LOGGER.warn("{} section(s) were outside the height limit and were not exported.", dropped);
+        }
+
+        Long2ObjectMap<Long2ObjectMap<List<NbtCompound>>> entities = new Long2ObjectOpenHashMap<>();
+        Vec3i blockOffset = new Vec3i(sectionOffset.getX() << 4, sectionOffset.getY() << 4, sectionOffset.getZ() << 4);
+        for (GameMapEntity ent : map.getEntities()) {
+            GameMapEntity offset = ent.withPos(ent.pos().add(blockOffset.getX(), blockOffset.getY(), blockOffset.getZ()));
+            BlockPos blockPos = BlockPos.ofFloored(offset.pos());
+            int x = blockPos.getX() >> 4;
+            int z = blockPos.getZ() >> 4;
+
+            entities.computeIfAbsent(ChunkPos.toLong(x >> 5, z >> 5), l -> new Long2ObjectOpenHashMap<>())
+                    .computeIfAbsent(ChunkPos.toLong(x, z), l -> new ArrayList<>()).add(offset.createEntityNbt());
+        }
+
+        try {
+            Files.createDirectories(regionDir);
+            Files.createDirectories(entityDir);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        List<CompletableFuture<?>> futures = new ArrayList<>(regions.size() + entities.size());
+        for (var region : regions.long2ObjectEntrySet()) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                writeRegion(regionDir, region.getLongKey(), region.getValue());
+            }, executor));
+        }
+
+        for (var region : entities.long2ObjectEntrySet()) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                writeEntityRegion(entityDir, region.getLongKey(), region.getValue());
+            }, executor));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new));
+    }
+
+    private void writeRegion(Path regionDir, long regionKey, Long2ObjectMap<GameChunk[]> columns) {
+        Path file = regionDir.resolve(getRegionFileName(regionKey));
+        try (RegionFile regionFile = new RegionFile(file, regionDir, false)) {
+            for (var column : columns.long2ObjectEntrySet()) {
+                ChunkPos chunkPos = new ChunkPos(column.getLongKey());
+                NbtCompound nbt = serializeChunk(chunkPos, column.getValue());
+
+                try (DataOutputStream out = regionFile.getChunkOutputStream(chunkPos)) {
+                    NbtIo.write(nbt, out);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing region file " + file, e);
+        }
+    }
+
+    private void writeEntityRegion(Path entityDir, long regionKey, Long2ObjectMap<List<NbtCompound>> chunks) {
+        Path file = entityDir.resolve(getRegionFileName(regionKey));
+        try (RegionFile regionFile = new RegionFile(file, entityDir, false)) {
+            for (var chunk : chunks.long2ObjectEntrySet()) {
+                ChunkPos chunkPos = new ChunkPos(chunk.getLongKey());
+
+                NbtCompound nbt = new NbtCompound();
+                nbt.putInt("DataVersion", SharedConstants.getGameVersion().getSaveVersion().getId());
+                nbt.putIntArray("Position", new int[] { chunkPos.x, chunkPos.z });
+
+                NbtList list = new NbtList();
+                list.addAll(chunk.getValue());
+                nbt.put("Entities", list);
+
+                try (DataOutputStream out = regionFile.getChunkOutputStream(chunkPos)) {
+                    NbtIo.write(nbt, out);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing entity region file " + file, e);
+        }
+    }
+
+    /**
+     * Serialize a chunk column into the vanilla chunk format.
+     *
+     * @param chunkPos Position of the chunk in the target world.
+     * @param column   Game chunks in the column, indexed by section index of the
+     *                 target world. Elements may be null.
+     * @return Chunk NBT.
+     */
+    protected NbtCompound serializeChunk(ChunkPos chunkPos, GameChunk[] column) {
+        Codec<PalettedContainer<RegistryEntry<Biome>>> biomeCodec = GameMapSerializer.createBiomeCodec(biomeRegistry);
+        RegistryEntry<Biome> voidBiome = biomeRegistry.entryOf(BiomeKeys.THE_VOID);
+
+        // A proto chunk is used as scratch space to compute the heightmaps.
+        ProtoChunk chunk = new ProtoChunk(chunkPos, UpgradeData.NO_UPGRADE_DATA, heightLimit, biomeRegistry, null);
+        ChunkSection[] sections = chunk.getSectionArray();
+
+        NbtCompound nbt = new NbtCompound();
+        nbt.putInt("DataVersion", SharedConstants.getGameVersion().getSaveVersion().getId());
+        nbt.putInt("xPos", chunkPos.x);
+        nbt.putInt("yPos", heightLimit.getBottomSectionCoord());
+        nbt.putInt("zPos", chunkPos.z);
+        nbt.putLong("LastUpdate", 0);
+        nbt.putLong("InhabitedTime", 0);
+        nbt.putString("Status", "minecraft:full");
+        nbt.putBoolean("isLightOn", false);
+
+        NbtList sectionList = new NbtList();
+        NbtList blockEntities = new NbtList();
+
+        for (int i = 0; i < sections.length; i++) {
+            GameChunk gameChunk = column[i];
+            int sectionY = heightLimit.sectionIndexToCoord(i);
+
+            PalettedContainer<BlockState> blocks;
+            PalettedContainer<RegistryEntry<Biome>> biomes;
+            if (gameChunk != null) {
+                blocks = gameChunk.getBlockStateContainer();
+                biomes = gameChunk.getBiomeContainer();
+                sections[i] = new ChunkSection(blocks.copy(), biomes);
+            } else {
+                blocks = sections[i].getBlockStateContainer();
+                biomes = new PalettedContainer<>(biomeRegistry.getIndexedEntries(), voidBiome,
+                        PalettedContainer.PaletteProvider.BIOME);
+            }
+
+            NbtCompound sectionNbt = new NbtCompound();
+            sectionNbt.putByte("Y", (byte) sectionY);
+            sectionNbt.put("block_states", GameMapSerializer.BLOCK_CODEC.encodeStart(NbtOps.INSTANCE, blocks)
+                    .getOrThrow(false, LOGGER::error));
+            sectionNbt.put("biomes", biomeCodec.encodeStart(NbtOps.INSTANCE, biomes)
+                    .getOrThrow(false, LOGGER::error));
+            sectionList.add(sectionNbt);
+
+            if (gameChunk != null) {
+                BlockPos origin = ChunkSectionPos.from(chunkPos, sectionY).getMinPos();
+                gameChunk.getBlockEntities().forEach((pos, beNbt) -> {
+                    BlockPos globalPos = origin.add(pos);
+                    NbtCompound copy = beNbt.copy();
+                    copy.putInt("x", globalPos.getX());
+                    copy.putInt("y", globalPos.getY());
+                    copy.putInt("z", globalPos.getZ());
+                    blockEntities.add(copy);
+                });
+            }
+        }
+
+        nbt.put("sections", sectionList);
+        nbt.put("block_entities", blockEntities);
+
+        Heightmap.populateHeightmaps(chunk, HEIGHTMAPS);
+        NbtCompound heightmaps = new NbtCompound();
+        for (Heightmap.Type type : HEIGHTMAPS) {
+            heightmaps.putLongArray(type.getName(), chunk.getHeightmap(type).asLongArray());
+        }
+        nbt.put("Heightmaps", heightmaps);
+
+        return nbt;
+    }
+
+    private static String getRegionFileName(long regionKey) {
+        return "r." + ChunkPos.getPackedX(regionKey) + "." + ChunkPos.getPackedZ(regionKey) + ".mca";
+    }
+}
@@ -0,0 +1,360 @@
+package net.betrayd.gamemaps.serialization;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mojang.serialization.Codec;
+
+import net.betrayd.gamemaps.GameChunk;
+import net.betrayd.gamemaps.GameMap;
+import net.betrayd.gamemaps.GameMapEntity;
+import net.betrayd.gamemaps.world_interface.CaptureOptions;
+import net.betrayd.gamemaps.world_interface.WorldAlignedMapCapture;
+import net.minecraft.SharedConstants;
+import net.minecraft.block.BlockState;
+import net.minecraft.datafixer.DataFixTypes;
+import net.minecraft.datafixer.Schemas;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtHelper;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.registry.Registry;
+import net.minecraft.registry.entry.RegistryEntry;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.chunk.ChunkNibbleArray;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.PalettedContainer;
+import net.minecraft.world.storage.RegionFile;
+
+/**
+ * Reads a game map straight out of the Anvil region files of a world save,
+ * without loading the world. Produces the same map as
+ * {@link WorldAlignedMapCapture} would on the same box, but needs no running
+ * server, so it can convert large worlds in a batch job. Only fully generated
+ * chunks are read; chunks from older versions are run through the data fixer.
+ * <p>
+ * The map's meta is left at its defaults, as it lives in
+ * <code>level.dat</code> rather than the region files.
+ */
+public class AnvilMapImporter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AnvilMapImporter.class);
+
+    private final Registry<Biome> biomeRegistry;
+
+    private final List<Function<GameMapEntity, GameMapEntity>> entityFilters = new ArrayList<>();
+    private final List<Function<NbtCompound, NbtCompound>> blockEntityFilters = new ArrayList<>();
+
+    @Nullable
+    private CaptureOptions options;
+
+    public AnvilMapImporter(Registry<Biome> biomeRegistry) {
+        this.biomeRegistry = biomeRegistry;
+    }
+
+    public Registry<Biome> getBiomeRegistry() {
+        return biomeRegistry;
+    }
+
+    /**
+     * Get the filters that are applied to every entity that's read. As there's
+     * no world to load them into, these operate on entity NBT rather than
+     * {@link net.betrayd.gamemaps.EntityFilter}'s live entities. Filters are
+     * called from worker threads.
+     *
+     * @return A mutable list of entity filters.
+     */
+    public List<Function<GameMapEntity, GameMapEntity>> getEntityFilters() {
+        return entityFilters;
+    }
+
+    public List<Function<NbtCompound, NbtCompound>> getBlockEntityFilters() {
+        return blockEntityFilters;
+    }
+
+    @Nullable
+    public CaptureOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Set the options deciding which sections to keep.
+     *
+     * @param options Capture options. <code>null</code> keeps all sections.
+     * @return <code>this</code>
+     */
+    public AnvilMapImporter setOptions(@Nullable CaptureOptions options) {
+        this.options = options;
+        return this;
+    }
+
+    /**
+     * Read a game map out of a dimension directory.
+     *
+     * @param dimensionDir Dimension save directory, containing
+     *                     <code>region/</code> and <code>entities/</code>.
+     * @param pos1         One end of the bounding box (world space).
+     * @param pos2         Other end of the bounding box (world space).
+     * @param origin       Chunk section pos to use as the origin.
+     * @param executor     Executor to read regions on. Each region file is read
+     *                     by a separate task.
+     * @return A future that completes with the map once all regions are read.
+     */
+    public CompletableFuture<GameMap> read(Path dimensionDir, ChunkSectionPos pos1, ChunkSectionPos pos2,
+            @Nullable ChunkSectionPos origin, Executor executor) {
+        Path regionDir = dimensionDir.resolve("region");
+        Path entityDir = dimensionDir.resolve("entities");
+
+        ChunkSectionPos minPos = ChunkSectionPos.from(Math.min(pos1.getX(), pos2.getX()),
+                Math.min(pos1.getY(), pos2.getY()), Math.min(pos1.getZ(), pos2.getZ()));
+        ChunkSectionPos maxPos = ChunkSectionPos.from(Math.max(pos1.getX(), pos2.getX()),
+                Math.max(pos1.getY(), pos2.getY()), Math.max(pos1.getZ(), pos2.getZ()));
+
+        ChunkSectionPos mapOrigin = origin != null ? origin : ChunkSectionPos.from(0, 0, 0);
+
+        // Chunk columns are exclusive of the max pos, like WorldAlignedMapCapture.
+        if (maxPos.getX() <= minPos.getX() || maxPos.getZ() <= minPos.getZ())
+            return CompletableFuture.completedFuture(new GameMap(biomeRegistry));
+
+        List<CompletableFuture<RegionResult>> futures = new ArrayList<>();
+        for (int regionX = minPos.getX() >> 5; regionX <= (maxPos.getX() - 1) >> 5; regionX++) {
+            for (int regionZ = minPos.getZ() >> 5; regionZ <= (maxPos.getZ() - 1) >> 5; regionZ++) {
+                int rx = regionX;
+                int rz = regionZ;
+                futures.add(CompletableFuture.supplyAsync(
+                        () -> readRegion(regionDir, entityDir, rx, rz, minPos, maxPos, mapOrigin), executor));
+            }
+        }
+
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).thenApplyAsync(v -> {
+            GameMap map = new GameMap(biomeRegistry);
+            int missing = 0;
+            int dropped = 0;
+
+            for (CompletableFuture<RegionResult> future : futures) {
+                RegionResult result = future.join();
+                result.chunks().forEach(map::putChunk);
+                result.entities().forEach(map::addEntity);
+                missing += result.missingChunks();
+                dropped += result.skippedSections();
+            }
+
+            if (options != null && options.trimBounds()) {
+                dropped += WorldAlignedMapCapture.trimBounds(map, options);
+            }
+
+            if (missing > 0) {
+                LOGGER.warn("{} chunk(s) in the capture box were missing or not fully generated.", missing);
+            }
+            if (dropped > 0) {
+                LOGGER.info("Left {} unoccupied sections out of the imported map.", dropped);
+            }
+            return map;
+        }, executor);
+    }
+
+    private RegionResult readRegion(Path regionDir, Path entityDir, int regionX, int regionZ,
+            ChunkSectionPos minPos, ChunkSectionPos maxPos, ChunkSectionPos origin) {
+        int minX = Math.max(minPos.getX(), regionX << 5);
+        int minZ = Math.max(minPos.getZ(), regionZ << 5);
+        int maxX = Math.min(maxPos.getX(), (regionX + 1) << 5);
+        int maxZ = Math.min(maxPos.getZ(), (regionZ + 1) << 5);
+
+        Map<ChunkSectionPos, GameChunk> chunks = new HashMap<>();
+        List<GameMapEntity> entities = new ArrayList<>();
+        int missing = 0;
+        int skipped = 0;
+
+        String fileName = "r." + regionX + "." + regionZ + ".mca";
+
+        Path regionFile = regionDir.resolve(fileName);
+        if (Files.isRegularFile(regionFile)) {
+            try (RegionFile region = new RegionFile(regionFile, regionDir, false)) {
+                for (int x = minX; x < maxX; x++) {
+                    for (int z = minZ; z < maxZ; z++) {
+                        NbtCompound nbt = readChunk(region, new ChunkPos(x, z), DataFixTypes.CHUNK);
+                        if (nbt == null || !"minecraft:full".equals(nbt.getString("Status"))) {
+                            missing++;
+                            continue;
+                        }
+                        skipped += readChunkSections(nbt, x, z, origin, chunks,
+                                options != null && options.captureLight() && nbt.getBoolean("isLightOn"));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error reading region file " + regionFile, e);
+            }
+        } else {
+            missing += (maxX - minX) * (maxZ - minZ);
+        }
+
+        Path entityFile = entityDir.resolve(fileName);
+        if (Files.isRegularFile(entityFile)) {
+            BlockPos blockMin = new BlockPos(minX << 4, minPos.getMinY(), minZ << 4);
+            BlockPos blockMax = new BlockPos((maxX << 4) - 1, maxPos.getMaxY(), (maxZ << 4) - 1);
+            BlockPos originPos = origin.getMinPos();
+
+            try (RegionFile region = new RegionFile(entityFile, entityDir, false)) {
+                for (int x = minX; x < maxX; x++) {
+                    for (int z = minZ; z < maxZ; z++) {
+                        NbtCompound nbt = readChunk(region, new ChunkPos(x, z), DataFixTypes.ENTITY_CHUNK);
+                        if (nbt == null)
+                            continue;
+
+                        for (NbtElement element : nbt.getList("Entities", NbtElement.COMPOUND_TYPE)) {
+                            GameMapEntity ent = readEntity((NbtCompound) element, blockMin, blockMax, originPos);
+                            if (ent != null)
+                                entities.add(ent);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error reading entity region file " + entityFile, e);
+            }
+        }
+
+        return new RegionResult(chunks, entities, missing, skipped);
+    }
+
+    @Nullable
+    private NbtCompound readChunk(RegionFile region, ChunkPos pos, DataFixTypes fixType) throws IOException {
+        NbtCompound nbt;
+        try (DataInputStream in = region.getChunkInputStream(pos)) {
+            if (in == null)
+                return null;
+            nbt = NbtIo.readCompound(in);
+        }
+
+        int dataVersion = NbtHelper.getDataVersion(nbt, -1);
+        if (dataVersion < SharedConstants.getGameVersion().getSaveVersion().getId()) {
+            nbt = fixType.update(Schemas.getFixer(), nbt, dataVersion);
+        }
+        return nbt;
+    }
+
+    /**
+     * Decode the sections of a vanilla chunk into game chunks.
+     *
+     * @return The number of sections that were skipped.
+     */
+    private int readChunkSections(NbtCompound nbt, int chunkX, int chunkZ, ChunkSectionPos origin,
+            Map<ChunkSectionPos, GameChunk> chunks, boolean readLight) {
+        Codec<PalettedContainer<RegistryEntry<Biome>>> biomeCodec = GameMapSerializer.createBiomeCodec(biomeRegistry);
+        Map<Integer, GameChunk> sections = new HashMap<>();
+        int skipped = 0;
+
+        for (NbtElement element : nbt.getList("sections", NbtElement.COMPOUND_TYPE)) {
+            NbtCompound sectionNbt = (NbtCompound) element;
+            int sectionY = sectionNbt.getByte("Y");
+
+            // Lighting-only sections above and below the world have no block states.
+            if (!sectionNbt.contains("block_states", NbtElement.COMPOUND_TYPE))
+                continue;
+
+            PalettedContainer<BlockState> blocks = GameMapSerializer.BLOCK_CODEC
+                    .parse(NbtOps.INSTANCE, sectionNbt.getCompound("block_states"))
+                    .promotePartial(LOGGER::error)
+                    .get().left().orElse(null);
+
+            PalettedContainer<RegistryEntry<Biome>> biomes = null;
+            if (sectionNbt.contains("biomes", NbtElement.COMPOUND_TYPE))
+                biomes = biomeCodec
+                        .parse(NbtOps.INSTANCE, sectionNbt.getCompound("biomes"))
+                        .promotePartial(LOGGER::error)
+                        .get().left().orElse(null);
+
+            GameChunk gameChunk = new GameChunk(blocks, biomes, biomeRegistry);
+            if (options != null && options.skipEmptySections() && options.shouldSkip(new ChunkSection(gameChunk.getBlockStateContainer(),
+                    gameChunk.getBiomeContainer()))) {
+                skipped++;
+                continue;
+            }
+
+            if (readLight) {
+                ChunkNibbleArray blockLight = sectionNbt.contains("BlockLight", NbtElement.BYTE_ARRAY_TYPE)
+                        ? new ChunkNibbleArray(sectionNbt.getByteArray("BlockLight"))
+                        : new ChunkNibbleArray();
+                ChunkNibbleArray skyLight = sectionNbt.contains("SkyLight", NbtElement.BYTE_ARRAY_TYPE)
+                        ? new ChunkNibbleArray(sectionNbt.getByteArray("SkyLight"))
+                        : null;
+                gameChunk.setLight(skyLight, blockLight);
+            }
+
+            sections.put(sectionY, gameChunk);
+            chunks.put(ChunkSectionPos.from(chunkX - origin.getX(), sectionY - origin.getY(),
+                    chunkZ - origin.getZ()), gameChunk);
+        }
+
+        for (NbtElement element : nbt.getList("block_entities", NbtElement.COMPOUND_TYPE)) {
+            NbtCompound blockEnt = applyBlockEntityFilters((NbtCompound) element);
+            if (blockEnt == null)
+                continue;
+
+            GameChunk gameChunk = sections.get(blockEnt.getInt("y") >> 4);
+            if (gameChunk != null)
+                gameChunk.putBlockEntity(blockEnt);
+        }
+
+        return skipped;
+    }
+
+    @Nullable
+    private GameMapEntity readEntity(NbtCompound nbt, BlockPos blockMin, BlockPos blockMax, BlockPos originPos) {
+        GameMapEntity ent = GameMapEntity.fromNbt(nbt);
+        if (!boxContains(blockMin, blockMax, BlockPos.ofFloored(ent.pos())))
+            return null;
+
+        // Entities are never players in entity region files, so only the UUID needs removing.
+        NbtCompound copy = nbt.copy();
+        copy.remove("UUID");
+
+        Vec3d pos = ent.pos().subtract(originPos.getX(), originPos.getY(), originPos.getZ());
+        return applyEntityFilters(new GameMapEntity(pos, copy));
+    }
+
+    private GameMapEntity applyEntityFilters(GameMapEntity entity) {
+        for (var func : entityFilters) {
+            entity = func.apply(entity);
+            if (entity == null)
+                return null;
+        }
+        return entity;
+    }
+
+    private NbtCompound applyBlockEntityFilters(NbtCompound nbt) {
+        for (var func : blockEntityFilters) {
+            nbt = func.apply(nbt);
+            if (nbt == null)
+                return null;
+        }
+        return nbt;
+    }
+
+    private static boolean boxContains(BlockPos minPos, BlockPos maxPos, BlockPos pos) {
+        return minPos.getX() <= pos.getX() && pos.getX() <= maxPos.getX()
+            && minPos.getY() <= pos.getY() && pos.getY() <= maxPos.getY()
+            && minPos.getZ() <= pos.getZ() && pos.getZ() <= maxPos.getZ();
+    }
+
+    private static record RegionResult(Map<ChunkSectionPos, GameChunk> chunks, List<GameMapEntity> entities,
+            int missingChunks, int skippedSections) {
+    }
+}
@@ -0,0 +1,375 @@
+package net.betrayd.gamemaps.serialization;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hashing;
+
+import net.betrayd.gamemaps.GameChunk;
+import net.betrayd.gamemaps.GameMap;
+import net.betrayd.gamemaps.GameMapEntity;
+import net.minecraft.world.chunk.ChunkNibbleArray;
+
+/**
+ * A thread-safe cache of game maps loaded from disk. Maps are keyed by their
+ * file path and invalidated when the file changes. The cache is bounded by the
+ * estimated heap size of its maps and evicts the least-recently used maps
+ * first.
+ * <p>
+ * All maps handed out by the cache are frozen (see {@link GameMap#freeze()})
+ * and shared between every consumer, so none of them may modify the NBT,
+ * markers or block containers inside. Use {@link #getForked} if you need a
+ * mutable copy.
+ */
+public class GameMapCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GameMapCache.class);
+
+    /**
+     * How the cache decides if a cached map is still up to date with its file.
+     */
+    public static enum Validation {
+        /**
+         * Compare the file's last modified time and size. Cheap, but won't notice
+         * edits that preserve both.
+         */
+        MODIFIED_TIME,
+        /**
+         * Compare a hash of the file's contents. Requires the file to be read on
+         * every lookup, but skips decoding it on a hit.
+         */
+        CONTENT_HASH
+    }
+
+    /**
+     * A snapshot of the cache's counters.
+     */
+    public static record Stats(long hits, long misses, long evictions, int size, long weight, long maxWeight) {
+    }
+
+    private static class Entry {
+        final Object version;
+        final long weight;
+
+        @Nullable
+        final GameMap strongRef;
+        @Nullable
+        final SoftReference<GameMap> softRef;
+
+        Entry(Object version, GameMap map, long weight, boolean soft) {
+            this.version = version;
+            this.weight = weight;
+            this.strongRef = soft ? null : map;
+            this.softRef = soft ? new SoftReference<>(map) : null;
+        }
+
+        @Nullable
+        GameMap get() {
+            return strongRef != null ? strongRef : softRef.get();
+        }
+    }
+
+    private final GameMapDeserializer deserializer;
+    private final long maxWeight;
+
+    private Validation validation = Validation.MODIFIED_TIME;
+    private boolean useSoftReferences;
+
+    // Access-ordered, so iteration starts at the least-recently used entry.
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    private final Map<Path, CompletableFuture<GameMap>> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Create a game map cache.
+     *
+     * @param deserializer Deserializer to load maps with.
+     * @param maxWeight    The maximum combined estimated size of all cached maps,
+     *                     in bytes.
+     */
+    public GameMapCache(GameMapDeserializer deserializer, long maxWeight) {
+        this.deserializer = deserializer;
+        this.maxWeight = maxWeight;
+    }
+
+    public GameMapDeserializer getDeserializer() {
+        return deserializer;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public Validation getValidation() {
+        return validation;
+    }
+
+    public GameMapCache setValidation(Validation validation) {
+        this.validation = validation;
+        return this;
+    }
+
+    public boolean usesSoftReferences() {
+        return useSoftReferences;
+    }
+
+    /**
+     * Hold cached maps through soft references, allowing the garbage collector to
+     * reclaim them under memory pressure. Only affects maps loaded after this is
+     * set.
+     *
+     * @param useSoftReferences Whether to use soft references.
+     * @return <code>this</code>
+     */
+    public GameMapCache setUseSoftReferences(boolean useSoftReferences) {
+        this.useSoftReferences = useSoftReferences;
+        return this;
+    }
+
+    /**
+     * Get a map from the cache, loading it from disk if needed.
+     *
+     * @param path Path of the map file.
+     * @return The frozen game map.
+     * @throws IOException If an IO exception occurs while loading the map.
+     */
+    public GameMap get(Path path) throws IOException {
+        try {
+            return getAsync(path, Runnable::run).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io)
+                throw io.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Get a mutable copy of a map from the cache, loading it from disk if needed.
+     *
+     * @param path Path of the map file.
+     * @return A mutable copy of the game map.
+     * @throws IOException If an IO exception occurs while loading the map.
+     */
+    public GameMap getForked(Path path) throws IOException {
+        return get(path).copy();
+    }
+
+    /**
+     * Get a map from the cache, loading it on the supplied executor if needed.
+     * Concurrent requests for the same file share a single load.
+     *
+     * @param path     Path of the map file.
+     * @param executor Executor to perform the lookup and any IO on.
+     * @return A future that completes with the frozen game map.
+     */
+    public CompletableFuture<GameMap> getAsync(Path path, Executor executor) {
+        Path key = path.toAbsolutePath().normalize();
+
+        CompletableFuture<GameMap> future = new CompletableFuture<>();
+        CompletableFuture<GameMap> existing = pending.putIfAbsent(key, future);
+        if (existing != null) {
+            return existing;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(load(key));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    pending.remove(key, future);
+                }
+            });
+        } catch (Throwable e) {
+            pending.remove(key, future);
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    /**
+     * Get a mutable copy of a map from the cache, loading it on the supplied
+     * executor if needed.
+     *
+     * @param path     Path of the map file.
+     * @param executor Executor to perform the lookup and any IO on.
+     * @return A future that completes with a mutable copy of the game map.
+     */
+    public CompletableFuture<GameMap> getForkedAsync(Path path, Executor executor) {
+        return getAsync(path, executor).thenApply(GameMap::copy);
+    }
+
+    /**
+     * Remove a map from the cache.
+     *
+     * @param path Path of the map file.
+     */
+    public synchronized void invalidate(Path path) {
+        Entry entry = entries.remove(path.toAbsolutePath().normalize());
+        if (entry != null)
+            weight -= entry.weight;
+    }
+
+    /**
+     * Remove all maps from the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * Check if a map is currently cached, without affecting its eviction order.
+     * Does not check whether the file has changed.
+     *
+     * @param path Path of the map file.
+     * @return If the map is cached.
+     */
+    public synchronized boolean contains(Path path) {
+        Path key = path.toAbsolutePath().normalize();
+        // Iterating doesn't count as an access in an access-ordered map.
+        for (var e : entries.entrySet()) {
+            if (e.getKey().equals(key))
+                return e.getValue().get() != null;
+        }
+        return false;
+    }
+
+    public Stats getStats() {
+        synchronized (this) {
+            return new Stats(hits.get(), misses.get(), evictions.get(), entries.size(), weight, maxWeight);
+        }
+    }
+
+    private GameMap load(Path key) {
+        try {
+            byte[] contents = null;
+            Object version;
+            if (validation == Validation.CONTENT_HASH) {
+                contents = Files.readAllBytes(key);
+                version = Hashing.sha256().hashBytes(contents);
+            } else {
+                BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+                version = new FileVersion(attributes.lastModifiedTime().toMillis(), attributes.size());
+            }
+
+            GameMap cached = lookup(key, version);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+
+            misses.incrementAndGet();
+
+            GameMap map;
+            try (InputStream in = contents != null ? new ByteArrayInputStream(contents)
+                    : new BufferedInputStream(Files.newInputStream(key))) {
+                map = deserializer.deserializeMap(in);
+            }
+            map.freeze();
+
+            insert(key, new Entry(version, map, estimateWeight(map), useSoftReferences));
+            return map;
+
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Nullable
+    private synchronized GameMap lookup(Path key, Object version) {
+        Entry entry = entries.get(key);
+        if (entry == null)
+            return null;
+
+        GameMap map = entry.get();
+        if (map == null || !entry.version.equals(version)) {
+            entries.remove(key);
+            weight -= entry.weight;
+            return null;
+        }
+        return map;
+    }
+
+    private synchronized void insert(Path key, Entry entry) {
+        Entry old = entries.put(key, entry);
+        if (old != null)
+            weight -= old.weight;
+        weight += entry.weight;
+
+        Iterator<Map.Entry<Path, Entry>> iterator = entries.entrySet().iterator();
+        while (weight > maxWeight && iterator.hasNext()) {
+            Map.Entry<Path, Entry> eldest = iterator.next();
+            // Never evict the entry we just inserted; a single oversized map is
+            // still better served from the cache than reloaded every time.
+            if (eldest.getValue() == entry)
+                continue;
+
+            iterator.remove();
+            weight -= eldest.getValue().weight;
+            evictions.incrementAndGet();
+            LOGGER.debug("Evicted game map {} from cache", eldest.getKey());
+        }
+    }
+
+    /**
+     * Estimate the heap size of a game map. This is a rough approximation based
+     * on the packed size of its containers and NBT data.
+     *
+     * @param map Map to estimate.
+     * @return Estimated size in bytes.
+     */
+    public static long estimateWeight(GameMap map) {
+        long size = 0;
+        for (GameChunk chunk : map.getChunks().values()) {
+            // Container objects, palettes and map entry overhead.
+            size += 256;
+            size += chunk.getBlockStateContainer().getPacketSize();
+            size += chunk.getBiomeContainer().getPacketSize();
+            if (chunk.getBlockLight() != null)
+                size += ChunkNibbleArray.BYTES_LENGTH;
+            if (chunk.getSkyLight() != null)
+                size += ChunkNibbleArray.BYTES_LENGTH;
+
+            for (var nbt : chunk.getBlockEntities().values()) {
+                size += 64 + nbt.getSizeInBytes();
+            }
+        }
+
+        for (GameMapEntity ent : map.getEntities()) {
+            size += 64 + ent.nbt().getSizeInBytes();
+        }
+
+        size += map.getMarkers().size() * 128L;
+        return size;
+    }
+
+    private static record FileVersion(long modifiedTime, long size) {
+    }
+}
@@ -6,14 +6,19 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Function;
 
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.io.CountingInputStream;
+
 import net.betrayd.gamemaps.GameChunk;
 import net.betrayd.gamemaps.GameMap;
 import net.betrayd.gamemaps.GameMapEntity;
 import net.betrayd.gamemaps.map_markers.MapMarker;
 import net.betrayd.gamemaps.map_markers.MapMarkerType;
+import net.betrayd.gamemaps.metrics.GameMapMetrics;
+import net.betrayd.gamemaps.metrics.MapMetrics;
 import net.minecraft.block.BlockState;
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.nbt.NbtElement;
@@ -25,6 +30,7 @@ import net.minecraft.registry.Registry;
 import net.minecraft.registry.entry.RegistryEntry;
 import net.minecraft.util.math.ChunkSectionPos;
 import net.minecraft.world.biome.Biome;
+import net.minecraft.world.chunk.ChunkNibbleArray;
 import net.minecraft.world.chunk.PalettedContainer;
 
 public class GameMapDeserializer {
@@ -53,7 +59,23 @@ public class GameMapDeserializer {
     }
 
     public GameMap deserializeMap(InputStream in) throws IOException {
-        return deserializeMap(NbtIo.readCompressed(in, NbtSizeTracker.ofUnlimitedBytes()));
+        GameMapMetrics metrics = MapMetrics.get();
+        long startTime = System.nanoTime();
+        CountingInputStream countingIn = new CountingInputStream(in);
+        NbtCompound nbt = NbtIo.readCompressed(countingIn, NbtSizeTracker.ofUnlimitedBytes());
+
+        long readTime = System.nanoTime();
+        metrics.onOperation(GameMapMetrics.Operation.READ, readTime - startTime, 0, 0);
+        metrics.onBytes(GameMapMetrics.Operation.READ, countingIn.getCount());
+
+        GameMap map = deserializeMap(nbt);
+
+        long endTime = System.nanoTime();
+        metrics.onOperation(GameMapMetrics.Operation.DECODE, endTime - readTime,
+                map.getChunks().size(), map.getEntities().size());
+        metrics.onOperation(GameMapMetrics.Operation.LOAD, endTime - startTime,
+                map.getChunks().size(), map.getEntities().size());
+        return map;
     }
 
     public GameMap deserializeMap(NbtCompound nbt) {
@@ -122,6 +144,10 @@ public class GameMapDeserializer {
 
         GameChunk chunk = new GameChunk(blocks, biomes, biomeRegistry);
 
+        ChunkNibbleArray blockLight = readLight(nbt, "blockLight");
+        if (blockLight != null)
+            chunk.setLight(readLight(nbt, "skyLight"), blockLight);
+
         NbtList blockEntities = nbt.getList("blockEntities", NbtElement.COMPOUND_TYPE);
         if (blockEntities != null) {
             for (NbtElement blockEnt : blockEntities) {
@@ -135,6 +161,19 @@ public class GameMapDeserializer {
         return chunk;
     }
 
+    @Nullable
+    private static ChunkNibbleArray readLight(NbtCompound nbt, String key) {
+        if (!nbt.contains(key, NbtElement.BYTE_ARRAY_TYPE))
+            return null;
+
+        byte[] bytes = nbt.getByteArray(key);
+        if (bytes.length != ChunkNibbleArray.BYTES_LENGTH) {
+            LOGGER.warn("Ignoring {} with invalid length {}", key, bytes.length);
+            return null;
+        }
+        return new ChunkNibbleArray(bytes);
+    }
+
     private NbtCompound applyBlockEntityMappers(NbtCompound nbt) {
         if (nbt == null)
             return null;
@@ -0,0 +1,294 @@
+package net.betrayd.gamemaps.serialization;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import net.betrayd.gamemaps.GameMap;
+import net.betrayd.gamemaps.world_interface.GameMapIndex;
+
+/**
+ * Loads a set of maps into a {@link GameMapCache} in the background, so the
+ * first match on a server doesn't have to wait for them. Optionally builds the
+ * generator-side indices as well, so the first
+ * {@link net.betrayd.gamemaps.world_interface.GameMapChunkGenerator
+ * GameMapChunkGenerator} using each map starts warm.
+ * <p>
+ * This is typically started when the server finishes starting, for instance
+ * from Fabric API's <code>ServerLifecycleEvents.SERVER_STARTED</code>.
+ */
+public class GameMapPreloader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GameMapPreloader.class);
+
+    private static final String EXTENSION = ".nbt";
+
+    /**
+     * The current progress of a preloader.
+     *
+     * @param total     Number of maps selected for preloading.
+     * @param loaded    Number of maps that were loaded.
+     * @param failed    Number of maps that failed to load.
+     * @param cancelled Number of maps that were never loaded because the
+     *                  preloader was shut down.
+     */
+    public static record Progress(int total, int loaded, int failed, int cancelled) {
+        public boolean isDone() {
+            return loaded + failed + cancelled >= total;
+        }
+    }
+
+    private final GameMapCache cache;
+    private final Path mapsDirectory;
+
+    private final List<Path> priorityMaps = new ArrayList<>();
+    private int maxMaps = 16;
+    private int threads = 1;
+    private boolean warmIndices = true;
+
+    private volatile int total;
+    private final AtomicInteger loaded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private volatile int cancelled;
+
+    @Nullable
+    private ExecutorService executor;
+    @Nullable
+    private CompletableFuture<Void> future;
+    private CompletableFuture<?>[] mapFutures;
+
+    /**
+     * Create a preloader.
+     *
+     * @param cache         Cache to load maps into.
+     * @param mapsDirectory Directory to scan for maps. Scanned recursively for
+     *                      <code>.nbt</code> files.
+     */
+    public GameMapPreloader(GameMapCache cache, Path mapsDirectory) {
+        this.cache = cache;
+        this.mapsDirectory = mapsDirectory;
+    }
+
+    public GameMapCache getCache() {
+        return cache;
+    }
+
+    public Path getMapsDirectory() {
+        return mapsDirectory;
+    }
+
+    /**
+     * Get the maps that will be loaded before any others, in order. Paths are
+     * resolved against the maps directory.
+     *
+     * @return A mutable list of priority maps.
+     */
+    public List<Path> getPriorityMaps() {
+        return priorityMaps;
+    }
+
+    public int getMaxMaps() {
+        return maxMaps;
+    }
+
+    /**
+     * Set the maximum number of maps to preload. After the priority maps, the
+     * most recently used maps (by file access time, falling back to modified
+     * time) are chosen.
+     *
+     * @param maxMaps Max number of maps.
+     * @return <code>this</code>
+     */
+    public GameMapPreloader setMaxMaps(int maxMaps) {
+        this.maxMaps = maxMaps;
+        return this;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public GameMapPreloader setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Must use at least one thread.");
+        this.threads = threads;
+        return this;
+    }
+
+    public boolean shouldWarmIndices() {
+        return warmIndices;
+    }
+
+    /**
+     * Set whether to build the generator indices and worldgen heightmaps of each
+     * preloaded map.
+     *
+     * @param warmIndices Whether to warm indices.
+     * @return <code>this</code>
+     */
+    public GameMapPreloader setWarmIndices(boolean warmIndices) {
+        this.warmIndices = warmIndices;
+        return this;
+    }
+
+    public Progress getProgress() {
+        return new Progress(total, loaded.get(), failed.get(), cancelled);
+    }
+
+    /**
+     * Get the future of the current preload operation.
+     *
+     * @return The future, or <code>null</code> if the preloader hasn't started.
+     */
+    @Nullable
+    public CompletableFuture<Void> getFuture() {
+        return future;
+    }
+
+    /**
+     * Scan the maps directory and begin preloading in the background.
+     *
+     * @return A future that completes once all maps have either loaded or failed.
+     * @throws IllegalStateException If the preloader has already been started.
+     */
+    public synchronized CompletableFuture<Void> start() {
+        if (future != null)
+            throw new IllegalStateException("Preloader has already been started.");
+
+        List<Path> maps;
+        try {
+            maps = selectMaps();
+        } catch (IOException e) {
+            LOGGER.error("Unable to scan maps directory " + mapsDirectory, e);
+            future = CompletableFuture.failedFuture(e);
+            return future;
+        }
+
+        total = maps.size();
+        if (maps.isEmpty()) {
+            future = CompletableFuture.completedFuture(null);
+            return future;
+        }
+
+        LOGGER.info("Preloading {} game map(s) from {}", maps.size(), mapsDirectory);
+
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("Game Map Preloader #%d")
+                        .setDaemon(true)
+                        .setPriority(Thread.MIN_PRIORITY)
+                        .build());
+
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[maps.size()];
+        for (int i = 0; i < maps.size(); i++) {
+            Path path = maps.get(i);
+            futures[i] = CompletableFuture.runAsync(() -> preload(path), executor);
+        }
+        mapFutures = futures;
+
+        ExecutorService executor = this.executor;
+        future = CompletableFuture.allOf(futures).whenComplete((v, e) -> {
+            Progress progress = getProgress();
+            LOGGER.info("Finished preloading game maps: {} loaded, {} failed.", progress.loaded(), progress.failed());
+            executor.shutdown();
+        });
+        return future;
+    }
+
+    /**
+     * Stop preloading. Maps that are currently loading will finish; maps that
+     * haven't started are cancelled, and the preload future completes
+     * exceptionally once the loading maps are done.
+     */
+    public synchronized void shutdown() {
+        if (executor == null)
+            return;
+
+        // Cancelled tasks are skipped when the executor gets to them, so the queue can drain normally.
+        for (CompletableFuture<?> mapFuture : mapFutures) {
+            if (mapFuture.cancel(false))
+                cancelled++;
+        }
+        executor.shutdown();
+    }
+
+    private void preload(Path path) {
+        long startTime = System.nanoTime();
+        try {
+            GameMap map = cache.get(path);
+            if (warmIndices) {
+                GameMapIndex.of(map).prebuildHeightmaps(GameMapIndex.WORLDGEN_HEIGHTMAPS);
+            }
+            int count = loaded.incrementAndGet();
+            LOGGER.info("Preloaded game map {} ({}/{}) in {} ms", mapsDirectory.relativize(path), count + failed.get(),
+                    total, (System.nanoTime() - startTime) / 1000000);
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            LOGGER.error("Error preloading game map " + path, e);
+        }
+    }
+
+    private List<Path> selectMaps() throws IOException {
+        Set<Path> selected = new LinkedHashSet<>();
+        for (Path path : priorityMaps) {
+            if (selected.size() >= maxMaps)
+                break;
+
+            Path resolved = mapsDirectory.resolve(path).normalize();
+            if (Files.isRegularFile(resolved)) {
+                selected.add(resolved);
+            } else {
+                LOGGER.warn("Priority map {} does not exist.", resolved);
+            }
+        }
+
+        if (selected.size() >= maxMaps || !Files.isDirectory(mapsDirectory))
+            return new ArrayList<>(selected);
+
+        List<Path> candidates;
+        try (Stream<Path> stream = Files.walk(mapsDirectory)) {
+            candidates = stream
+                    .filter(p -> p.getFileName().toString().endsWith(EXTENSION) && Files.isRegularFile(p))
+                    .map(Path::normalize)
+                    .toList();
+        }
+
+        candidates.stream()
+                .sorted(Comparator.comparing(GameMapPreloader::getLastUsed).reversed())
+                .filter(p -> !selected.contains(p))
+                .limit(maxMaps - selected.size())
+                .forEach(selected::add);
+
+        return new ArrayList<>(selected);
+    }
+
+    private static FileTime getLastUsed(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            FileTime accessed = attributes.lastAccessTime();
+            FileTime modified = attributes.lastModifiedTime();
+            return accessed != null && accessed.compareTo(modified) > 0 ? accessed : modified;
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+}
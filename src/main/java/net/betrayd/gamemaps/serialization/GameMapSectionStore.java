@@ -0,0 +1,398 @@
+package net.betrayd.gamemaps.serialization;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
+import net.betrayd.gamemaps.GameChunk;
+import net.betrayd.gamemaps.GameMap;
+import net.betrayd.gamemaps.GameMapEntity;
+import net.betrayd.gamemaps.map_markers.MapMarker;
+import net.betrayd.gamemaps.world_interface.GameMapIndex;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.nbt.NbtSizeTracker;
+import net.minecraft.registry.entry.RegistryEntry;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.Heightmap;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.chunk.PalettedContainer;
+
+/**
+ * A game map on disk that can be read one section at a time. Sections are
+ * stored as individually compressed blobs, followed by an index holding
+ * everything else: metadata, entities, markers, each section's biomes and the
+ * worldgen heightmaps. Opening a store only reads the index, which is a small
+ * fraction of the map.
+ * <p>
+ * Reads are thread-safe.
+ */
+public class GameMapSectionStore implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GameMapSectionStore.class);
+
+    private static final int MAGIC = 0x474D5353; // GMSS
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    private record SectionLocation(long offset, int length) {
+    }
+
+    private final FileChannel channel;
+    private final GameMapDeserializer deserializer;
+    private final GameMap skeleton;
+
+    private final Long2ObjectMap<SectionLocation> sections = new Long2ObjectOpenHashMap<>();
+    private final Long2ObjectMap<PalettedContainer<RegistryEntry<Biome>>> biomes = new Long2ObjectOpenHashMap<>();
+    private final Long2ObjectMap<int[][]> heightmaps = new Long2ObjectOpenHashMap<>();
+    private final LongSet columns = new LongOpenHashSet();
+
+    private final int minX;
+    private final int maxX;
+    private final int minY;
+    private final int maxY;
+    private final int minZ;
+    private final int maxZ;
+
+    /**
+     * Write a game map into a section store.
+     *
+     * @param map  Map to write.
+     * @param path File to write to.
+     * @throws IOException If an IO exception occurs.
+     */
+    public static void write(GameMap map, Path path) throws IOException {
+        write(map, path, new GameMapSerializer());
+    }
+
+    /**
+     * Write a game map into a section store.
+     *
+     * @param map        Map to write.
+     * @param path       File to write to.
+     * @param serializer Serializer to encode the map with.
+     * @throws IOException If an IO exception occurs.
+     */
+    public static void write(GameMap map, Path path, GameMapSerializer serializer) throws IOException {
+        // Everything but the chunks goes in the index.
+        GameMap skeleton = new GameMap(map.getBiomeRegistry());
+        skeleton.getMeta().copyFrom(map.getMeta());
+        for (GameMapEntity ent : map.getEntities()) {
+            skeleton.addEntity(ent);
+        }
+        for (MapMarker marker : map.getMarkers()) {
+            skeleton.addMarker(marker);
+        }
+        NbtCompound index = serializer.serializeMap(skeleton);
+        NbtList sectionList = new NbtList();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(HEADER_SIZE);
+
+            for (var entry : map.getChunks().entrySet()) {
+                ChunkSectionPos pos = entry.getKey();
+                GameChunk chunk = entry.getValue();
+
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                NbtIo.writeCompressed(serializer.serializeChunk(pos, chunk), bytes);
+
+                NbtCompound sectionNbt = new NbtCompound();
+                sectionNbt.putIntArray("pos", new int[] { pos.getX(), pos.getY(), pos.getZ() });
+                sectionNbt.putLong("offset", channel.position());
+                sectionNbt.putInt("length", bytes.size());
+                sectionNbt.put("biomes", GameMapSerializer.createBiomeCodec(map.getBiomeRegistry())
+                        .encodeStart(NbtOps.INSTANCE, chunk.getBiomeContainer())
+                        .getOrThrow(false, LOGGER::error));
+                sectionList.add(sectionNbt);
+
+                writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()));
+            }
+            index.put("sections", sectionList);
+
+            GameMapIndex mapIndex = new GameMapIndex(map);
+            NbtList heightmapList = new NbtList();
+            for (long key : mapIndex.getColumnPositions()) {
+                int chunkX = ChunkPos.getPackedX(key);
+                int chunkZ = ChunkPos.getPackedZ(key);
+
+                NbtCompound columnNbt = new NbtCompound();
+                columnNbt.putIntArray("pos", new int[] { chunkX, chunkZ });
+                for (Heightmap.Type type : GameMapIndex.WORLDGEN_HEIGHTMAPS) {
+                    int[] heights = new int[256];
+                    for (int z = 0; z < 16; z++) {
+                        for (int x = 0; x < 16; x++) {
+                            heights[z << 4 | x] = mapIndex.getHeight(chunkX << 4 | x, chunkZ << 4 | z, type);
+                        }
+                    }
+                    columnNbt.putIntArray(type.getName(), heights);
+                }
+                heightmapList.add(columnNbt);
+            }
+            index.put("heightmaps", heightmapList);
+
+            long indexOffset = channel.position();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            NbtIo.writeCompressed(index, bytes);
+            writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()));
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(indexOffset).flip();
+            channel.position(0);
+            writeFully(channel, header);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Open a section store. Only the index is read.
+     *
+     * @param path         File to open.
+     * @param deserializer Deserializer to decode sections with.
+     * @return The store. Must be closed once it's no longer used.
+     * @throws IOException If an IO exception occurs or the file is not a
+     *                     section store.
+     */
+    public static GameMapSectionStore open(Path path, GameMapDeserializer deserializer) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC)
+                throw new IOException("Not a game map section store: " + path);
+            int version = header.getInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported section store version: " + version);
+
+            long indexOffset = header.getLong();
+            ByteBuffer index = ByteBuffer.allocate((int) (channel.size() - indexOffset));
+            readFully(channel, index, indexOffset);
+
+            NbtCompound nbt = NbtIo.readCompressed(new ByteArrayInputStream(index.array()),
+                    NbtSizeTracker.ofUnlimitedBytes());
+            return new GameMapSectionStore(channel, deserializer, nbt);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0)
+                throw new IOException("Unexpected end of section store.");
+        }
+    }
+
+    private GameMapSectionStore(FileChannel channel, GameMapDeserializer deserializer, NbtCompound index) {
+        this.channel = channel;
+        this.deserializer = deserializer;
+        this.skeleton = deserializer.deserializeMap(index);
+
+        var biomeCodec = GameMapSerializer.createBiomeCodec(deserializer.getBiomeRegistry());
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+
+        for (NbtElement element : index.getList("sections", NbtElement.COMPOUND_TYPE)) {
+            NbtCompound sectionNbt = (NbtCompound) element;
+            int[] pos = sectionNbt.getIntArray("pos");
+            long key = ChunkSectionPos.asLong(pos[0], pos[1], pos[2]);
+
+            sections.put(key, new SectionLocation(sectionNbt.getLong("offset"), sectionNbt.getInt("length")));
+            columns.add(ChunkPos.toLong(pos[0], pos[2]));
+            biomeCodec.parse(NbtOps.INSTANCE, sectionNbt.getCompound("biomes"))
+                    .promotePartial(LOGGER::error)
+                    .get().left().ifPresent(container -> biomes.put(key, container));
+
+            minX = Math.min(minX, pos[0]);
+            minY = Math.min(minY, pos[1]);
+            minZ = Math.min(minZ, pos[2]);
+            maxX = Math.max(maxX, pos[0]);
+            maxY = Math.max(maxY, pos[1]);
+            maxZ = Math.max(maxZ, pos[2]);
+        }
+
+        if (sections.isEmpty()) {
+            this.minX = this.minY = this.minZ = this.maxX = this.maxY = this.maxZ = 0;
+        } else {
+            this.minX = minX << 4;
+            this.minY = minY << 4;
+            this.minZ = minZ << 4;
+            this.maxX = (maxX << 4) + 15;
+            this.maxY = (maxY << 4) + 15;
+            this.maxZ = (maxZ << 4) + 15;
+        }
+
+        for (NbtElement element : index.getList("heightmaps", NbtElement.COMPOUND_TYPE)) {
+            NbtCompound columnNbt = (NbtCompound) element;
+            int[] pos = columnNbt.getIntArray("pos");
+            int[][] columnHeights = new int[GameMapIndex.WORLDGEN_HEIGHTMAPS.length][];
+            for (int i = 0; i < columnHeights.length; i++) {
+                int[] heights = columnNbt.getIntArray(GameMapIndex.WORLDGEN_HEIGHTMAPS[i].getName());
+                columnHeights[i] = heights.length == 256 ? heights : new int[256];
+            }
+            heightmaps.put(ChunkPos.toLong(pos[0], pos[1]), columnHeights);
+        }
+    }
+
+    /**
+     * Get a game map with the metadata, entities and markers of the stored map,
+     * but no chunks.
+     *
+     * @return The map skeleton.
+     */
+    public GameMap getSkeleton() {
+        return skeleton;
+    }
+
+    public GameMapDeserializer getDeserializer() {
+        return deserializer;
+    }
+
+    public int getMinX() {
+        return minX;
+    }
+
+    public int getMaxX() {
+        return maxX;
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    public int getMaxY() {
+        return maxY;
+    }
+
+    public int getMinZ() {
+        return minZ;
+    }
+
+    public int getMaxZ() {
+        return maxZ;
+    }
+
+    public int getSectionCount() {
+        return sections.size();
+    }
+
+    /**
+     * Get the positions of all non-empty chunk columns.
+     *
+     * @return An unmodifiable set of {@link ChunkPos#toLong} positions.
+     */
+    public LongSet getColumnPositions() {
+        return LongSets.unmodifiable(columns);
+    }
+
+    public boolean hasColumn(int chunkX, int chunkZ) {
+        return columns.contains(ChunkPos.toLong(chunkX, chunkZ));
+    }
+
+    /**
+     * Get the biomes of a section without reading it.
+     *
+     * @return The biome container, or <code>null</code> if the section doesn't
+     *         exist. Do not modify.
+     */
+    @Nullable
+    public PalettedContainer<RegistryEntry<Biome>> getBiomes(int sectionX, int sectionY, int sectionZ) {
+        return biomes.get(ChunkSectionPos.asLong(sectionX, sectionY, sectionZ));
+    }
+
+    /**
+     * Get the height of a column from one of the stored worldgen heightmaps.
+     *
+     * @param x    Block X.
+     * @param z    Block Z.
+     * @param type Heightmap type.
+     * @return The height, or {@link Integer#MIN_VALUE} if the column or
+     *         heightmap isn't stored.
+     */
+    public int getHeight(int x, int z, Heightmap.Type type) {
+        int[][] columnHeights = heightmaps.get(ChunkPos.toLong(x >> 4, z >> 4));
+        if (columnHeights == null)
+            return Integer.MIN_VALUE;
+
+        for (int i = 0; i < GameMapIndex.WORLDGEN_HEIGHTMAPS.length; i++) {
+            if (GameMapIndex.WORLDGEN_HEIGHTMAPS[i] == type)
+                return columnHeights[i][(z & 0xF) << 4 | (x & 0xF)];
+        }
+        return Integer.MIN_VALUE;
+    }
+
+    /**
+     * Read and decode a section from disk.
+     *
+     * @param pos Section position.
+     * @return The section, or <code>null</code> if it doesn't exist.
+     * @throws IOException If an IO exception occurs.
+     */
+    @Nullable
+    public GameChunk readSection(ChunkSectionPos pos) throws IOException {
+        SectionLocation location = sections.get(pos.asLong());
+        if (location == null)
+            return null;
+
+        ByteBuffer buffer = ByteBuffer.allocate(location.length());
+        readFully(channel, buffer, location.offset());
+        NbtCompound nbt = NbtIo.readCompressed(new ByteArrayInputStream(buffer.array()),
+                NbtSizeTracker.ofUnlimitedBytes());
+        return deserializer.deserializeChunk(nbt);
+    }
+
+    /**
+     * Read all sections of a chunk column from disk.
+     *
+     * @param chunkX Chunk X.
+     * @param chunkZ Chunk Z.
+     * @return An array of sections, indexed by
+     *         <code>sectionY - (getMinY() >> 4)</code>, like
+     *         {@link GameMapIndex#getColumn}. <code>null</code> if the column is
+     *         empty.
+     * @throws IOException If an IO exception occurs.
+     */
+    @Nullable
+    public GameChunk[] readColumn(int chunkX, int chunkZ) throws IOException {
+        if (!hasColumn(chunkX, chunkZ))
+            return null;
+
+        int minSectionY = minY >> 4;
+        GameChunk[] column = new GameChunk[(maxY >> 4) - minSectionY + 1];
+        for (int i = 0; i < column.length; i++) {
+            column[i] = readSection(ChunkSectionPos.from(chunkX, i + minSectionY, chunkZ));
+        }
+        return column;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
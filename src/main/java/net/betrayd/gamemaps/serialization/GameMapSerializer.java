@@ -6,12 +6,15 @@ import java.io.OutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.io.CountingOutputStream;
 import com.mojang.serialization.Codec;
 
 import net.betrayd.gamemaps.GameChunk;
 import net.betrayd.gamemaps.GameMap;
 import net.betrayd.gamemaps.GameMapEntity;
 import net.betrayd.gamemaps.map_markers.MapMarker;
+import net.betrayd.gamemaps.metrics.GameMapMetrics;
+import net.betrayd.gamemaps.metrics.MapMetrics;
 import net.minecraft.block.Block;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
@@ -22,6 +25,7 @@ import net.minecraft.nbt.NbtList;
 import net.minecraft.nbt.NbtOps;
 import net.minecraft.registry.Registry;
 import net.minecraft.registry.entry.RegistryEntry;
+import net.minecraft.util.math.ChunkSectionPos;
 import net.minecraft.world.biome.Biome;
 import net.minecraft.world.biome.BiomeKeys;
 import net.minecraft.world.chunk.PalettedContainer;
@@ -35,7 +39,22 @@ public class GameMapSerializer {
                     PalettedContainer.PaletteProvider.BLOCK_STATE, Blocks.AIR.getDefaultState());
 
     public void serializeMap(GameMap map, OutputStream out) throws IOException {
-        NbtIo.writeCompressed(serializeMap(map), out);
+        GameMapMetrics metrics = MapMetrics.get();
+        long startTime = System.nanoTime();
+        NbtCompound nbt = serializeMap(map);
+
+        long encodeTime = System.nanoTime();
+        metrics.onOperation(GameMapMetrics.Operation.ENCODE, encodeTime - startTime,
+                map.getChunks().size(), map.getEntities().size());
+
+        CountingOutputStream countingOut = new CountingOutputStream(out);
+        NbtIo.writeCompressed(nbt, countingOut);
+
+        long endTime = System.nanoTime();
+        metrics.onOperation(GameMapMetrics.Operation.WRITE, endTime - encodeTime, 0, 0);
+        metrics.onBytes(GameMapMetrics.Operation.WRITE, countingOut.getCount());
+        metrics.onOperation(GameMapMetrics.Operation.SAVE, endTime - startTime,
+                map.getChunks().size(), map.getEntities().size());
     }
     
     public NbtCompound serializeMap(GameMap map) {
@@ -47,7 +66,7 @@ public class GameMapSerializer {
         map.getChunks().forEach((pos, chunk) -> {
             NbtCompound chunkNbt = new NbtCompound();
             chunkNbt.putIntArray("pos", new int[] { pos.getX(), pos.getY(), pos.getZ() });
-            chunkNbt.put("chunk", serializeChunk(chunk));
+            chunkNbt.put("chunk", serializeChunk(pos, chunk));
             chunkList.add(chunkNbt);
         });
         nbt.put("chunks", chunkList);
@@ -68,6 +87,17 @@ public class GameMapSerializer {
         return nbt;
     } 
 
+    /**
+     * Serialize a chunk as part of a map.
+     * 
+     * @param pos   Position of the chunk in the map.
+     * @param chunk The chunk.
+     * @return Chunk NBT.
+     */
+    protected NbtCompound serializeChunk(ChunkSectionPos pos, GameChunk chunk) {
+        return serializeChunk(chunk);
+    }
+
     public NbtCompound serializeChunk(GameChunk chunk) {
         NbtCompound nbt = new NbtCompound();
 
@@ -83,6 +113,12 @@ public class GameMapSerializer {
 
         nbt.put("biomes", biomes);
 
+        if (chunk.hasLight()) {
+            nbt.putByteArray("blockLight", chunk.getBlockLight().asByteArray());
+            if (chunk.getSkyLight() != null)
+                nbt.putByteArray("skyLight", chunk.getSkyLight().asByteArray());
+        }
+
         NbtList blockEntities = new NbtList();
         chunk.serializeBlockEntities().forEach(blockEntities::add);
         nbt.put("blockEntities", blockEntities);
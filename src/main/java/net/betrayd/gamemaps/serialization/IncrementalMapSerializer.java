@@ -0,0 +1,62 @@
+package net.betrayd.gamemaps.serialization;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.betrayd.gamemaps.GameChunk;
+import net.betrayd.gamemaps.GameMap;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.util.math.ChunkSectionPos;
+
+/**
+ * A map serializer that remembers the NBT of every chunk it serializes, and
+ * reuses it the next time the same map is serialized if the chunk hasn't
+ * changed. Meant to be paired with
+ * {@link net.betrayd.gamemaps.world_interface.TrackedRegion}, which replaces
+ * the chunks it recaptures.
+ * <p>
+ * The map file is a single compressed NBT compound, so it's still rewritten as
+ * a whole; only encoding the chunk palettes is skipped. The returned NBT shares
+ * chunk compounds with this serializer and must not be modified.
+ */
+public class IncrementalMapSerializer extends GameMapSerializer {
+
+    private record CachedChunk(GameChunk chunk, NbtCompound nbt) {
+    }
+
+    private final Map<ChunkSectionPos, CachedChunk> cache = new HashMap<>();
+
+    @Override
+    public NbtCompound serializeMap(GameMap map) {
+        NbtCompound nbt = super.serializeMap(map);
+        // Forget chunks that were removed from the map.
+        cache.keySet().retainAll(map.getChunks().keySet());
+        return nbt;
+    }
+
+    @Override
+    protected NbtCompound serializeChunk(ChunkSectionPos pos, GameChunk chunk) {
+        CachedChunk cached = cache.get(pos);
+        if (cached != null && cached.chunk() == chunk)
+            return cached.nbt();
+
+        NbtCompound nbt = serializeChunk(chunk);
+        cache.put(pos, new CachedChunk(chunk, nbt));
+        return nbt;
+    }
+
+    /**
+     * Forget the NBT of a set of chunks. Only needed for chunks that were
+     * modified in place rather than replaced.
+     *
+     * @param positions Map-space positions of the chunks.
+     */
+    public void invalidate(Collection<ChunkSectionPos> positions) {
+        cache.keySet().removeAll(positions);
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+}
@@ -0,0 +1,118 @@
+package net.betrayd.gamemaps.world_interface;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.betrayd.gamemaps.GameChunk;
+import net.minecraft.block.BlockState;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.PalettedContainer;
+
+/**
+ * Controls what {@link WorldAlignedMapCapture} keeps. By default, every section
+ * in the bounding box is kept, without light.
+ */
+public class CaptureOptions {
+    private boolean skipEmptySections;
+    private boolean trimBounds;
+    private boolean captureLight;
+
+    @Nullable
+    private BlockState fillerBlock;
+
+    public boolean skipEmptySections() {
+        return skipEmptySections;
+    }
+
+    /**
+     * Set whether sections that are entirely air should be left out of the map.
+     * As missing sections read as air, this only loses the biomes of those
+     * sections.
+     *
+     * @param skipEmptySections Skip empty sections.
+     * @return <code>this</code>
+     */
+    public CaptureOptions setSkipEmptySections(boolean skipEmptySections) {
+        this.skipEmptySections = skipEmptySections;
+        return this;
+    }
+
+    public boolean trimBounds() {
+        return trimBounds;
+    }
+
+    /**
+     * Set whether the captured map should be shrunk to the sections that are
+     * actually occupied. Only whole outer layers of unoccupied sections are
+     * removed; unoccupied sections inside the occupied bounds are kept.
+     *
+     * @param trimBounds Trim the bounds.
+     * @return <code>this</code>
+     * @see #setFillerBlock
+     */
+    public CaptureOptions setTrimBounds(boolean trimBounds) {
+        this.trimBounds = trimBounds;
+        return this;
+    }
+
+    @Nullable
+    public BlockState getFillerBlock() {
+        return fillerBlock;
+    }
+
+    /**
+     * Set a block that doesn't count as occupying a section when trimming bounds,
+     * such as the stone below a build. Filler sections are never skipped
+     * individually, as that would turn them into air.
+     *
+     * @param fillerBlock Filler block, or <code>null</code> for only air.
+     * @return <code>this</code>
+     */
+    public CaptureOptions setFillerBlock(@Nullable BlockState fillerBlock) {
+        this.fillerBlock = fillerBlock;
+        return this;
+    }
+
+    public boolean captureLight() {
+        return captureLight;
+    }
+
+    /**
+     * Set whether the sky and block light of each section should be stored in
+     * the map, so {@link GameMapChunkGenerator} can skip lighting the map when
+     * it's generated.
+     *
+     * @param captureLight Capture light.
+     * @return <code>this</code>
+     * @see GameMapChunkGenerator#setUsePrecomputedLight
+     */
+    public CaptureOptions setCaptureLight(boolean captureLight) {
+        this.captureLight = captureLight;
+        return this;
+    }
+
+    /**
+     * Check if a world section should be left out of the map entirely.
+     *
+     * @param section Section to check.
+     * @return If it should be skipped.
+     */
+    public boolean shouldSkip(ChunkSection section) {
+        return skipEmptySections && section.isEmpty();
+    }
+
+    /**
+     * Check if a game chunk is occupied for the purpose of trimming bounds.
+     * Checks the container's palette, so a chunk may be reported as occupied
+     * if a block was recently removed from it, but never the other way around.
+     *
+     * @param chunk Chunk to check.
+     * @return If it contains any blocks other than air and the filler block.
+     */
+    public boolean isOccupied(GameChunk chunk) {
+        if (!chunk.getBlockEntities().isEmpty())
+            return true;
+
+        PalettedContainer<BlockState> blocks = chunk.getBlockStateContainer();
+        return blocks.hasAny(state -> !state.isAir() && state != fillerBlock);
+    }
+}
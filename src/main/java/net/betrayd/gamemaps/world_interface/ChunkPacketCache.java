@@ -0,0 +1,169 @@
+package net.betrayd.gamemaps.world_interface;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.minecraft.network.packet.s2c.play.ChunkDataS2CPacket;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.WorldChunk;
+import net.minecraft.world.chunk.light.LightingProvider;
+
+/**
+ * Reuses chunk data packets in worlds that rarely change, such as worlds
+ * opened from a frozen game map for spectators. The first time a chunk is sent
+ * its packet is kept on the chunk, and every later player gets the same packet
+ * instead of having the chunk's blocks and light encoded again. Any block,
+ * block entity or light change in the chunk drops the packet.
+ * <p>
+ * Disabled by default. Must only be used from the server thread.
+ */
+public class ChunkPacketCache {
+
+    /**
+     * Implemented on {@link World} through a mixin.
+     */
+    public static interface CachingWorld {
+
+        @Nullable
+        public ChunkPacketCache gamemaps$getPacketCache();
+
+        public void gamemaps$setPacketCache(@Nullable ChunkPacketCache cache);
+    }
+
+    /**
+     * Implemented on {@link WorldChunk} through a mixin.
+     */
+    public static interface CachedChunk {
+
+        @Nullable
+        public CachedPacket gamemaps$getCachedPacket();
+
+        public void gamemaps$setCachedPacket(@Nullable CachedPacket packet);
+    }
+
+    /**
+     * A packet, along with the cache that created it, so packets from an
+     * earlier cache in the same world are never reused.
+     */
+    public static record CachedPacket(ChunkPacketCache cache, ChunkDataS2CPacket packet) {
+    }
+
+    /**
+     * Start caching chunk packets in a world.
+     *
+     * @param world The world.
+     * @return The packet cache of the world.
+     */
+    public static ChunkPacketCache enable(ServerWorld world) {
+        CachingWorld cachingWorld = (CachingWorld) world;
+        ChunkPacketCache cache = cachingWorld.gamemaps$getPacketCache();
+        if (cache == null) {
+            cache = new ChunkPacketCache(world);
+            cachingWorld.gamemaps$setPacketCache(cache);
+        }
+        return cache;
+    }
+
+    /**
+     * Stop caching chunk packets in a world. Packets that are already cached
+     * are left for the garbage collector.
+     *
+     * @param world The world.
+     */
+    public static void disable(ServerWorld world) {
+        ((CachingWorld) world).gamemaps$setPacketCache(null);
+    }
+
+    /**
+     * Get the packet cache of a world.
+     *
+     * @param world The world.
+     * @return The cache, or <code>null</code> if caching is disabled.
+     */
+    @Nullable
+    public static ChunkPacketCache get(World world) {
+        return ((CachingWorld) world).gamemaps$getPacketCache();
+    }
+
+    /**
+     * Get a chunk data packet for a chunk, from the cache if the world has one.
+     * Called from mixins.
+     *
+     * @param chunk    The chunk.
+     * @param lighting Lighting provider to take the chunk's light from.
+     * @return The packet.
+     */
+    public static ChunkDataS2CPacket getPacket(WorldChunk chunk, LightingProvider lighting) {
+        ChunkPacketCache cache = get(chunk.getWorld());
+        if (cache == null)
+            return new ChunkDataS2CPacket(chunk, lighting, null, null);
+
+        CachedChunk cachedChunk = (CachedChunk) chunk;
+        CachedPacket cached = cachedChunk.gamemaps$getCachedPacket();
+        if (cached != null && cached.cache() == cache) {
+            cache.hits++;
+            return cached.packet();
+        }
+
+        cache.misses++;
+        ChunkDataS2CPacket packet = new ChunkDataS2CPacket(chunk, lighting, null, null);
+        cachedChunk.gamemaps$setCachedPacket(new CachedPacket(cache, packet));
+        return packet;
+    }
+
+    /**
+     * Drop the cached packet of a chunk. Called from mixins.
+     *
+     * @param chunk The chunk.
+     */
+    public static void invalidate(WorldChunk chunk) {
+        ((CachedChunk) chunk).gamemaps$setCachedPacket(null);
+    }
+
+    /**
+     * Drop the cached packet of the chunk containing a block, if the world
+     * caches packets. Called from mixins.
+     *
+     * @param world The world.
+     * @param pos   Block that changed.
+     */
+    public static void invalidate(World world, BlockPos pos) {
+        if (get(world) == null)
+            return;
+
+        WorldChunk chunk = world.getChunkManager().getWorldChunk(pos.getX() >> 4, pos.getZ() >> 4);
+        if (chunk != null)
+            invalidate(chunk);
+    }
+
+    private final ServerWorld world;
+    private long hits;
+    private long misses;
+
+    private ChunkPacketCache(ServerWorld world) {
+        this.world = world;
+    }
+
+    public ServerWorld getWorld() {
+        return world;
+    }
+
+    /**
+     * Get the number of chunk sends that reused a cached packet.
+     *
+     * @return Cache hits.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of chunk sends that had to encode a new packet.
+     *
+     * @return Cache misses.
+     */
+    public long getMisses() {
+        return misses;
+    }
+}
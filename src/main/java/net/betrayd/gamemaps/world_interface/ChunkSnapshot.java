@@ -0,0 +1,197 @@
+package net.betrayd.gamemaps.world_interface;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.betrayd.gamemaps.GameChunk;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.registry.Registry;
+import net.minecraft.registry.entry.RegistryEntry;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.LightType;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkNibbleArray;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.PalettedContainer;
+import net.minecraft.world.chunk.WorldChunk;
+import net.minecraft.world.chunk.light.LightingProvider;
+
+/**
+ * An immutable copy of the data in a chunk that's relevant to a game map.
+ * Taking a snapshot is cheap and must happen on the thread that owns the
+ * chunk; turning it into game chunks can happen on any thread.
+ */
+public final class ChunkSnapshot {
+    private final ChunkPos pos;
+    private final int bottomSectionCoord;
+
+    private final PalettedContainer<BlockState>[] blocks;
+    private final PalettedContainer<RegistryEntry<Biome>>[] biomes;
+    private final List<NbtCompound> blockEntities;
+    private final int skippedSections;
+
+    @Nullable
+    private ChunkNibbleArray[] skyLight;
+    @Nullable
+    private ChunkNibbleArray[] blockLight;
+
+    private ChunkSnapshot(ChunkPos pos, int bottomSectionCoord, PalettedContainer<BlockState>[] blocks,
+            PalettedContainer<RegistryEntry<Biome>>[] biomes, List<NbtCompound> blockEntities, int skippedSections) {
+        this.pos = pos;
+        this.bottomSectionCoord = bottomSectionCoord;
+        this.blocks = blocks;
+        this.biomes = biomes;
+        this.blockEntities = blockEntities;
+        this.skippedSections = skippedSections;
+    }
+
+    /**
+     * Take a snapshot of a chunk. Copies the section containers and serializes
+     * all block entities.
+     *
+     * @param chunk Chunk to snapshot.
+     * @return The snapshot.
+     */
+    public static ChunkSnapshot of(Chunk chunk) {
+        return of(chunk, null);
+    }
+
+    /**
+     * Take a snapshot of a chunk, leaving out the sections that the capture
+     * options skip.
+     *
+     * @param chunk   Chunk to snapshot.
+     * @param options Capture options to use.
+     * @return The snapshot.
+     */
+    @SuppressWarnings("unchecked")
+    public static ChunkSnapshot of(Chunk chunk, @Nullable CaptureOptions options) {
+        ChunkSection[] sections = chunk.getSectionArray();
+
+        PalettedContainer<BlockState>[] blocks = new PalettedContainer[sections.length];
+        PalettedContainer<RegistryEntry<Biome>>[] biomes = new PalettedContainer[sections.length];
+        int skipped = 0;
+
+        for (int i = 0; i < sections.length; i++) {
+            if (options != null && options.shouldSkip(sections[i])) {
+                skipped++;
+                continue;
+            }
+            blocks[i] = sections[i].getBlockStateContainer().copy();
+            biomes[i] = ((PalettedContainer<RegistryEntry<Biome>>) sections[i].getBiomeContainer()).copy();
+        }
+
+        List<NbtCompound> blockEntities = new ArrayList<>();
+        for (BlockPos pos : chunk.getBlockEntityPositions()) {
+            BlockEntity ent = chunk.getBlockEntity(pos);
+            if (ent != null)
+                blockEntities.add(ent.createNbtWithIdentifyingData());
+        }
+
+        ChunkSnapshot snapshot = new ChunkSnapshot(chunk.getPos(), chunk.getBottomSectionCoord(), blocks, biomes,
+                blockEntities, skipped);
+
+        // Light is only complete once the chunk has been fully lit.
+        if (options != null && options.captureLight() && chunk instanceof WorldChunk worldChunk
+                && worldChunk.isLightOn()) {
+            snapshot.captureLight(worldChunk.getWorld().getLightingProvider());
+        }
+        return snapshot;
+    }
+
+    private void captureLight(LightingProvider lightingProvider) {
+        skyLight = new ChunkNibbleArray[blocks.length];
+        blockLight = new ChunkNibbleArray[blocks.length];
+
+        for (int i = 0; i < blocks.length; i++) {
+            if (blocks[i] == null)
+                continue;
+            ChunkSectionPos sectionPos = ChunkSectionPos.from(pos, sectionIndexToCoord(i));
+            skyLight[i] = copyLight(lightingProvider, LightType.SKY, sectionPos);
+            blockLight[i] = copyLight(lightingProvider, LightType.BLOCK, sectionPos);
+
+            // Sections without block light data are completely dark.
+            if (blockLight[i] == null)
+                blockLight[i] = new ChunkNibbleArray();
+        }
+    }
+
+    /**
+     * Copy the light of a section out of a lighting provider.
+     *
+     * @param lightingProvider Lighting provider of the world.
+     * @param type             Type of light to copy.
+     * @param pos              Section to copy.
+     * @return A copy of the light, or <code>null</code> if the section has no
+     *         light data of this type.
+     */
+    @Nullable
+    static ChunkNibbleArray copyLight(LightingProvider lightingProvider, LightType type, ChunkSectionPos pos) {
+        ChunkNibbleArray light = lightingProvider.get(type).getLightSection(pos);
+        return light != null ? light.copy() : null;
+    }
+
+    public ChunkPos getPos() {
+        return pos;
+    }
+
+    public int getBottomSectionCoord() {
+        return bottomSectionCoord;
+    }
+
+    public int getSectionCount() {
+        return blocks.length;
+    }
+
+    public int sectionIndexToCoord(int index) {
+        return index + bottomSectionCoord;
+    }
+
+    /**
+     * Get the number of sections that were left out of this snapshot.
+     *
+     * @return Number of skipped sections.
+     */
+    public int getSkippedSections() {
+        return skippedSections;
+    }
+
+    /**
+     * Build game chunks from this snapshot. Thread-safe, but may only be called
+     * once, as the resulting game chunks take ownership of the snapshot's
+     * containers.
+     *
+     * @param biomeRegistry Biome registry of the world.
+     * @return An array of game chunks, indexed by section index. Some elements
+     *         may be null.
+     */
+    public GameChunk[] build(Registry<Biome> biomeRegistry) {
+        GameChunk[] gameChunks = new GameChunk[blocks.length];
+        for (int i = 0; i < blocks.length; i++) {
+            if (blocks[i] == null)
+                continue;
+            gameChunks[i] = new GameChunk(blocks[i], biomes[i], biomeRegistry);
+            if (blockLight != null)
+                gameChunks[i].setLight(skyLight[i], blockLight[i]);
+        }
+
+        for (NbtCompound nbt : blockEntities) {
+            int y = nbt.getInt("y");
+            int index = (y >> 4) - bottomSectionCoord;
+            if (index < 0 || index >= gameChunks.length || gameChunks[index] == null)
+                continue;
+
+            gameChunks[index].putBlockEntity(
+                    new BlockPos(nbt.getInt("x") & 0xF, y & 0xF, nbt.getInt("z") & 0xF), nbt);
+        }
+
+        return gameChunks;
+    }
+}
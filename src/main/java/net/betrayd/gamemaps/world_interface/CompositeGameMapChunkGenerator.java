@@ -0,0 +1,314 @@
+package net.betrayd.gamemaps.world_interface;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+import com.mojang.serialization.Codec;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.betrayd.gamemaps.GameChunk;
+import net.betrayd.gamemaps.GameMap;
+import net.betrayd.gamemaps.GameMapEntity;
+import net.betrayd.gamemaps.GameMapTransform;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.registry.entry.RegistryEntry;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.ChunkRegion;
+import net.minecraft.world.HeightLimitView;
+import net.minecraft.world.Heightmap.Type;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.biome.BiomeKeys;
+import net.minecraft.world.biome.source.BiomeCoords;
+import net.minecraft.world.biome.source.BiomeSource;
+import net.minecraft.world.biome.source.util.MultiNoiseUtil.MultiNoiseSampler;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ProtoChunk;
+import net.minecraft.world.gen.StructureAccessor;
+import net.minecraft.world.gen.chunk.Blender;
+import net.minecraft.world.gen.chunk.VerticalBlockSample;
+import net.minecraft.world.gen.noise.NoiseConfig;
+
+/**
+ * Generates several different game maps in one world, each at its own offset.
+ * A chunk column index maps every chunk to the maps that overlap it, so
+ * generating a chunk only touches those maps, no matter how many there are.
+ * <p>
+ * Offsets are in whole sections, as maps are copied a section at a time. Where
+ * maps overlap, later maps are generated over earlier ones, except for air.
+ */
+public class CompositeGameMapChunkGenerator extends SimpleChunkGenerator {
+
+    private static final BlockState AIR = Blocks.AIR.getDefaultState();
+
+    /**
+     * A map placed in a composite world.
+     *
+     * @param map    The game map.
+     * @param index  Index of the map, which also decides its transform.
+     * @param offset Section offset of the map in the world.
+     */
+    public static record Placement(GameMap map, GameMapIndex index, ChunkSectionPos offset) {
+
+        public static Placement of(GameMap map, ChunkSectionPos offset) {
+            return new Placement(map, GameMapIndex.of(map), offset);
+        }
+
+        public static Placement of(GameMap map, GameMapTransform transform, ChunkSectionPos offset) {
+            return new Placement(map, GameMapIndex.of(map, transform), offset);
+        }
+    }
+
+    private static final Placement[] EMPTY = new Placement[0];
+
+    private final List<Placement> placements;
+    private final Long2ObjectMap<Placement[]> columns = new Long2ObjectOpenHashMap<>();
+
+    private final int minY;
+    private final int maxY;
+
+    /**
+     * Create a composite generator.
+     *
+     * @param placements The maps to generate, in drawing order. Must contain at
+     *                   least one map, and all maps must share a biome
+     *                   registry.
+     */
+    public CompositeGameMapChunkGenerator(List<Placement> placements) {
+        this(List.copyOf(placements), new CompositeBiomeSource());
+    }
+
+    private CompositeGameMapChunkGenerator(List<Placement> placements, CompositeBiomeSource biomeSource) {
+        super(biomeSource);
+        if (placements.isEmpty())
+            throw new IllegalArgumentException("A composite generator needs at least one map.");
+        this.placements = placements;
+
+        Long2ObjectMap<List<Placement>> columnLists = new Long2ObjectOpenHashMap<>();
+        int minY = Integer.MAX_VALUE;
+        int maxY = Integer.MIN_VALUE;
+
+        for (Placement placement : placements) {
+            GameMapIndex index = placement.index();
+            ChunkSectionPos offset = placement.offset();
+            for (long key : index.getColumnPositions()) {
+                long worldKey = ChunkPos.toLong(ChunkPos.getPackedX(key) + offset.getX(),
+                        ChunkPos.getPackedZ(key) + offset.getZ());
+                columnLists.computeIfAbsent(worldKey, l -> new ArrayList<>(1)).add(placement);
+            }
+
+            if (!index.isEmpty()) {
+                minY = Math.min(minY, index.getMinY() + offset.getMinY());
+                maxY = Math.max(maxY, index.getMaxY() + offset.getMinY());
+            }
+        }
+
+        for (Long2ObjectMap.Entry<List<Placement>> entry : columnLists.long2ObjectEntrySet()) {
+            columns.put(entry.getLongKey(), entry.getValue().toArray(EMPTY));
+        }
+
+        if (minY > maxY) {
+            minY = maxY = 0;
+        }
+        this.minY = minY;
+        this.maxY = maxY;
+
+        biomeSource.generator = this;
+        biomeSource.fallback = placements.get(0).map().getBiomeRegistry().entryOf(BiomeKeys.THE_VOID);
+    }
+
+    public List<Placement> getPlacements() {
+        return placements;
+    }
+
+    /**
+     * Get the maps that overlap a chunk column.
+     *
+     * @param chunkX Chunk X.
+     * @param chunkZ Chunk Z.
+     * @return The maps, in drawing order. Do not modify.
+     */
+    public Placement[] getPlacements(int chunkX, int chunkZ) {
+        return columns.getOrDefault(ChunkPos.toLong(chunkX, chunkZ), EMPTY);
+    }
+
+    @Override
+    public CompletableFuture<Chunk> populateNoise(Executor executor, Blender blender, NoiseConfig noiseConfig,
+            StructureAccessor structureAccessor, Chunk chunk) {
+        ChunkPos chunkPos = chunk.getPos();
+        Placement[] overlapping = getPlacements(chunkPos.x, chunkPos.z);
+        if (overlapping.length == 0)
+            return CompletableFuture.completedFuture(chunk);
+
+        return CompletableFuture.supplyAsync(() -> {
+            for (Placement placement : overlapping) {
+                populateFrom(chunk, chunkPos, placement);
+            }
+            return chunk;
+        }, executor);
+    }
+
+    private void populateFrom(Chunk chunk, ChunkPos chunkPos, Placement placement) {
+        GameMapIndex index = placement.index();
+        ChunkSectionPos offset = placement.offset();
+        GameChunk[] column = index.getColumn(chunkPos.x - offset.getX(), chunkPos.z - offset.getZ());
+        if (column == null)
+            return;
+
+        int minSectionY = index.getMinSectionY() + offset.getY();
+        for (int i = column.length - 1; i >= 0; i--) {
+            GameChunk gameChunk = column[i];
+            if (gameChunk == null)
+                continue;
+
+            int sectionY = i + minSectionY;
+            int sectionIndex = chunk.sectionCoordToIndex(sectionY);
+            if (sectionIndex < 0 || sectionIndex >= chunk.countVerticalSections())
+                continue;
+
+            var section = chunk.getSection(sectionIndex);
+            section.lock();
+            try {
+                GameMapChunkGenerator.addSection(chunk, section, index.getTransform(), gameChunk,
+                        ChunkSectionPos.from(chunkPos, sectionY));
+            } finally {
+                section.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void populateEntities(ChunkRegion region) {
+        ChunkPos chunkPos = region.getCenterPos();
+        Placement[] overlapping = getPlacements(chunkPos.x, chunkPos.z);
+        if (overlapping.length == 0)
+            return;
+
+        ProtoChunk chunk = (ProtoChunk) region.getChunk(chunkPos.x, chunkPos.z);
+        int bottomY = region.getBottomY();
+        int topY = region.getTopY();
+
+        for (Placement placement : overlapping) {
+            ChunkSectionPos offset = placement.offset();
+            Vec3d blockOffset = Vec3d.of(offset.getMinPos());
+            for (GameMapEntity entity : placement.index().getEntities(chunkPos.x - offset.getX(),
+                    chunkPos.z - offset.getZ())) {
+                Vec3d pos = entity.pos().add(blockOffset);
+                int y = MathHelper.floor(pos.y);
+                if (bottomY <= y && y <= topY) {
+                    chunk.addEntity(entity.withPos(pos).createEntityNbt());
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getMinimumY() {
+        return minY;
+    }
+
+    @Override
+    public int getWorldHeight() {
+        return maxY - minY;
+    }
+
+    @Override
+    public int getHeight(int x, int z, Type heightmap, HeightLimitView world, NoiseConfig noiseConfig) {
+        int height = Integer.MIN_VALUE;
+        for (Placement placement : getPlacements(x >> 4, z >> 4)) {
+            ChunkSectionPos offset = placement.offset();
+            GameMapIndex index = placement.index();
+            int mapX = x - offset.getMinX();
+            int mapZ = z - offset.getMinZ();
+            if (index.getColumn(mapX >> 4, mapZ >> 4) == null)
+                continue;
+
+            height = Math.max(height, index.getHeight(mapX, mapZ, heightmap) + offset.getMinY());
+        }
+        return height != Integer.MIN_VALUE ? height : 0;
+    }
+
+    @Override
+    public VerticalBlockSample getColumnSample(int x, int z, HeightLimitView world, NoiseConfig noiseConfig) {
+        Placement[] overlapping = getPlacements(x >> 4, z >> 4);
+        if (overlapping.length == 0)
+            return VOID_SAMPLE;
+
+        BlockState[] column = new BlockState[maxY - minY + 1];
+        for (int y = maxY; y >= minY; y--) {
+            BlockState state = AIR;
+            for (Placement placement : overlapping) {
+                ChunkSectionPos offset = placement.offset();
+                BlockState mapState = placement.index().getBlock(x - offset.getMinX(), y - offset.getMinY(),
+                        z - offset.getMinZ());
+                if (!mapState.isAir())
+                    state = mapState;
+            }
+            column[y - minY] = state;
+        }
+
+        return new VerticalBlockSample(minY, column);
+    }
+
+    /**
+     * Looks up biomes in whichever map has a section at the position, with the
+     * last map winning.
+     */
+    private static class CompositeBiomeSource extends BiomeSource {
+        private CompositeGameMapChunkGenerator generator;
+        private RegistryEntry<Biome> fallback;
+
+        @Override
+        protected Codec<? extends BiomeSource> getCodec() {
+            return GameMapBiomeSource.CODEC;
+        }
+
+        @Override
+        protected Stream<RegistryEntry<Biome>> biomeStream() {
+            Set<RegistryEntry<Biome>> biomes = new HashSet<>();
+            for (Placement placement : generator.placements) {
+                biomes.addAll(GameMapBiomeSource.collectBiomes(placement.map()));
+            }
+            biomes.add(fallback);
+            return biomes.stream();
+        }
+
+        @Override
+        public RegistryEntry<Biome> getBiome(int x, int y, int z, MultiNoiseSampler noise) {
+            int blockX = BiomeCoords.toBlock(x);
+            int blockY = BiomeCoords.toBlock(y);
+            int blockZ = BiomeCoords.toBlock(z);
+
+            Placement[] overlapping = generator.getPlacements(blockX >> 4, blockZ >> 4);
+            for (int i = overlapping.length - 1; i >= 0; i--) {
+                Placement placement = overlapping[i];
+                ChunkSectionPos offset = placement.offset();
+                GameMapIndex index = placement.index();
+                int mapX = blockX - offset.getMinX();
+                int mapY = blockY - offset.getMinY();
+                int mapZ = blockZ - offset.getMinZ();
+
+                GameChunk section = index.getSection(mapX >> 4, mapY >> 4, mapZ >> 4);
+                if (section == null)
+                    continue;
+
+                // Transforms keep biome cells aligned, so any block of the cell will do.
+                GameMapTransform inverse = index.getTransform().inverse();
+                int localX = inverse.transformX(mapX & 0xF, mapZ & 0xF, 15);
+                int localZ = inverse.transformZ(mapX & 0xF, mapZ & 0xF, 15);
+                return section.getBiome(localX, mapY & 0xF, localZ);
+            }
+
+            return fallback;
+        }
+    }
+}
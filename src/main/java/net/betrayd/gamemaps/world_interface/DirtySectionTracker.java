@@ -0,0 +1,190 @@
+package net.betrayd.gamemaps.world_interface;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.betrayd.gamemaps.EntityFilter;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.World;
+
+/**
+ * Keeps track of which chunk sections of a world have changed inside a set of
+ * {@link TrackedRegion}s and {@link RegionSnapshot}s. Block changes, block
+ * entity changes and block entity data updates are reported through mixins.
+ * Must only be used from the server thread.
+ */
+public class DirtySectionTracker {
+
+    /**
+     * Get the dirty tracker of a world, creating it if it doesn't exist.
+     *
+     * @param world The world.
+     * @return The dirty tracker.
+     */
+    public static DirtySectionTracker get(ServerWorld world) {
+        DirtyTrackingWorld trackingWorld = (DirtyTrackingWorld) world;
+        DirtySectionTracker tracker = trackingWorld.gamemaps$getDirtyTracker();
+        if (tracker == null) {
+            tracker = new DirtySectionTracker(world);
+            trackingWorld.gamemaps$setDirtyTracker(tracker);
+        }
+        return tracker;
+    }
+
+    /**
+     * Mark the section containing a block as dirty if the world is being
+     * tracked. Called from mixins.
+     *
+     * @param world The world.
+     * @param pos   Block that changed.
+     */
+    public static void markDirty(World world, BlockPos pos) {
+        DirtySectionTracker tracker = ((DirtyTrackingWorld) world).gamemaps$getDirtyTracker();
+        if (tracker != null)
+            tracker.markDirty(pos);
+    }
+
+    /**
+     * Notify the tracker of a world that a block is about to change, so
+     * snapshots can copy its section first. Called from mixins.
+     *
+     * @param world The world.
+     * @param pos   Block that will change.
+     */
+    public static void beforeBlockChange(World world, BlockPos pos) {
+        DirtySectionTracker tracker = ((DirtyTrackingWorld) world).gamemaps$getDirtyTracker();
+        if (tracker != null)
+            tracker.beforeBlockChange(pos);
+    }
+
+    private final ServerWorld world;
+    private final List<TrackedRegion> regions = new ArrayList<>();
+    private final List<RegionSnapshot> snapshots = new ArrayList<>();
+
+    private DirtySectionTracker(ServerWorld world) {
+        this.world = world;
+    }
+
+    public ServerWorld getWorld() {
+        return world;
+    }
+
+    /**
+     * Start tracking changes to a region of the world.
+     *
+     * @param pos1         One end of the bounding box (world space).
+     * @param pos2         Other end of the bounding box (world space).
+     * @param origin       Chunk section pos to use as the origin.
+     * @param entityFilter Entity filter to use.
+     * @param options      Options deciding which sections to keep.
+     * @return The tracked region. Call {@link TrackedRegion#close()} to stop
+     *         tracking.
+     * @see WorldAlignedMapCapture#capture
+     */
+    public TrackedRegion track(ChunkSectionPos pos1, ChunkSectionPos pos2, @Nullable ChunkSectionPos origin,
+            @Nullable EntityFilter entityFilter, @Nullable CaptureOptions options) {
+        ChunkSectionPos minPos = ChunkSectionPos.from(Math.min(pos1.getX(), pos2.getX()),
+                Math.min(pos1.getY(), pos2.getY()), Math.min(pos1.getZ(), pos2.getZ()));
+        ChunkSectionPos maxPos = ChunkSectionPos.from(Math.max(pos1.getX(), pos2.getX()),
+                Math.max(pos1.getY(), pos2.getY()), Math.max(pos1.getZ(), pos2.getZ()));
+
+        TrackedRegion region = new TrackedRegion(this, minPos, maxPos,
+                origin != null ? origin : ChunkSectionPos.from(0, 0, 0), entityFilter, options);
+        regions.add(region);
+        return region;
+    }
+
+    public List<TrackedRegion> getRegions() {
+        return List.copyOf(regions);
+    }
+
+    /**
+     * Take a snapshot of a region of the world that can be restored later.
+     * Nothing is copied up front except block entities; each section is copied
+     * right before it's first modified.
+     *
+     * @param pos1            One end of the bounding box (world space).
+     * @param pos2            Other end of the bounding box (world space).
+     * @param includeEntities Also restore the entities in the region.
+     * @return The snapshot. Call {@link RegionSnapshot#close()} to stop
+     *         tracking.
+     */
+    public RegionSnapshot snapshot(ChunkSectionPos pos1, ChunkSectionPos pos2, boolean includeEntities) {
+        ChunkSectionPos minPos = ChunkSectionPos.from(Math.min(pos1.getX(), pos2.getX()),
+                Math.min(pos1.getY(), pos2.getY()), Math.min(pos1.getZ(), pos2.getZ()));
+        ChunkSectionPos maxPos = ChunkSectionPos.from(Math.max(pos1.getX(), pos2.getX()),
+                Math.max(pos1.getY(), pos2.getY()), Math.max(pos1.getZ(), pos2.getZ()));
+
+        RegionSnapshot snapshot = new RegionSnapshot(this, minPos, maxPos, includeEntities);
+        snapshots.add(snapshot);
+        return snapshot;
+    }
+
+    public List<RegionSnapshot> getSnapshots() {
+        return List.copyOf(snapshots);
+    }
+
+    public boolean hasSnapshots() {
+        return !snapshots.isEmpty();
+    }
+
+    /**
+     * Let every snapshot containing a block copy its section before the block
+     * changes.
+     *
+     * @param pos Block that will change.
+     */
+    public void beforeBlockChange(BlockPos pos) {
+        if (snapshots.isEmpty())
+            return;
+
+        int x = ChunkSectionPos.getSectionCoord(pos.getX());
+        int y = ChunkSectionPos.getSectionCoord(pos.getY());
+        int z = ChunkSectionPos.getSectionCoord(pos.getZ());
+
+        for (int i = 0; i < snapshots.size(); i++) {
+            RegionSnapshot snapshot = snapshots.get(i);
+            if (snapshot.contains(x, z))
+                snapshot.beforeChange(x, y, z);
+        }
+    }
+
+    /**
+     * Mark the section containing a block as dirty in every region that
+     * contains it.
+     *
+     * @param pos Block that changed.
+     */
+    public void markDirty(BlockPos pos) {
+        if (regions.isEmpty() && snapshots.isEmpty())
+            return;
+
+        int x = ChunkSectionPos.getSectionCoord(pos.getX());
+        int y = ChunkSectionPos.getSectionCoord(pos.getY());
+        int z = ChunkSectionPos.getSectionCoord(pos.getZ());
+
+        for (int i = 0; i < regions.size(); i++) {
+            TrackedRegion region = regions.get(i);
+            if (region.contains(x, z))
+                region.markDirty(ChunkSectionPos.asLong(x, y, z));
+        }
+
+        for (int i = 0; i < snapshots.size(); i++) {
+            RegionSnapshot snapshot = snapshots.get(i);
+            if (snapshot.contains(x, z))
+                snapshot.markDirty(pos);
+        }
+    }
+
+    void remove(TrackedRegion region) {
+        regions.remove(region);
+    }
+
+    void remove(RegionSnapshot snapshot) {
+        snapshots.remove(snapshot);
+    }
+}
@@ -0,0 +1,16 @@
+package net.betrayd.gamemaps.world_interface;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Implemented on {@link net.minecraft.world.World} through a mixin, so the
+ * dirty tracker of a world can be found without a map lookup on every block
+ * change.
+ */
+public interface DirtyTrackingWorld {
+
+    @Nullable
+    public DirtySectionTracker gamemaps$getDirtyTracker();
+
+    public void gamemaps$setDirtyTracker(@Nullable DirtySectionTracker tracker);
+}
@@ -1,15 +1,20 @@
 package net.betrayd.gamemaps.world_interface;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.stream.Stream;
 
 import org.jetbrains.annotations.Nullable;
 
 import com.mojang.serialization.Codec;
 
+import net.betrayd.gamemaps.GameChunk;
 import net.betrayd.gamemaps.GameMap;
-import net.minecraft.registry.Registry;
+import net.betrayd.gamemaps.GameMapTransform;
 import net.minecraft.registry.entry.RegistryEntry;
 import net.minecraft.world.biome.Biome;
+import net.minecraft.world.biome.BiomeKeys;
 import net.minecraft.world.biome.source.BiomeCoords;
 import net.minecraft.world.biome.source.BiomeSource;
 import net.minecraft.world.biome.source.FixedBiomeSource;
@@ -17,7 +22,9 @@ import net.minecraft.world.biome.source.util.MultiNoiseUtil.MultiNoiseSampler;
 
 /**
  * A <code>BiomeSource</code> based on the biomes from a game map, mainly for
- * use in {@link GameMapChunkGenerator}.
+ * use in {@link GameMapChunkGenerator}. Only the biomes that actually appear
+ * in the map are reported to the game, along with a fallback biome for
+ * everywhere outside of it.
  */
 public class GameMapBiomeSource extends BiomeSource {
 
@@ -31,15 +38,87 @@ public class GameMapBiomeSource extends BiomeSource {
             }).stable().codec();
 
     private final GameMap gameMap;
+    private final GameMapIndex index;
+    private final GameMapTransform inverse;
+    private final RegistryEntry<Biome> fallback;
+    private final Set<RegistryEntry<Biome>> usedBiomes;
 
     public GameMapBiomeSource(GameMap gameMap) {
+        this(gameMap, GameMapIndex.of(gameMap));
+    }
+
+    /**
+     * Create a biome source for a transformed view of a game map.
+     * 
+     * @param gameMap   The game map.
+     * @param transform Transform the map is generated with.
+     */
+    public GameMapBiomeSource(GameMap gameMap, GameMapTransform transform) {
+        this(gameMap, GameMapIndex.of(gameMap, transform));
+    }
+
+    /**
+     * Create a biome source with a prebuilt index, using the void biome outside
+     * of the map.
+     * 
+     * @param gameMap The game map.
+     * @param index   Index of the game map. Its transform is applied.
+     */
+    public GameMapBiomeSource(GameMap gameMap, GameMapIndex index) {
+        this(gameMap, index, gameMap.getBiomeRegistry().entryOf(BiomeKeys.THE_VOID));
+    }
+
+    /**
+     * Create a biome source with a prebuilt index.
+     * 
+     * @param gameMap  The game map.
+     * @param index    Index of the game map. Its transform is applied.
+     * @param fallback Biome to use where the map has no sections.
+     */
+    public GameMapBiomeSource(GameMap gameMap, GameMapIndex index, RegistryEntry<Biome> fallback) {
         this.gameMap = gameMap;
+        this.index = index;
+        this.inverse = index.getTransform().inverse();
+        this.fallback = fallback;
+
+        Set<RegistryEntry<Biome>> biomes = collectBiomes(gameMap);
+        biomes.add(fallback);
+        this.usedBiomes = Collections.unmodifiableSet(biomes);
+    }
+
+    /**
+     * Find all the biomes used in a game map, from the palettes of its biome
+     * containers.
+     * 
+     * @param gameMap The game map.
+     * @return A new, mutable set of biomes.
+     */
+    public static Set<RegistryEntry<Biome>> collectBiomes(GameMap gameMap) {
+        Set<RegistryEntry<Biome>> biomes = new HashSet<>();
+        for (GameChunk chunk : gameMap.getChunks().values()) {
+            chunk.getBiomeContainer().count((biome, count) -> biomes.add(biome));
+        }
+        return biomes;
     }
     
     @Nullable
     public GameMap getGameMap() {
         return gameMap;
     }
+
+    public RegistryEntry<Biome> getFallback() {
+        return fallback;
+    }
+
+    /**
+     * Get all the biomes that this source can return.
+     * 
+     * @return An unmodifiable set of the biomes used in the map, plus the
+     *         fallback.
+     */
+    public Set<RegistryEntry<Biome>> getUsedBiomes() {
+        return usedBiomes;
+    }
     
     public Codec<BiomeSource> getCodec() {
         return CODEC;
@@ -47,11 +126,7 @@ public class GameMapBiomeSource extends BiomeSource {
 
     @Override
     protected Stream<RegistryEntry<Biome>> biomeStream() {
-        if (gameMap == null) {
-        }
-
-        Registry<Biome> biomes = gameMap.getBiomeRegistry();
-        return gameMap.getBiomeRegistry().streamEntries().map(b -> biomes.getEntry(b.value()));
+        return usedBiomes.stream();
     }
 
     @Override
@@ -60,7 +135,20 @@ public class GameMapBiomeSource extends BiomeSource {
         int blockY = BiomeCoords.toBlock(y);
         int blockZ = BiomeCoords.toBlock(z);
 
-        return gameMap.getBiome(blockX, blockY, blockZ);
+        GameChunk section = index.getSection(blockX >> 4, blockY >> 4, blockZ >> 4);
+        if (section == null)
+            return fallback;
+
+        // Biome cells are 4 blocks wide and stay aligned when transformed.
+        int localX = blockX & 0xF;
+        int localZ = blockZ & 0xF;
+        if (!inverse.isIdentity()) {
+            int originalX = inverse.transformX(localX, localZ, 15);
+            localZ = inverse.transformZ(localX, localZ, 15);
+            localX = originalX;
+        }
+
+        return section.getBiome(localX, blockY & 0xF, localZ);
     }
     
 }
@@ -3,24 +3,41 @@ package net.betrayd.gamemaps.world_interface;
 import org.jetbrains.annotations.Nullable;
 
 import net.betrayd.gamemaps.EntityFilter;
+import net.betrayd.gamemaps.GameChunk;
 import net.betrayd.gamemaps.GameMap;
 import net.betrayd.gamemaps.GameMapEntity;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.entity.Entity;
+import net.minecraft.registry.Registry;
 import net.minecraft.registry.RegistryKeys;
+import net.minecraft.registry.entry.RegistryEntry;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Box;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.MathHelper;
 import net.minecraft.util.math.Vec3d;
 import net.minecraft.util.math.Vec3i;
 import net.minecraft.world.World;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.biome.source.BiomeCoords;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.PalettedContainer;
 
 /**
  * Reads an mc world and creates a game map from it. This capture implementation
- * reads the world block-by-block. While this allows game maps of any size and
- * offset to be captured, it's much slower than
- * {@link WorldAlignedMapCapture}.
+ * allows game maps of any size and offset to be captured. Sections that are
+ * fully covered by the capture box are copied wholesale if the offset is
+ * section-aligned; all other sections are read block-by-block directly from the
+ * chunk data. For large, section-aligned captures, {@link WorldAlignedMapCapture}
+ * is still faster.
  */
 public class GameMapCapture {
+    private static final BlockState AIR = Blocks.AIR.getDefaultState();
+
     public static GameMap read(World world, BlockPos pos1, BlockPos pos2) {
         return read(world, pos1, pos2, null);
     }
@@ -29,34 +46,73 @@ public class GameMapCapture {
         BlockPos minPos = min(pos1, pos2);
         BlockPos maxPos = max(pos1, pos2);
 
-        GameMap map = new GameMap(world.getRegistryManager().get(RegistryKeys.BIOME));
+        Registry<Biome> biomeRegistry = world.getRegistryManager().get(RegistryKeys.BIOME);
+        GameMap map = new GameMap(biomeRegistry);
+
+        boolean aligned = (pos1.getX() & 0xF) == 0 && (pos1.getY() & 0xF) == 0 && (pos1.getZ() & 0xF) == 0;
+
+        for (int chunkX = minPos.getX() >> 4; chunkX <= maxPos.getX() >> 4; chunkX++) {
+            for (int chunkZ = minPos.getZ() >> 4; chunkZ <= maxPos.getZ() >> 4; chunkZ++) {
+                Chunk chunk = world.getChunk(chunkX, chunkZ);
+
+                for (int sectionY = minPos.getY() >> 4; sectionY <= maxPos.getY() >> 4; sectionY++) {
+                    int index = chunk.sectionCoordToIndex(sectionY);
+                    if (index < 0 || index >= chunk.countVerticalSections())
+                        continue;
+
+                    ChunkSection section = chunk.getSection(index);
+                    ChunkSectionPos sectionPos = ChunkSectionPos.from(chunkX, sectionY, chunkZ);
+
+                    BlockPos sectionMin = new BlockPos(
+                            Math.max(minPos.getX(), sectionPos.getMinX()),
+                            Math.max(minPos.getY(), sectionPos.getMinY()),
+                            Math.max(minPos.getZ(), sectionPos.getMinZ()));
+
+                    BlockPos sectionMax = new BlockPos(
+                            Math.min(maxPos.getX(), sectionPos.getMaxX()),
+                            Math.min(maxPos.getY(), sectionPos.getMaxY()),
+                            Math.min(maxPos.getZ(), sectionPos.getMaxZ()));
+
+                    if (aligned && sectionMin.equals(sectionPos.getMinPos()) && sectionMax.equals(sectionPos.getMaxPos())) {
+                        ChunkSectionPos targetPos = ChunkSectionPos.from(
+                                chunkX - (pos1.getX() >> 4),
+                                sectionY - (pos1.getY() >> 4),
+                                chunkZ - (pos1.getZ() >> 4));
+
+                        map.putChunk(targetPos, new GameChunk(section.getBlockStateContainer().copy(),
+                                ((PalettedContainer<RegistryEntry<Biome>>) section.getBiomeContainer()).copy(),
+                                biomeRegistry));
+                    } else {
+                        copySection(section, map, sectionMin, sectionMax, pos1);
+                    }
+                }
 
-        for (int y = minPos.getY(); y <= maxPos.getY(); y++) {
-            for (int x = minPos.getX(); x <= maxPos.getX(); x++) {
-                for (int z = minPos.getZ(); z <= maxPos.getZ(); z++) {
-                    BlockPos globalPos = new BlockPos(x, y, z);
-                    map.setBlock(globalPos.subtract(pos1), world.getBlockState(globalPos));
-                    map.setBiome(globalPos.subtract(pos1), world.getBiome(globalPos));
+                for (BlockPos pos : chunk.getBlockEntityPositions()) {
+                    if (!boxContains(minPos, maxPos, pos))
+                        continue;
 
-                    BlockEntity blockEntity = world.getBlockEntity(globalPos);
+                    BlockEntity blockEntity = chunk.getBlockEntity(pos);
                     if (blockEntity != null) {
-                        map.putBlockEntity(globalPos.subtract(pos1), blockEntity);
+                        map.putBlockEntity(pos.subtract(pos1), blockEntity);
                     }
                 }
             }
         }
 
         if (world instanceof ServerWorld serverWorld) {
-            for (Entity ent : serverWorld.iterateEntities()) {
-                if (boxContains(minPos, maxPos, ent.getBlockPos())) {
-                    if (entityFilter != null)
-                        ent = entityFilter.apply(ent, map);
-                    
-                    if (ent == null)
-                        continue;
-
-                    map.addEntity(GameMapEntity.fromEntity(ent.getPos().subtract(Vec3d.of(pos1)), ent));
-                }
+            // Only query the entity sections that overlap the box.
+            Box box = new Box(minPos.getX(), minPos.getY(), minPos.getZ(),
+                    maxPos.getX() + 1, maxPos.getY() + 1, maxPos.getZ() + 1);
+
+            for (Entity ent : serverWorld.getOtherEntities(null, box,
+                    e -> boxContains(minPos, maxPos, e.getBlockPos()))) {
+                if (entityFilter != null)
+                    ent = entityFilter.apply(ent, map);
+                
+                if (ent == null)
+                    continue;
+
+                map.addEntity(GameMapEntity.fromEntity(ent.getPos().subtract(Vec3d.of(pos1)), ent));
             }
         }
 
@@ -66,6 +122,62 @@ public class GameMapCapture {
     }
 
 
+    /**
+     * Copy part of a chunk section into a game map block-by-block.
+     * 
+     * @param section Section to copy from.
+     * @param map     Map to copy into.
+     * @param min     Minimum world position to copy (inclusive).
+     * @param max     Maximum world position to copy (inclusive).
+     * @param origin  World position of the map's origin.
+     */
+    private static void copySection(ChunkSection section, GameMap map, BlockPos min, BlockPos max, BlockPos origin) {
+        long lastKey = Long.MIN_VALUE;
+        GameChunk target = null;
+
+        for (int y = min.getY(); y <= max.getY(); y++) {
+            for (int z = min.getZ(); z <= max.getZ(); z++) {
+                for (int x = min.getX(); x <= max.getX(); x++) {
+                    int mapX = x - origin.getX();
+                    int mapY = y - origin.getY();
+                    int mapZ = z - origin.getZ();
+
+                    long key = ChunkSectionPos.asLong(mapX >> 4, mapY >> 4, mapZ >> 4);
+                    if (key != lastKey) {
+                        target = map.getOrCreateChunk(ChunkSectionPos.from(key));
+                        lastKey = key;
+                    }
+
+                    // New game chunks are already filled with air.
+                    BlockState state = section.getBlockState(x & 0xF, y & 0xF, z & 0xF);
+                    if (state != AIR) {
+                        target.setBlockState(mapX & 0xF, mapY & 0xF, mapZ & 0xF, state);
+                    }
+                }
+            }
+        }
+
+        // Sample biomes once per biome cell of the target map.
+        for (int mapY = (min.getY() - origin.getY()) & ~3; mapY <= max.getY() - origin.getY(); mapY += 4) {
+            for (int mapZ = (min.getZ() - origin.getZ()) & ~3; mapZ <= max.getZ() - origin.getZ(); mapZ += 4) {
+                for (int mapX = (min.getX() - origin.getX()) & ~3; mapX <= max.getX() - origin.getX(); mapX += 4) {
+                    int x = MathHelper.clamp(mapX + origin.getX(), min.getX(), max.getX());
+                    int y = MathHelper.clamp(mapY + origin.getY(), min.getY(), max.getY());
+                    int z = MathHelper.clamp(mapZ + origin.getZ(), min.getZ(), max.getZ());
+
+                    RegistryEntry<Biome> biome = section.getBiome(
+                            BiomeCoords.fromBlock(x & 0xF), BiomeCoords.fromBlock(y & 0xF), BiomeCoords.fromBlock(z & 0xF));
+
+                    int targetX = x - origin.getX();
+                    int targetY = y - origin.getY();
+                    int targetZ = z - origin.getZ();
+                    map.getOrCreateChunk(ChunkSectionPos.from(targetX >> 4, targetY >> 4, targetZ >> 4))
+                            .setBiome(targetX & 0xF, targetY & 0xF, targetZ & 0xF, biome);
+                }
+            }
+        }
+    }
+
     private static interface TriIntFunction<T> {
         public T apply(int a, int b, int c);
     }
@@ -1,23 +1,32 @@
 package net.betrayd.gamemaps.world_interface;
 
-import java.util.Map;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
-import java.util.stream.Collectors;
+
+import org.jetbrains.annotations.Nullable;
 
 import net.betrayd.gamemaps.GameChunk;
 import net.betrayd.gamemaps.GameMap;
 import net.betrayd.gamemaps.GameMapEntity;
+import net.betrayd.gamemaps.GameMapTransform;
+import net.betrayd.gamemaps.metrics.GameMapMetrics;
+import net.betrayd.gamemaps.metrics.MapMetrics;
 import net.minecraft.block.BlockState;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.MathHelper;
 import net.minecraft.world.ChunkRegion;
 import net.minecraft.world.HeightLimitView;
 import net.minecraft.world.Heightmap;
 import net.minecraft.world.Heightmap.Type;
+import net.minecraft.world.biome.source.BiomeSource;
 import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkNibbleArray;
 import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.PalettedContainer;
 import net.minecraft.world.chunk.ProtoChunk;
 import net.minecraft.world.gen.StructureAccessor;
 import net.minecraft.world.gen.chunk.Blender;
@@ -31,6 +40,7 @@ import net.minecraft.world.gen.noise.NoiseConfig;
 public class GameMapChunkGenerator extends SimpleChunkGenerator {
 
     private final GameMap gameMap;
+    private final GameMapIndex index;
 
     private final int minX;
     private final int maxX;
@@ -41,86 +51,302 @@ public class GameMapChunkGenerator extends SimpleChunkGenerator {
     private final int minZ;
     private final int maxZ;
 
-    private final HeightmapCache heightmapCache = new HeightmapCache();
+    private boolean usePrecomputedLight;
+
+    @Nullable
+    private TemplateChunkStore templateStore;
 
     public GameMapChunkGenerator(GameMap gameMap) {
-        super(new GameMapBiomeSource(gameMap));
+        this(gameMap, GameMapIndex.of(gameMap));
+    }
+
+    /**
+     * Create a game map chunk generator that generates a rotated and/or
+     * mirrored version of a map. The map is transformed section by section as
+     * it's generated, without being copied.
+     * 
+     * @param gameMap   Game map to generate.
+     * @param transform Transform to apply.
+     */
+    public GameMapChunkGenerator(GameMap gameMap, GameMapTransform transform) {
+        this(gameMap, GameMapIndex.of(gameMap, transform));
+    }
+
+    /**
+     * Create a game map chunk generator with a prebuilt index.
+     * 
+     * @param gameMap Game map to generate.
+     * @param index   Index of the game map. Its transform is applied to the
+     *                generated map.
+     */
+    public GameMapChunkGenerator(GameMap gameMap, GameMapIndex index) {
+        this(gameMap, index, new GameMapBiomeSource(gameMap, index));
+    }
+
+    protected GameMapChunkGenerator(GameMap gameMap, GameMapIndex index, BiomeSource biomeSource) {
+        super(biomeSource);
         this.gameMap = gameMap;
+        this.index = index;
 
-        minX = GameMapUtils.calcMinX(gameMap.getChunks().keySet());
-        maxX = GameMapUtils.calcMaxX(gameMap.getChunks().keySet());
+        minX = index.getMinX();
+        maxX = index.getMaxX();
 
-        minY = GameMapUtils.calcMinY(gameMap.getChunks().keySet());
-        maxY = GameMapUtils.calcMaxY(gameMap.getChunks().keySet());
+        minY = index.getMinY();
+        maxY = index.getMaxY();
 
-        minZ = GameMapUtils.calcMinZ(gameMap.getChunks().keySet());
-        maxZ = GameMapUtils.calcMaxZ(gameMap.getChunks().keySet());
+        minZ = index.getMinZ();
+        maxZ = index.getMaxZ();
     }
 
     public GameMap getGameMap() {
         return gameMap;
     }
 
+    public GameMapIndex getIndex() {
+        return index;
+    }
+
+    public boolean usePrecomputedLight() {
+        return usePrecomputedLight;
+    }
+
+    /**
+     * Set whether to use the light stored in the game map instead of running
+     * the light engine on generated chunks. Chunks where any section is missing
+     * its light, or was modified after capture, are lit normally.
+     * 
+     * @param usePrecomputedLight Use precomputed light.
+     * @return <code>this</code>
+     * @see CaptureOptions#setCaptureLight
+     */
+    public GameMapChunkGenerator setUsePrecomputedLight(boolean usePrecomputedLight) {
+        this.usePrecomputedLight = usePrecomputedLight;
+        return this;
+    }
+
+    @Nullable
+    public TemplateChunkStore getTemplateStore() {
+        return templateStore;
+    }
+
+    /**
+     * Set a store to copy already generated columns from, and to keep newly
+     * generated columns in. Worlds that share a store, map and transform only
+     * generate each column once, as long as it isn't evicted.
+     * 
+     * @param templateStore Template store to use, or <code>null</code> to
+     *                      always generate chunks from the map.
+     * @return <code>this</code>
+     * @throws IllegalStateException If the game map isn't frozen.
+     */
+    public GameMapChunkGenerator setTemplateStore(@Nullable TemplateChunkStore templateStore) {
+        if (templateStore != null && !gameMap.isFrozen())
+            throw new IllegalStateException("Only frozen maps can be generated from templates.");
+        this.templateStore = templateStore;
+        return this;
+    }
+
     @Override
     public CompletableFuture<Chunk> populateNoise(Executor executor, Blender blender, NoiseConfig noiseConfig,
             StructureAccessor structureAccessor, Chunk chunk) {
         ChunkPos chunkPos = chunk.getPos();
         
-        Map<ChunkSectionPos, GameChunk> gameChunks = gameMap.getChunks().entrySet().stream().filter(e -> {
-            return (e.getKey().getX() == chunkPos.x)
-                && (e.getKey().getZ() == chunkPos.z);
-        }).collect(Collectors.toMap(e -> e.getKey(), e -> e.getValue()));
-
-        if (gameChunks.isEmpty()) return CompletableFuture.completedFuture(chunk);
+        ChunkPos mapPos = getMapColumnPos(chunkPos.x, chunkPos.z);
+        GameChunk[] column = mapPos != null ? index.getColumn(mapPos.x, mapPos.z) : null;
+        if (column == null) return CompletableFuture.completedFuture(chunk);
 
-        int minSectionY = ChunkSectionPos.getSectionCoord(minY);
-        int maxSectionY = ChunkSectionPos.getSectionCoord(maxY);
+        int minSectionY = index.getMinSectionY();
 
         return CompletableFuture.supplyAsync(() -> {
-            for (int sectionY = maxSectionY; sectionY >= minSectionY; sectionY--) {
-                
-                ChunkSectionPos sectionPos = ChunkSectionPos.from(chunkPos, sectionY);
-                GameChunk gameChunk = gameMap.getChunk(sectionPos);
+            long startTime = System.nanoTime();
+            TemplateChunkStore.Template template = templateStore != null
+                    ? templateStore.get(gameMap, index.getTransform(), mapPos.x, mapPos.z)
+                    : null;
+            if (template != null) {
+                int sections = populateFromTemplate(chunk, column, template, minSectionY);
+                MapMetrics.get().onOperation(GameMapMetrics.Operation.GENERATE, System.nanoTime() - startTime,
+                        sections, 0);
+                return chunk;
+            }
+
+            int sections = 0;
+
+            for (int i = column.length - 1; i >= 0; i--) {
+                GameChunk gameChunk = column[i];
                 if (gameChunk == null)
                     continue;
 
-                var section = chunk.getSection(chunk.sectionCoordToIndex(sectionY));
+                int sectionY = i + minSectionY;
+                int sectionIndex = chunk.sectionCoordToIndex(sectionY);
+                if (sectionIndex < 0 || sectionIndex >= chunk.countVerticalSections())
+                    continue;
+
+                ChunkSectionPos sectionPos = ChunkSectionPos.from(chunkPos, sectionY);
+
+                var section = chunk.getSection(sectionIndex);
                 section.lock();
 
                 try {
-                    addSection(chunk, section, gameChunk, sectionPos);
+                    addSection(chunk, section, index.getTransform(), gameChunk, sectionPos);
                 } finally {
                     section.unlock();
                 }
+                sections++;
             }
+
+            if (templateStore != null)
+                storeTemplate(chunk, mapPos, column, minSectionY);
+
+            if (usePrecomputedLight && chunk instanceof PrecomputedLight.Holder holder) {
+                holder.gamemaps$setPrecomputedLight(createLight(chunk, column, minSectionY));
+            }
+            MapMetrics.get().onOperation(GameMapMetrics.Operation.GENERATE, System.nanoTime() - startTime,
+                    sections, 0);
             return chunk;
         }, executor);
 
     }
+
+    /**
+     * Replace a chunk's sections with copies of a template's sections.
+     * 
+     * @return The number of sections replaced.
+     */
+    private int populateFromTemplate(Chunk chunk, GameChunk[] column, TemplateChunkStore.Template template,
+            int minSectionY) {
+        ChunkSection[] sections = chunk.getSectionArray();
+        PalettedContainer<BlockState>[] blocks = template.sections();
+        int count = 0;
+
+        for (int i = 0; i < column.length; i++) {
+            if (column[i] == null || blocks[i] == null)
+                continue;
+
+            int sectionY = i + minSectionY;
+            int sectionIndex = chunk.sectionCoordToIndex(sectionY);
+            if (sectionIndex < 0 || sectionIndex >= sections.length)
+                continue;
+
+            // Biomes were populated in an earlier step.
+            sections[sectionIndex] = new ChunkSection(blocks[i].copy(), sections[sectionIndex].getBiomeContainer());
+            addBlockEntities(chunk, index.getTransform(), column[i], ChunkSectionPos.from(chunk.getPos(), sectionY));
+            count++;
+        }
+
+        Heightmap.populateHeightmaps(chunk, EnumSet.of(Heightmap.Type.OCEAN_FLOOR_WG,
+                Heightmap.Type.WORLD_SURFACE_WG));
+
+        if (usePrecomputedLight && chunk instanceof PrecomputedLight.Holder holder) {
+            holder.gamemaps$setPrecomputedLight(createLight(chunk, column, minSectionY));
+        }
+        return count;
+    }
+
+    private void storeTemplate(Chunk chunk, ChunkPos mapPos, GameChunk[] column, int minSectionY) {
+        @SuppressWarnings("unchecked")
+        PalettedContainer<BlockState>[] blocks = new PalettedContainer[column.length];
+        for (int i = 0; i < column.length; i++) {
+            if (column[i] == null)
+                continue;
+
+            int sectionIndex = chunk.sectionCoordToIndex(i + minSectionY);
+            if (sectionIndex < 0 || sectionIndex >= chunk.countVerticalSections())
+                continue;
+
+            blocks[i] = chunk.getSection(sectionIndex).getBlockStateContainer();
+        }
+        templateStore.put(gameMap, index.getTransform(), mapPos.x, mapPos.z, blocks);
+    }
     
-    private void addSection(Chunk chunk, ChunkSection section, GameChunk gameChunk, ChunkSectionPos chunkPos) {
+    /**
+     * Get the position in the map's index of the column to generate in a chunk
+     * column.
+     * 
+     * @param chunkX Chunk X in the world.
+     * @param chunkZ Chunk Z in the world.
+     * @return The column position, or <code>null</code> if no part of the map
+     *         belongs in this chunk column.
+     */
+    @Nullable
+    protected ChunkPos getMapColumnPos(int chunkX, int chunkZ) {
+        return new ChunkPos(chunkX, chunkZ);
+    }
+
+    /**
+     * Get the map sections to generate in a chunk column.
+     * 
+     * @param chunkX Chunk X in the world.
+     * @param chunkZ Chunk Z in the world.
+     * @return The sections, as in {@link GameMapIndex#getColumn}, or
+     *         <code>null</code> if the column is empty.
+     */
+    @Nullable
+    protected GameChunk[] getColumn(int chunkX, int chunkZ) {
+        ChunkPos mapPos = getMapColumnPos(chunkX, chunkZ);
+        return mapPos != null ? index.getColumn(mapPos.x, mapPos.z) : null;
+    }
+
+    /**
+     * Get the entities to spawn in a chunk column.
+     * 
+     * @param chunkX Chunk X in the world.
+     * @param chunkZ Chunk Z in the world.
+     * @return The entities, with their world positions.
+     */
+    protected List<GameMapEntity> getEntities(int chunkX, int chunkZ) {
+        return index.getEntities(chunkX, chunkZ);
+    }
+
+    /**
+     * Write a map section into a chunk section during noise population. Air is
+     * skipped, so sections from several maps can be layered.
+     */
+    static void addSection(Chunk chunk, ChunkSection section, GameMapTransform transform, GameChunk gameChunk,
+            ChunkSectionPos chunkPos) {
         var oceanFloor = chunk.getHeightmap(Heightmap.Type.OCEAN_FLOOR_WG);
         var worldSurface = chunk.getHeightmap(Heightmap.Type.WORLD_SURFACE_WG);
 
+        boolean identity = transform.isIdentity();
+        PalettedContainer<BlockState> blocks = gameChunk.getBlockStateContainer();
+        // Walk the source section and move each block forward, so only states need transforming.
+        // Most sections only have a handful of states, so look up the last one before going to the cache.
+        BlockState lastState = null;
+        BlockState lastTransformed = null;
         for (int y = 0; y < 16; y++) {
             for (int z = 0; z < 16; z++) {
                 for (int x = 0; x < 16; x++) {
-                    BlockState state = gameChunk.getBlockState(x, y, z);
+                    BlockState state = blocks.get(x, y, z);
                     if (state.isAir()) continue;
 
-                    section.setBlockState(x, y, z, state, false);
+                    if (state != lastState) {
+                        lastState = state;
+                        lastTransformed = transform.apply(state);
+                    }
+                    int dstX = identity ? x : transform.transformX(x, z, 15);
+                    int dstZ = identity ? z : transform.transformZ(x, z, 15);
 
-                    oceanFloor.trackUpdate(x, y, z, state);
-                    worldSurface.trackUpdate(x, y, z, state);
+                    section.setBlockState(dstX, y, dstZ, lastTransformed, false);
+
+                    oceanFloor.trackUpdate(dstX, y, dstZ, lastTransformed);
+                    worldSurface.trackUpdate(dstX, y, dstZ, lastTransformed);
                 }
             }
         }
 
+        addBlockEntities(chunk, transform, gameChunk, chunkPos);
+    }
+
+    /**
+     * Add the block entities of a map section to a chunk during noise
+     * population.
+     */
+    static void addBlockEntities(Chunk chunk, GameMapTransform transform, GameChunk gameChunk,
+            ChunkSectionPos chunkPos) {
         BlockPos chunkBlockPos = chunkPos.getMinPos();
         gameChunk.getBlockEntities().forEach((pos, nbt) -> {
             if (nbt == null) return;
 
-            BlockPos globalPos = chunkBlockPos.add(pos);
+            BlockPos globalPos = chunkBlockPos.add(transform.applyLocal(pos));
             nbt = nbt.copy();
             nbt.putInt("x", globalPos.getX());
             nbt.putInt("y", globalPos.getY());
@@ -130,18 +356,51 @@ public class GameMapChunkGenerator extends SimpleChunkGenerator {
         });
     }
 
+    /**
+     * Copy the light of a map column into a chunk's sections.
+     * 
+     * @return The light, or <code>null</code> if some sections have no light.
+     */
+    @Nullable
+    private PrecomputedLight createLight(Chunk chunk, GameChunk[] column, int minSectionY) {
+        int sectionCount = chunk.countVerticalSections();
+        ChunkNibbleArray[] skyLight = new ChunkNibbleArray[sectionCount];
+        ChunkNibbleArray[] blockLight = new ChunkNibbleArray[sectionCount];
+
+        for (int i = 0; i < column.length; i++) {
+            GameChunk gameChunk = column[i];
+            if (gameChunk == null)
+                continue;
+
+            int sectionIndex = chunk.sectionCoordToIndex(i + minSectionY);
+            if (sectionIndex < 0 || sectionIndex >= sectionCount)
+                continue;
+
+            if (!gameChunk.hasLight())
+                return null;
+
+            // The light engine takes ownership of the arrays, and transforming makes a copy.
+            GameMapTransform transform = index.getTransform();
+            blockLight[sectionIndex] = transform.apply(gameChunk.getBlockLight());
+            if (gameChunk.getSkyLight() != null)
+                skyLight[sectionIndex] = transform.apply(gameChunk.getSkyLight());
+        }
+
+        return new PrecomputedLight(chunk.getBottomSectionCoord(), skyLight, blockLight);
+    }
+
     @Override
     public void populateEntities(ChunkRegion region) {
         ChunkPos chunkPos = region.getCenterPos();
 
         ProtoChunk chunk = (ProtoChunk) region.getChunk(chunkPos.x, chunkPos.z);
 
-        BlockPos minChunkPos = new BlockPos(chunkPos.getStartX(), region.getBottomY(), chunkPos.getStartZ());
-        BlockPos maxChunkPos = new BlockPos(chunkPos.getEndX(), region.getTopY(), chunkPos.getEndZ());
+        int bottomY = region.getBottomY();
+        int topY = region.getTopY();
 
-        // TODO: optimize this?
-        for (GameMapEntity entity : gameMap.getEntities()) {
-            if (boxContains(minChunkPos, maxChunkPos, BlockPos.ofFloored(entity.pos()))) {
+        for (GameMapEntity entity : getEntities(chunkPos.x, chunkPos.z)) {
+            int y = MathHelper.floor(entity.pos().y);
+            if (bottomY <= y && y <= topY) {
                 chunk.addEntity(entity.createEntityNbt());
             }
         }
@@ -162,8 +421,7 @@ public class GameMapChunkGenerator extends SimpleChunkGenerator {
         if (!isInBounds(x, z))
             return 0;
 
-        return heightmapCache.computeIfAbsent(x, z, heightmap,
-                () -> GameMapUtils.getTopY(x, z, gameMap, minY, maxY, heightmap));
+        return index.getHeight(x, z, heightmap);
     }
 
     @Override
@@ -172,7 +430,7 @@ public class GameMapChunkGenerator extends SimpleChunkGenerator {
 
         BlockState[] column = new BlockState[maxY - minY + 1];
         for (int y = maxY; y >= minY; y--) {
-            column[y] = gameMap.getBlock(x, y, z);
+            column[y - minY] = index.getBlock(x, y, z);
         }
 
         return new VerticalBlockSample(minY, column);
@@ -188,11 +446,4 @@ public class GameMapChunkGenerator extends SimpleChunkGenerator {
         return minX <= x && x <= maxX
             && minZ <= z && z <= maxZ;
     }
-
-    private static boolean boxContains(BlockPos minPos, BlockPos maxPos, BlockPos pos) {
-        return minPos.getX() <= pos.getX() && pos.getX() <= maxPos.getX()
-            && minPos.getY() <= pos.getY() && pos.getY() <= maxPos.getY()
-            && minPos.getZ() <= pos.getZ() && pos.getZ() <= maxPos.getZ();
-    }
-    
 }
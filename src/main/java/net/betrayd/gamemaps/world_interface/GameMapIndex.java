@@ -0,0 +1,333 @@
+package net.betrayd.gamemaps.world_interface;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.Predicate;
+
+import org.jetbrains.annotations.Nullable;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
+import net.betrayd.gamemaps.GameChunk;
+import net.betrayd.gamemaps.GameMap;
+import net.betrayd.gamemaps.GameMapEntity;
+import net.betrayd.gamemaps.GameMapTransform;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.Heightmap;
+
+/**
+ * A spatial index over a game map, allowing constant-time lookups of chunk
+ * columns, sections, heights and entities. Used by
+ * {@link GameMapChunkGenerator}.
+ * <p>
+ * The index is a snapshot of the map at the time it was built; it does not
+ * reflect later changes. Indices of frozen maps are cached and shared through
+ * {@link #of(GameMap)}.
+ * <p>
+ * An index can present the map under a {@link GameMapTransform} without
+ * copying it. Sections are stored untransformed at their transformed
+ * positions, and lookups map coordinates and block states on the fly.
+ */
+public class GameMapIndex {
+    private static final BlockState AIR = Blocks.AIR.getDefaultState();
+
+    private static final Map<GameMap, GameMapIndex> FROZEN_INDICES = new WeakHashMap<>();
+
+    /**
+     * The heightmaps that are queried during worldgen, and are therefore worth
+     * building ahead of time.
+     */
+    public static final Heightmap.Type[] WORLDGEN_HEIGHTMAPS = new Heightmap.Type[] {
+            Heightmap.Type.WORLD_SURFACE_WG, Heightmap.Type.OCEAN_FLOOR_WG };
+
+    private final Long2ObjectMap<GameChunk[]> columns = new Long2ObjectOpenHashMap<>();
+    private final Long2ObjectMap<List<GameMapEntity>> entities = new Long2ObjectOpenHashMap<>();
+
+    private final HeightmapCache heightmapCache = new HeightmapCache();
+
+    private final GameMapTransform transform;
+
+    private final boolean isEmpty;
+
+    private final int minX;
+    private final int maxX;
+
+    private final int minY;
+    private final int maxY;
+
+    private final int minZ;
+    private final int maxZ;
+
+    private final int minSectionY;
+    private final int maxSectionY;
+
+    /**
+     * Build a new index over a game map. If the map is frozen, prefer
+     * {@link #of(GameMap)}.
+     *
+     * @param gameMap Map to index.
+     */
+    public GameMapIndex(GameMap gameMap) {
+        this(gameMap, GameMapTransform.NONE);
+    }
+
+    /**
+     * Build a new index over a transformed view of a game map.
+     *
+     * @param gameMap   Map to index.
+     * @param transform Transform to present the map with.
+     */
+    public GameMapIndex(GameMap gameMap, GameMapTransform transform) {
+        this.transform = transform;
+
+        Set<ChunkSectionPos> positions = new HashSet<>();
+        for (ChunkSectionPos pos : gameMap.getChunks().keySet()) {
+            positions.add(transform.apply(pos));
+        }
+        isEmpty = positions.isEmpty();
+
+        if (isEmpty) {
+            minX = maxX = minY = maxY = minZ = maxZ = 0;
+            minSectionY = maxSectionY = 0;
+        } else {
+            minX = GameMapUtils.calcMinX(positions);
+            maxX = GameMapUtils.calcMaxX(positions);
+
+            minY = GameMapUtils.calcMinY(positions);
+            maxY = GameMapUtils.calcMaxY(positions);
+
+            minZ = GameMapUtils.calcMinZ(positions);
+            maxZ = GameMapUtils.calcMaxZ(positions);
+
+            minSectionY = ChunkSectionPos.getSectionCoord(minY);
+            maxSectionY = ChunkSectionPos.getSectionCoord(maxY);
+        }
+
+        int height = maxSectionY - minSectionY + 1;
+        gameMap.getChunks().forEach((originalPos, chunk) -> {
+            ChunkSectionPos pos = transform.apply(originalPos);
+            GameChunk[] column = columns.computeIfAbsent(ChunkPos.toLong(pos.getX(), pos.getZ()),
+                    l -> new GameChunk[height]);
+            column[pos.getY() - minSectionY] = chunk;
+        });
+
+        for (GameMapEntity ent : gameMap.getEntities()) {
+            if (!transform.isIdentity())
+                ent = transform.apply(ent);
+            BlockPos pos = BlockPos.ofFloored(ent.pos());
+            entities.computeIfAbsent(ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4), l -> new ArrayList<>())
+                    .add(ent);
+        }
+    }
+
+    /**
+     * Get the index of a game map. If the map is frozen, the index is cached
+     * and shared with all other callers.
+     *
+     * @param gameMap Map to index.
+     * @return The index.
+     */
+    public static GameMapIndex of(GameMap gameMap) {
+        if (!gameMap.isFrozen())
+            return new GameMapIndex(gameMap);
+
+        synchronized (FROZEN_INDICES) {
+            GameMapIndex index = FROZEN_INDICES.get(gameMap);
+            if (index == null) {
+                index = new GameMapIndex(gameMap);
+                FROZEN_INDICES.put(gameMap, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Get the index of a transformed view of a game map. Only untransformed
+     * indices are cached.
+     *
+     * @param gameMap   Map to index.
+     * @param transform Transform to present the map with.
+     * @return The index.
+     */
+    public static GameMapIndex of(GameMap gameMap, GameMapTransform transform) {
+        if (transform.isIdentity())
+            return of(gameMap);
+        return new GameMapIndex(gameMap, transform);
+    }
+
+    /**
+     * Eagerly compute the given heightmaps for every column in the map.
+     *
+     * @param types Heightmap types to compute.
+     */
+    public void prebuildHeightmaps(Heightmap.Type... types) {
+        for (long key : columns.keySet()) {
+            int chunkX = ChunkPos.getPackedX(key);
+            int chunkZ = ChunkPos.getPackedZ(key);
+            for (Heightmap.Type type : types) {
+                getHeightColumn(chunkX, chunkZ, type);
+            }
+        }
+    }
+
+    public GameMapTransform getTransform() {
+        return transform;
+    }
+
+    public boolean isEmpty() {
+        return isEmpty;
+    }
+
+    public int getMinX() {
+        return minX;
+    }
+
+    public int getMaxX() {
+        return maxX;
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    public int getMaxY() {
+        return maxY;
+    }
+
+    public int getMinZ() {
+        return minZ;
+    }
+
+    public int getMaxZ() {
+        return maxZ;
+    }
+
+    public int getMinSectionY() {
+        return minSectionY;
+    }
+
+    public int getMaxSectionY() {
+        return maxSectionY;
+    }
+
+    /**
+     * Get all the sections in a chunk column.
+     *
+     * @param chunkX Chunk X.
+     * @param chunkZ Chunk Z.
+     * @return An array of sections, indexed by
+     *         <code>sectionY - getMinSectionY()</code>. Elements may be null.
+     *         <code>null</code> if the column is empty. Do not modify.
+     *         Sections are untransformed; read blocks from them with
+     *         {@link #getLocalBlock}.
+     */
+    @Nullable
+    public GameChunk[] getColumn(int chunkX, int chunkZ) {
+        return columns.get(ChunkPos.toLong(chunkX, chunkZ));
+    }
+
+    /**
+     * Get the positions of all non-empty chunk columns.
+     *
+     * @return An unmodifiable set of {@link ChunkPos#toLong} positions.
+     */
+    public LongSet getColumnPositions() {
+        return LongSets.unmodifiable(columns.keySet());
+    }
+
+    @Nullable
+    public GameChunk getSection(int sectionX, int sectionY, int sectionZ) {
+        if (sectionY < minSectionY || sectionY > maxSectionY)
+            return null;
+        GameChunk[] column = getColumn(sectionX, sectionZ);
+        return column != null ? column[sectionY - minSectionY] : null;
+    }
+
+    public BlockState getBlock(int x, int y, int z) {
+        GameChunk section = getSection(x >> 4, y >> 4, z >> 4);
+        return section != null ? getLocalBlock(section, x & 0xF, y & 0xF, z & 0xF) : AIR;
+    }
+
+    /**
+     * Read a block from one of this index's sections, applying the transform.
+     *
+     * @param section Section from this index.
+     * @param x       Local X in the transformed section.
+     * @param y       Local Y.
+     * @param z       Local Z in the transformed section.
+     * @return The transformed block state.
+     */
+    public BlockState getLocalBlock(GameChunk section, int x, int y, int z) {
+        return transform.getBlock(section, x, y, z);
+    }
+
+    /**
+     * Get all entities whose block position lies in a given chunk column.
+     *
+     * @param chunkX Chunk X.
+     * @param chunkZ Chunk Z.
+     * @return The entities. Do not modify.
+     */
+    public List<GameMapEntity> getEntities(int chunkX, int chunkZ) {
+        return entities.getOrDefault(ChunkPos.toLong(chunkX, chunkZ), Collections.emptyList());
+    }
+
+    /**
+     * Determine the top Y value of a column, based on a heightmap type. Matches
+     * the semantics of {@link GameMapUtils#getTopY}.
+     *
+     * @param x    Block X.
+     * @param z    Block Z.
+     * @param type Heightmap type.
+     * @return Top Y.
+     */
+    public int getHeight(int x, int z, Heightmap.Type type) {
+        int[] column = getHeightColumn(x >> 4, z >> 4, type);
+        return column[(z & 0xF) << 4 | (x & 0xF)];
+    }
+
+    private int[] getHeightColumn(int chunkX, int chunkZ, Heightmap.Type type) {
+        return heightmapCache.computeIfAbsent(chunkX, chunkZ, type, () -> computeHeightColumn(chunkX, chunkZ, type));
+    }
+
+    private int[] computeHeightColumn(int chunkX, int chunkZ, Heightmap.Type type) {
+        int[] heights = new int[256];
+        GameChunk[] column = getColumn(chunkX, chunkZ);
+        if (column == null)
+            return heights;
+
+        Predicate<BlockState> predicate = type.getBlockPredicate();
+
+        for (int z = 0; z < 16; z++) {
+            for (int x = 0; x < 16; x++) {
+                heights[z << 4 | x] = computeHeight(column, x, z, predicate);
+            }
+        }
+        return heights;
+    }
+
+    private int computeHeight(GameChunk[] column, int x, int z, Predicate<BlockState> predicate) {
+        for (int i = column.length - 1; i >= 0; i--) {
+            GameChunk section = column[i];
+            if (section == null)
+                continue;
+
+            for (int y = 15; y >= 0; y--) {
+                if (predicate.test(getLocalBlock(section, x, y, z)))
+                    return ((i + minSectionY) << 4) + y;
+            }
+        }
+        return 0;
+    }
+}
@@ -1,21 +1,38 @@
 package net.betrayd.gamemaps.world_interface;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import net.betrayd.gamemaps.GameChunk;
 import net.betrayd.gamemaps.GameMap;
 import net.betrayd.gamemaps.GameMapEntity;
+import net.betrayd.gamemaps.GameMapTransform;
+import net.betrayd.gamemaps.metrics.GameMapMetrics;
+import net.betrayd.gamemaps.metrics.MapMetrics;
+import net.betrayd.gamemaps.scheduling.TickScheduler;
 import net.minecraft.block.Block;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Box;
 import net.minecraft.util.math.ChunkSectionPos;
 import net.minecraft.util.math.Vec3d;
 import net.minecraft.util.math.Vec3i;
 import net.minecraft.world.World;
 
 /**
- * Places game maps in the world. Can cause massive hangs with large maps; it's
- * recommended to use {@link SimpleChunkGenerator} to place large maps into empty
- * worlds.
+ * Places game maps in the world. In server worlds, blocks are written straight
+ * into chunk sections with a {@link WorldSectionWriter}, and lighting and
+ * clients are updated once the whole map is placed. It's still recommended to
+ * use {@link SimpleChunkGenerator} to place large maps into empty worlds.
  */
 public class GameMapPlacer {
 
@@ -26,16 +43,266 @@ public class GameMapPlacer {
      * @param offset Block offset to use.
      */
     public static void placeGameMap(World world, GameMap gameMap, Vec3i offset) {
+        placeGameMap(world, gameMap, offset, GameMapTransform.NONE);
+    }
+
+    /**
+     * Place a rotated and/or mirrored game map in the world as a schematic.
+     * Each section is transformed as a whole right before it's placed, so the
+     * map is never copied in full.
+     * 
+     * @param world     World to place into.
+     * @param gameMap   Game map to place.
+     * @param offset    Block offset to use. The map is transformed around this
+     *                  point.
+     * @param transform Transform to apply.
+     */
+    public static void placeGameMap(World world, GameMap gameMap, Vec3i offset, GameMapTransform transform) {
+        long startTime = System.nanoTime();
+        boolean identity = transform.isIdentity();
+        WorldSectionWriter writer = world instanceof ServerWorld serverWorld ? new WorldSectionWriter(serverWorld) : null;
+
         for (var entry : gameMap.getChunks().entrySet()) {
-            placeGameChunk(world, entry.getKey(), entry.getValue(), offset);
+            ChunkSectionPos pos = identity ? entry.getKey() : transform.apply(entry.getKey());
+            GameChunk chunk = identity ? entry.getValue() : transform.apply(entry.getValue());
+            if (writer != null)
+                placeGameChunk(writer, pos, chunk, offset);
+            else
+                placeGameChunk(world, pos, chunk, offset);
         }
+        if (writer != null)
+            writer.flush();
 
         for (GameMapEntity ent : gameMap.getEntities()) {
+            if (!identity)
+                ent = transform.apply(ent);
             Vec3d pos = ent.pos().add(offset.getX(), offset.getY(), offset.getZ());
             ent.withPos(pos).createEntities(world, world::spawnEntity);
         }
+
+        MapMetrics.get().onOperation(GameMapMetrics.Operation.PLACE, System.nanoTime() - startTime,
+                gameMap.getChunks().size(), gameMap.getEntities().size());
+    }
+
+    /**
+     * Place a game map over a copy of itself that may have been modified, such
+     * as when resetting an arena between rounds. Only blocks that differ from
+     * the map are written, and only block entities whose data differs are
+     * re-created, so the cost scales with the number of changes rather than the
+     * size of the map. All non-player entities within the map's sections are
+     * removed and the map's entities are spawned again.
+     * 
+     * @param world   World to place into.
+     * @param gameMap Game map to place.
+     * @param offset  Block offset to use.
+     * @return The number of block states and block entities that were written.
+     */
+    public static int placeGameMapDiff(ServerWorld world, GameMap gameMap, Vec3i offset) {
+        return placeGameMapDiff(world, gameMap, offset, GameMapTransform.NONE);
+    }
+
+    /**
+     * Place a rotated and/or mirrored game map over a copy of itself that may
+     * have been modified. See {@link #placeGameMapDiff(ServerWorld, GameMap, Vec3i)}.
+     * 
+     * @param world     World to place into.
+     * @param gameMap   Game map to place.
+     * @param offset    Block offset to use. The map is transformed around this
+     *                  point.
+     * @param transform Transform to apply. Must match the one the map was
+     *                  originally placed with.
+     * @return The number of block states and block entities that were written.
+     */
+    public static int placeGameMapDiff(ServerWorld world, GameMap gameMap, Vec3i offset, GameMapTransform transform) {
+        long startTime = System.nanoTime();
+        boolean identity = transform.isIdentity();
+        WorldSectionWriter writer = new WorldSectionWriter(world);
+        int written = 0;
+        for (var entry : gameMap.getChunks().entrySet()) {
+            ChunkSectionPos pos = identity ? entry.getKey() : transform.apply(entry.getKey());
+            GameChunk chunk = identity ? entry.getValue() : transform.apply(entry.getValue());
+            written += placeGameChunkDiff(writer, pos, chunk, offset);
+        }
+        writer.flush();
+
+        replaceEntities(world, gameMap, offset, transform);
+
+        MapMetrics.get().onOperation(GameMapMetrics.Operation.PLACE, System.nanoTime() - startTime,
+                gameMap.getChunks().size(), gameMap.getEntities().size());
+        return written;
+    }
+
+    /**
+     * Remove all non-player entities within the sections of a placed map, and
+     * spawn the map's entities in their place. Sections the map doesn't have,
+     * such as around a map that isn't a cuboid, are left alone.
+     * 
+     * @param world     World the map was placed into.
+     * @param gameMap   Placed game map.
+     * @param offset    Block offset it was placed with.
+     * @param transform Transform it was placed with.
+     */
+    static void replaceEntities(ServerWorld world, GameMap gameMap, Vec3i offset, GameMapTransform transform) {
+        boolean identity = transform.isIdentity();
+        List<GameMapEntity> entities = new ArrayList<>(gameMap.getEntities().size());
+        // Transformed map-space sections, which are offset as a whole when placed.
+        LongSet sections = new LongOpenHashSet();
+        Box box = null;
+
+        for (ChunkSectionPos mapPos : gameMap.getChunks().keySet()) {
+            ChunkSectionPos pos = identity ? mapPos : transform.apply(mapPos);
+            sections.add(pos.asLong());
+            Box sectionBox = new Box(pos.getMinX(), pos.getMinY(), pos.getMinZ(),
+                    pos.getMaxX() + 1, pos.getMaxY() + 1, pos.getMaxZ() + 1);
+            box = box == null ? sectionBox : box.union(sectionBox);
+        }
+        for (GameMapEntity ent : gameMap.getEntities()) {
+            if (!identity)
+                ent = transform.apply(ent);
+            entities.add(ent.withPos(ent.pos().add(offset.getX(), offset.getY(), offset.getZ())));
+
+            // Entities may stand in sections without any blocks.
+            ChunkSectionPos pos = ChunkSectionPos.from(BlockPos.ofFloored(ent.pos()));
+            sections.add(pos.asLong());
+            Box sectionBox = new Box(pos.getMinX(), pos.getMinY(), pos.getMinZ(),
+                    pos.getMaxX() + 1, pos.getMaxY() + 1, pos.getMaxZ() + 1);
+            box = box == null ? sectionBox : box.union(sectionBox);
+        }
+
+        if (box != null) {
+            box = box.offset(offset.getX(), offset.getY(), offset.getZ());
+            for (Entity ent : world.getOtherEntities(null, box, e -> !(e instanceof PlayerEntity))) {
+                BlockPos mapPos = BlockPos.ofFloored(ent.getX() - offset.getX(), ent.getY() - offset.getY(),
+                        ent.getZ() - offset.getZ());
+                if (sections.contains(ChunkSectionPos.from(mapPos).asLong()))
+                    ent.discard();
+            }
+        }
+
+        for (GameMapEntity ent : entities) {
+            ent.createEntities(world, world::spawnEntity);
+        }
+    }
+
+    /**
+     * Place a game map over the course of several ticks, within the time budget
+     * of the server's {@link TickScheduler}. Multiple placements share the
+     * budget fairly.
+     * 
+     * @param world   World to place into.
+     * @param gameMap Game map to place. Must not be modified until placement is
+     *                done.
+     * @param offset  Block offset to use.
+     * @param order   Order to place sections in.
+     * @return The placement job. Use {@link MapPlacementJob#getFuture()} to find
+     *         out when it's done.
+     */
+    public static MapPlacementJob placeGameMapAsync(ServerWorld world, GameMap gameMap, Vec3i offset,
+            MapPlacementJob.Order order) {
+        MapPlacementJob job = new MapPlacementJob(world, gameMap, offset, order);
+        return TickScheduler.get(world.getServer()).submit(job);
     }
 
+    /**
+     * Place a game chunk through a section writer. Changes aren't visible to
+     * clients until the writer is flushed.
+     * 
+     * @param writer   Section writer to use.
+     * @param chunkPos Position of the chunk in the map.
+     * @param chunk    Chunk to place.
+     * @param offset   Block offset to use.
+     * @return The number of blocks that changed.
+     */
+    public static int placeGameChunk(WorldSectionWriter writer, ChunkSectionPos chunkPos, GameChunk chunk,
+            Vec3i offset) {
+        int xOffset = chunkPos.getMinX() + offset.getX();
+        int yOffset = chunkPos.getMinY() + offset.getY();
+        int zOffset = chunkPos.getMinZ() + offset.getZ();
+
+        int changed = 0;
+        for (int y = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    BlockState state = chunk.getBlockState(x, y, z);
+                    if (writer.setBlockState(x + xOffset, y + yOffset, z + zOffset, state))
+                        changed++;
+                }
+            }
+        }
+
+        chunk.getBlockEntities().forEach((pos, nbt) -> {
+            writer.setBlockEntity(new BlockPos(pos.getX() + xOffset, pos.getY() + yOffset, pos.getZ() + zOffset), nbt);
+        });
+        return changed;
+    }
+
+    /**
+     * Place a game chunk through a section writer, only writing what differs
+     * from the world. If the offset is section-aligned and the target section
+     * has identical blocks, the blocks are skipped entirely.
+     * 
+     * @param writer   Section writer to use.
+     * @param chunkPos Position of the chunk in the map.
+     * @param chunk    Chunk to place.
+     * @param offset   Block offset to use.
+     * @return The number of block states and block entities that were written.
+     */
+    public static int placeGameChunkDiff(WorldSectionWriter writer, ChunkSectionPos chunkPos, GameChunk chunk,
+            Vec3i offset) {
+        int xOffset = chunkPos.getMinX() + offset.getX();
+        int yOffset = chunkPos.getMinY() + offset.getY();
+        int zOffset = chunkPos.getMinZ() + offset.getZ();
+
+        boolean aligned = (offset.getX() & 0xF) == 0 && (offset.getY() & 0xF) == 0 && (offset.getZ() & 0xF) == 0;
+        ChunkSectionPos worldPos = ChunkSectionPos.from(xOffset >> 4, yOffset >> 4, zOffset >> 4);
+
+        int written = 0;
+        if (!aligned || !writer.sectionMatches(worldPos, chunk.getBlockStateContainer())) {
+            // The writer already skips blocks that are unchanged.
+            for (int y = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    for (int x = 0; x < 16; x++) {
+                        BlockState state = chunk.getBlockState(x, y, z);
+                        if (writer.setBlockState(x + xOffset, y + yOffset, z + zOffset, state))
+                            written++;
+                    }
+                }
+            }
+        }
+
+        for (var entry : chunk.getBlockEntities().entrySet()) {
+            BlockPos pos = entry.getKey();
+            BlockPos globalPos = new BlockPos(pos.getX() + xOffset, pos.getY() + yOffset, pos.getZ() + zOffset);
+            if (blockEntityMatches(writer.getBlockEntity(globalPos), entry.getValue()))
+                continue;
+
+            if (writer.setBlockEntity(globalPos, entry.getValue()) != null)
+                written++;
+        }
+        return written;
+    }
+
+    private static boolean blockEntityMatches(@Nullable BlockEntity ent, NbtCompound nbt) {
+        if (ent == null)
+            return false;
+
+        // Positions differ between the map and the world, so leave them out.
+        NbtCompound expected = nbt.copy();
+        expected.remove("x");
+        expected.remove("y");
+        expected.remove("z");
+        return ent.createNbtWithId().equals(expected);
+    }
+
+    /**
+     * Place a game chunk using regular block updates. Much slower than
+     * {@link #placeGameChunk(WorldSectionWriter, ChunkSectionPos, GameChunk, Vec3i)}.
+     * 
+     * @param world    World to place into.
+     * @param chunkPos Position of the chunk in the map.
+     * @param chunk    Chunk to place.
+     * @param offset   Block offset to use.
+     */
     public static void placeGameChunk(World world, ChunkSectionPos chunkPos, GameChunk chunk, Vec3i offset) {
         int xOffset = chunkPos.getMinX() + offset.getX();
         int yOffset = chunkPos.getMinY() + offset.getY();
@@ -108,7 +108,7 @@ public class GameMapUtils {
      * @return Minimum Z value, in block coordinates.
      */
     public static int calcMinZ(Collection<ChunkSectionPos> chunks) {
-        return calcMinValue(chunks, ChunkSectionPos::getMaxZ);
+        return calcMinValue(chunks, ChunkSectionPos::getMinZ);
     }
 
     /**
@@ -1,32 +1,43 @@
 package net.betrayd.gamemaps.world_interface;
 
 import java.util.EnumMap;
-import java.util.function.IntSupplier;
+import java.util.function.Supplier;
 
-import it.unimi.dsi.fastutil.longs.Long2IntArrayMap;
-import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import net.minecraft.util.math.ChunkPos;
-import net.minecraft.world.Heightmap.Type;;
+import net.minecraft.world.Heightmap.Type;
 
+/**
+ * Caches heightmaps one chunk column at a time. Each column is stored as a
+ * 16x16 array indexed by <code>z &lt;&lt; 4 | x</code>. Thread-safe.
+ */
 class HeightmapCache {
-    private final EnumMap<Type, Long2IntMap> cache = new EnumMap<>(Type.class);
+    private final EnumMap<Type, Long2ObjectMap<int[]>> cache = new EnumMap<>(Type.class);
 
-    public int getOrDefault(int x, int z, Type type, int fallback) {
-        Long2IntMap cache = this.cache.get(type);
-        if (cache == null) return fallback;
-
-        long key = getKey(x, z);
-        return cache.getOrDefault(key, fallback);
+    public synchronized boolean contains(int chunkX, int chunkZ, Type type) {
+        Long2ObjectMap<int[]> cache = this.cache.get(type);
+        return cache != null && cache.containsKey(ChunkPos.toLong(chunkX, chunkZ));
     }
 
-    public int computeIfAbsent(int x, int z, Type type, IntSupplier factory) {
-        Long2IntMap cache = this.cache.computeIfAbsent(type, t -> new Long2IntArrayMap());
-        long key = getKey(x, z);
-        
-        return cache.computeIfAbsent(key, k -> factory.getAsInt());
+    public int[] computeIfAbsent(int chunkX, int chunkZ, Type type, Supplier<int[]> factory) {
+        long key = ChunkPos.toLong(chunkX, chunkZ);
+        synchronized (this) {
+            int[] column = getColumnCache(type).get(key);
+            if (column != null)
+                return column;
+        }
+
+        // Compute outside the lock so worldgen threads don't serialize on each
+        // other. Worst case, two threads compute the same (identical) column.
+        int[] column = factory.get();
+        synchronized (this) {
+            int[] existing = getColumnCache(type).putIfAbsent(key, column);
+            return existing != null ? existing : column;
+        }
     }
 
-    private static long getKey(int x, int z) {
-        return ChunkPos.toLong(x, z); // This isn't technically a chunk pos, but I don't care
+    private Long2ObjectMap<int[]> getColumnCache(Type type) {
+        return cache.computeIfAbsent(type, t -> new Long2ObjectOpenHashMap<>());
     }
 }
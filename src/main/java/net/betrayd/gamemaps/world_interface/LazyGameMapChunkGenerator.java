@@ -0,0 +1,341 @@
+package net.betrayd.gamemaps.world_interface;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.mojang.serialization.Codec;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.betrayd.gamemaps.GameChunk;
+import net.betrayd.gamemaps.GameMapEntity;
+import net.betrayd.gamemaps.GameMapTransform;
+import net.betrayd.gamemaps.metrics.GameMapMetrics;
+import net.betrayd.gamemaps.metrics.MapMetrics;
+import net.betrayd.gamemaps.serialization.GameMapSectionStore;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.registry.entry.RegistryEntry;
+import net.minecraft.util.Util;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.ChunkRegion;
+import net.minecraft.world.HeightLimitView;
+import net.minecraft.world.Heightmap.Type;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.biome.BiomeKeys;
+import net.minecraft.world.biome.source.BiomeCoords;
+import net.minecraft.world.biome.source.BiomeSource;
+import net.minecraft.world.biome.source.util.MultiNoiseUtil.MultiNoiseSampler;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.PalettedContainer;
+import net.minecraft.world.chunk.ProtoChunk;
+import net.minecraft.world.gen.StructureAccessor;
+import net.minecraft.world.gen.chunk.Blender;
+import net.minecraft.world.gen.chunk.VerticalBlockSample;
+import net.minecraft.world.gen.noise.NoiseConfig;
+
+/**
+ * Generates chunks from a {@link GameMapSectionStore}, reading each chunk
+ * column from disk only when it's about to be generated. Columns near a
+ * generating chunk are read ahead on the IO executor, and each column is
+ * dropped again as soon as it's been copied into its chunk, so only the
+ * columns around the generation front are ever in memory.
+ * <p>
+ * Biomes and worldgen heightmaps come from the store's index, so they never
+ * cause a read. The store must stay open for as long as the generator is used.
+ */
+public class LazyGameMapChunkGenerator extends SimpleChunkGenerator {
+
+    private static final BlockState AIR = Blocks.AIR.getDefaultState();
+
+    private final GameMapSectionStore store;
+    private final Executor ioExecutor;
+    private final Long2ObjectMap<List<GameMapEntity>> entities = new Long2ObjectOpenHashMap<>();
+
+    private final Map<Long, CompletableFuture<GameChunk[]>> loadedColumns = new ConcurrentHashMap<>();
+    private final Set<Long> populatedColumns = ConcurrentHashMap.newKeySet();
+
+    private int prefetchRadius = 1;
+
+    public LazyGameMapChunkGenerator(GameMapSectionStore store) {
+        this(store, Util.getIoWorkerExecutor());
+    }
+
+    /**
+     * Create a lazy generator.
+     *
+     * @param store      Store to read the map from.
+     * @param ioExecutor Executor to read columns on.
+     */
+    public LazyGameMapChunkGenerator(GameMapSectionStore store, Executor ioExecutor) {
+        this(store, ioExecutor, new LazyBiomeSource(store));
+    }
+
+    private LazyGameMapChunkGenerator(GameMapSectionStore store, Executor ioExecutor, LazyBiomeSource biomeSource) {
+        super(biomeSource);
+        this.store = store;
+        this.ioExecutor = ioExecutor;
+
+        for (GameMapEntity ent : store.getSkeleton().getEntities()) {
+            BlockPos pos = BlockPos.ofFloored(ent.pos());
+            entities.computeIfAbsent(ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4), l -> new ArrayList<>())
+                    .add(ent);
+        }
+    }
+
+    public GameMapSectionStore getStore() {
+        return store;
+    }
+
+    public int getPrefetchRadius() {
+        return prefetchRadius;
+    }
+
+    /**
+     * Set how far around a generating chunk to read columns ahead of time.
+     *
+     * @param prefetchRadius Radius in chunks. 0 disables prefetching.
+     * @return <code>this</code>
+     */
+    public LazyGameMapChunkGenerator setPrefetchRadius(int prefetchRadius) {
+        if (prefetchRadius < 0)
+            throw new IllegalArgumentException("Prefetch radius may not be negative.");
+        this.prefetchRadius = prefetchRadius;
+        return this;
+    }
+
+    /**
+     * Get the number of columns that are currently read or being read.
+     *
+     * @return Loaded column count.
+     */
+    public int getLoadedColumnCount() {
+        return loadedColumns.size();
+    }
+
+    private CompletableFuture<GameChunk[]> loadColumn(int chunkX, int chunkZ) {
+        return loadedColumns.computeIfAbsent(ChunkPos.toLong(chunkX, chunkZ),
+                l -> CompletableFuture.supplyAsync(() -> readColumn(chunkX, chunkZ), ioExecutor));
+    }
+
+    private GameChunk[] readColumn(int chunkX, int chunkZ) {
+        try {
+            return store.readColumn(chunkX, chunkZ);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading chunk column " + chunkX + ", " + chunkZ, e);
+        }
+    }
+
+    private void prefetch(int chunkX, int chunkZ) {
+        long key = ChunkPos.toLong(chunkX, chunkZ);
+        if (!store.hasColumn(chunkX, chunkZ) || populatedColumns.contains(key))
+            return;
+
+        CompletableFuture<GameChunk[]> future = loadColumn(chunkX, chunkZ);
+        // The column may have been generated while we were scheduling the read.
+        if (populatedColumns.contains(key))
+            loadedColumns.remove(key, future);
+    }
+
+    @Override
+    public CompletableFuture<Chunk> populateNoise(Executor executor, Blender blender, NoiseConfig noiseConfig,
+            StructureAccessor structureAccessor, Chunk chunk) {
+        ChunkPos chunkPos = chunk.getPos();
+        if (!store.hasColumn(chunkPos.x, chunkPos.z))
+            return CompletableFuture.completedFuture(chunk);
+
+        CompletableFuture<GameChunk[]> future = loadColumn(chunkPos.x, chunkPos.z);
+        MapMetrics.get().onQueueDepth("lazy_columns", loadedColumns.size());
+        for (int x = -prefetchRadius; x <= prefetchRadius; x++) {
+            for (int z = -prefetchRadius; z <= prefetchRadius; z++) {
+                if (x != 0 || z != 0)
+                    prefetch(chunkPos.x + x, chunkPos.z + z);
+            }
+        }
+
+        int minSectionY = store.getMinY() >> 4;
+
+        return future.thenApplyAsync(column -> {
+            long key = chunkPos.toLong();
+            populatedColumns.add(key);
+            // Everything after noise comes from the index, so the sections can go right away.
+            loadedColumns.remove(key, future);
+
+            if (column == null)
+                return chunk;
+
+            long startTime = System.nanoTime();
+            int sections = 0;
+            for (int i = column.length - 1; i >= 0; i--) {
+                GameChunk gameChunk = column[i];
+                if (gameChunk == null)
+                    continue;
+
+                int sectionY = i + minSectionY;
+                int sectionIndex = chunk.sectionCoordToIndex(sectionY);
+                if (sectionIndex < 0 || sectionIndex >= chunk.countVerticalSections())
+                    continue;
+
+                var section = chunk.getSection(sectionIndex);
+                section.lock();
+                try {
+                    GameMapChunkGenerator.addSection(chunk, section, GameMapTransform.NONE, gameChunk,
+                            ChunkSectionPos.from(chunkPos, sectionY));
+                } finally {
+                    section.unlock();
+                }
+                sections++;
+            }
+            MapMetrics.get().onOperation(GameMapMetrics.Operation.GENERATE, System.nanoTime() - startTime,
+                    sections, 0);
+            return chunk;
+        }, executor);
+    }
+
+    @Override
+    public void populateEntities(ChunkRegion region) {
+        ChunkPos chunkPos = region.getCenterPos();
+        List<GameMapEntity> columnEntities = entities.getOrDefault(chunkPos.toLong(), Collections.emptyList());
+        if (columnEntities.isEmpty())
+            return;
+
+        ProtoChunk chunk = (ProtoChunk) region.getChunk(chunkPos.x, chunkPos.z);
+        int bottomY = region.getBottomY();
+        int topY = region.getTopY();
+
+        for (GameMapEntity entity : columnEntities) {
+            int y = MathHelper.floor(entity.pos().y);
+            if (bottomY <= y && y <= topY) {
+                chunk.addEntity(entity.createEntityNbt());
+            }
+        }
+    }
+
+    @Override
+    public int getMinimumY() {
+        return store.getMinY();
+    }
+
+    @Override
+    public int getWorldHeight() {
+        return store.getMaxY() - store.getMinY();
+    }
+
+    /**
+     * Get a column without keeping it in memory, using the loaded copy if there
+     * is one.
+     */
+    @Nullable
+    private GameChunk[] peekColumn(int chunkX, int chunkZ) {
+        CompletableFuture<GameChunk[]> future = loadedColumns.get(ChunkPos.toLong(chunkX, chunkZ));
+        return future != null ? future.join() : readColumn(chunkX, chunkZ);
+    }
+
+    @Override
+    public int getHeight(int x, int z, Type heightmap, HeightLimitView world, NoiseConfig noiseConfig) {
+        if (!store.hasColumn(x >> 4, z >> 4))
+            return 0;
+
+        int height = store.getHeight(x, z, heightmap);
+        if (height != Integer.MIN_VALUE)
+            return height;
+
+        // Only the worldgen heightmaps are stored.
+        GameChunk[] column = peekColumn(x >> 4, z >> 4);
+        if (column == null)
+            return 0;
+
+        Predicate<BlockState> predicate = heightmap.getBlockPredicate();
+        int minSectionY = store.getMinY() >> 4;
+        for (int i = column.length - 1; i >= 0; i--) {
+            GameChunk section = column[i];
+            if (section == null)
+                continue;
+
+            for (int y = 15; y >= 0; y--) {
+                if (predicate.test(section.getBlockState(x & 0xF, y, z & 0xF)))
+                    return ((i + minSectionY) << 4) + y;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public VerticalBlockSample getColumnSample(int x, int z, HeightLimitView world, NoiseConfig noiseConfig) {
+        GameChunk[] column = store.hasColumn(x >> 4, z >> 4) ? peekColumn(x >> 4, z >> 4) : null;
+        if (column == null)
+            return VOID_SAMPLE;
+
+        int minY = store.getMinY();
+        int maxY = store.getMaxY();
+        BlockState[] states = new BlockState[maxY - minY + 1];
+        for (int y = maxY; y >= minY; y--) {
+            GameChunk section = column[(y - minY) >> 4];
+            states[y - minY] = section != null ? section.getBlockState(x & 0xF, y & 0xF, z & 0xF) : AIR;
+        }
+
+        return new VerticalBlockSample(minY, states);
+    }
+
+    /**
+     * Looks up biomes in the store's index, without reading any sections.
+     */
+    private static class LazyBiomeSource extends BiomeSource {
+        private final GameMapSectionStore store;
+        private final RegistryEntry<Biome> fallback;
+        private final Set<RegistryEntry<Biome>> usedBiomes;
+
+        LazyBiomeSource(GameMapSectionStore store) {
+            this.store = store;
+            this.fallback = store.getDeserializer().getBiomeRegistry().entryOf(BiomeKeys.THE_VOID);
+
+            Set<RegistryEntry<Biome>> biomes = new HashSet<>();
+            for (long key : store.getColumnPositions()) {
+                int chunkX = ChunkPos.getPackedX(key);
+                int chunkZ = ChunkPos.getPackedZ(key);
+                for (int y = store.getMinY() >> 4; y <= store.getMaxY() >> 4; y++) {
+                    PalettedContainer<RegistryEntry<Biome>> container = store.getBiomes(chunkX, y, chunkZ);
+                    if (container != null)
+                        container.count((biome, count) -> biomes.add(biome));
+                }
+            }
+            biomes.add(fallback);
+            this.usedBiomes = Collections.unmodifiableSet(biomes);
+        }
+
+        @Override
+        protected Codec<? extends BiomeSource> getCodec() {
+            return GameMapBiomeSource.CODEC;
+        }
+
+        @Override
+        protected Stream<RegistryEntry<Biome>> biomeStream() {
+            return usedBiomes.stream();
+        }
+
+        @Override
+        public RegistryEntry<Biome> getBiome(int x, int y, int z, MultiNoiseSampler noise) {
+            PalettedContainer<RegistryEntry<Biome>> container = store.getBiomes(BiomeCoords.toChunk(x),
+                    BiomeCoords.toChunk(y), BiomeCoords.toChunk(z));
+            if (container == null)
+                return fallback;
+            return container.get(x & 3, y & 3, z & 3);
+        }
+    }
+}
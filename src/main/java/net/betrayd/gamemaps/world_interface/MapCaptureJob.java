@@ -0,0 +1,255 @@
+package net.betrayd.gamemaps.world_interface;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.betrayd.gamemaps.EntityFilter;
+import net.betrayd.gamemaps.GameMap;
+import net.betrayd.gamemaps.metrics.GameMapMetrics;
+import net.betrayd.gamemaps.metrics.MapMetrics;
+import net.betrayd.gamemaps.scheduling.TickScheduler;
+import net.betrayd.gamemaps.scheduling.TickedJob;
+import net.betrayd.gamemaps.world_interface.WorldAlignedMapCapture.BuiltColumn;
+import net.minecraft.registry.Registry;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.server.world.ChunkTicketType;
+import net.minecraft.server.world.ServerChunkManager;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Util;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.chunk.WorldChunk;
+
+/**
+ * An incremental version of {@link WorldAlignedMapCapture#capture}, spread
+ * over several server ticks. Chunks are loaded through chunk tickets rather
+ * than synchronously, so unloaded chunks never stall the server thread. Only
+ * chunk snapshots and entities are taken on the server thread; game chunks are
+ * built on a worker executor.
+ * <p>
+ * Use {@link WorldAlignedMapCapture#captureAsync} to create and schedule one.
+ */
+public class MapCaptureJob implements TickedJob {
+
+    public static final ChunkTicketType<ChunkPos> TICKET_TYPE = ChunkTicketType.create("game_maps_capture",
+            Comparator.comparingLong(ChunkPos::toLong));
+
+    private final ServerWorld world;
+    private final ChunkSectionPos minPos;
+    private final ChunkSectionPos maxPos;
+    private final ChunkSectionPos origin;
+
+    @Nullable
+    private final EntityFilter entityFilter;
+
+    private final int chunksPerTick;
+    private final int maxInFlight;
+
+    private final Registry<Biome> biomeRegistry;
+    private final GameMap map;
+
+    private Executor executor = Util.getMainWorkerExecutor();
+
+    @Nullable
+    private CaptureOptions options;
+
+    private final List<ChunkPos> chunks = new ArrayList<>();
+    private final List<CompletableFuture<BuiltColumn>> columns = new ArrayList<>();
+    private final LinkedList<ChunkPos> inFlight = new LinkedList<>();
+    private int nextChunk;
+    private int processed;
+    private volatile int droppedSections;
+    private long startTime;
+
+    private final CompletableFuture<GameMap> future = new CompletableFuture<>();
+
+    /**
+     * Create a capture job. It must be submitted to a {@link TickScheduler} to
+     * run.
+     *
+     * @param world         World to capture.
+     * @param minPos        Minimum section of the bounding box.
+     * @param maxPos        Maximum section of the bounding box.
+     * @param origin        Chunk section pos to use as the origin.
+     * @param entityFilter  Entity filter to use.
+     * @param chunksPerTick Maximum number of chunk columns to copy per tick.
+     */
+    public MapCaptureJob(ServerWorld world, ChunkSectionPos minPos, ChunkSectionPos maxPos, ChunkSectionPos origin,
+            @Nullable EntityFilter entityFilter, int chunksPerTick) {
+        if (chunksPerTick < 1)
+            throw new IllegalArgumentException("Must capture at least one chunk per tick.");
+
+        this.world = world;
+        this.minPos = minPos;
+        this.maxPos = maxPos;
+        this.origin = origin;
+        this.entityFilter = entityFilter;
+        this.chunksPerTick = chunksPerTick;
+        this.maxInFlight = Math.max(chunksPerTick * 4, 8);
+
+        this.biomeRegistry = world.getRegistryManager().get(RegistryKeys.BIOME);
+        this.map = new GameMap(biomeRegistry);
+
+        for (int x = minPos.getX(); x < maxPos.getX(); x++) {
+            for (int z = minPos.getZ(); z < maxPos.getZ(); z++) {
+                chunks.add(new ChunkPos(x, z));
+            }
+        }
+    }
+
+    public ServerWorld getWorld() {
+        return world;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Set the executor to build game chunks on. Must be called before the job
+     * starts ticking.
+     *
+     * @param executor Worker executor.
+     * @return <code>this</code>
+     */
+    public MapCaptureJob setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Get a future that completes with the captured map once the job is done.
+     *
+     * @return The future.
+     */
+    public CompletableFuture<GameMap> getFuture() {
+        return future;
+    }
+
+    public int getTotalChunks() {
+        return chunks.size();
+    }
+
+    public int getProcessedChunks() {
+        return processed;
+    }
+
+    @Nullable
+    public CaptureOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Set the options deciding which sections to keep. Must be called before
+     * the job starts ticking.
+     *
+     * @param options Capture options. <code>null</code> keeps all sections.
+     * @return <code>this</code>
+     */
+    public MapCaptureJob setOptions(@Nullable CaptureOptions options) {
+        this.options = options;
+        return this;
+    }
+
+    /**
+     * Get the number of sections that were left out of the map so far. Only
+     * includes trimmed sections once the future has completed.
+     *
+     * @return Number of dropped sections.
+     */
+    public int getDroppedSections() {
+        return droppedSections;
+    }
+
+    /**
+     * Get the progress of this job.
+     *
+     * @return Progress, from 0 to 1.
+     */
+    public float getProgress() {
+        return chunks.isEmpty() ? 1 : (float) processed / chunks.size();
+    }
+
+    @Override
+    public boolean tick(long deadline) {
+        if (future.isDone())
+            return true;
+        if (startTime == 0)
+            startTime = System.nanoTime();
+
+        ServerChunkManager chunkManager = world.getChunkManager();
+
+        while (inFlight.size() < maxInFlight && nextChunk < chunks.size()) {
+            ChunkPos pos = chunks.get(nextChunk++);
+            chunkManager.addTicket(TICKET_TYPE, pos, 0, pos);
+            inFlight.add(pos);
+        }
+
+        int count = 0;
+        Iterator<ChunkPos> iterator = inFlight.iterator();
+        while (iterator.hasNext() && count < chunksPerTick && System.nanoTime() < deadline) {
+            ChunkPos pos = iterator.next();
+
+            // Don't block; if the chunk or its entities aren't ready, check again next tick.
+            WorldChunk chunk = chunkManager.getWorldChunk(pos.x, pos.z);
+            if (chunk == null || !world.isChunkLoaded(pos.toLong()))
+                continue;
+
+            captureColumn(chunk);
+
+            chunkManager.removeTicket(TICKET_TYPE, pos, 0, pos);
+            iterator.remove();
+            processed++;
+            count++;
+        }
+
+        if (processed >= chunks.size()) {
+            map.getMeta().setFromWorld(world);
+            // Entities are all in; the workers may now add the chunks.
+            WorldAlignedMapCapture.assembleAsync(map, columns, origin, options, executor).whenComplete((result, e) -> {
+                if (e != null) {
+                    future.completeExceptionally(e);
+                } else {
+                    droppedSections = result.droppedSections();
+                    MapMetrics.get().onOperation(GameMapMetrics.Operation.CAPTURE, System.nanoTime() - startTime,
+                            result.map().getChunks().size(), result.map().getEntities().size());
+                    future.complete(result.map());
+                }
+            });
+            return true;
+        }
+
+        return false;
+    }
+
+    protected void captureColumn(WorldChunk chunk) {
+        ChunkSnapshot snapshot = ChunkSnapshot.of(chunk, options);
+        droppedSections += snapshot.getSkippedSections();
+        columns.add(WorldAlignedMapCapture.buildAsync(snapshot, biomeRegistry, executor));
+
+        ChunkPos pos = chunk.getPos();
+        BlockPos blockMin = new BlockPos(pos.getStartX(), minPos.getMinY(), pos.getStartZ());
+        BlockPos blockMax = new BlockPos(pos.getEndX(), maxPos.getMaxY(), pos.getEndZ());
+        WorldAlignedMapCapture.captureEntities(world, blockMin, blockMax, origin.getMinPos(), entityFilter, map);
+    }
+
+    @Override
+    public void cancel() {
+        ServerChunkManager chunkManager = world.getChunkManager();
+        for (ChunkPos pos : inFlight) {
+            chunkManager.removeTicket(TICKET_TYPE, pos, 0, pos);
+        }
+        inFlight.clear();
+        future.completeExceptionally(new CancellationException("Map capture was cancelled."));
+    }
+}
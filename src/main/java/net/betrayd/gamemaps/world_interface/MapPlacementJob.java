@@ -0,0 +1,266 @@
+package net.betrayd.gamemaps.world_interface;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+import net.betrayd.gamemaps.GameChunk;
+import net.betrayd.gamemaps.GameMap;
+import net.betrayd.gamemaps.GameMapEntity;
+import net.betrayd.gamemaps.GameMapTransform;
+import net.betrayd.gamemaps.metrics.GameMapMetrics;
+import net.betrayd.gamemaps.metrics.MapMetrics;
+import net.betrayd.gamemaps.scheduling.TickScheduler;
+import net.betrayd.gamemaps.scheduling.TickedJob;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.util.math.Vec3i;
+
+/**
+ * An incremental version of {@link GameMapPlacer#placeGameMap}, placing a few
+ * sections every server tick. Changes are sent to clients at the end of each
+ * tick, and entities are spawned once all blocks are in place.
+ * <p>
+ * Use {@link GameMapPlacer#placeGameMapAsync} to create and schedule one.
+ */
+public class MapPlacementJob implements TickedJob {
+
+    /**
+     * The order in which sections are placed.
+     */
+    public static enum Order {
+        /**
+         * No particular order. Cheapest to set up.
+         */
+        UNORDERED,
+        /**
+         * Lowest sections first, so blocks are never placed floating.
+         */
+        BOTTOM_UP,
+        /**
+         * Sections closest to a player in the world first, as of when the job
+         * starts.
+         */
+        NEAR_PLAYERS
+    }
+
+    private final ServerWorld world;
+    private final GameMap map;
+    private final Vec3i offset;
+    private final Order order;
+
+    private final WorldSectionWriter writer;
+
+    private GameMapTransform transform = GameMapTransform.NONE;
+    private boolean diff;
+    private int writtenBlocks;
+
+    private List<ChunkSectionPos> sections;
+    private int nextSection;
+    private int changedBlocks;
+    private long startTime;
+
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    /**
+     * Create a placement job. It must be submitted to a {@link TickScheduler} to
+     * run.
+     *
+     * @param world  World to place into.
+     * @param map    Map to place. Must not be modified while the job runs.
+     * @param offset Block offset to use.
+     * @param order  Order to place sections in.
+     */
+    public MapPlacementJob(ServerWorld world, GameMap map, Vec3i offset, Order order) {
+        this.world = world;
+        this.map = map;
+        this.offset = offset;
+        this.order = order;
+        this.writer = new WorldSectionWriter(world);
+    }
+
+    public ServerWorld getWorld() {
+        return world;
+    }
+
+    public GameMap getMap() {
+        return map;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    public GameMapTransform getTransform() {
+        return transform;
+    }
+
+    /**
+     * Set a rotation and/or mirror to place the map with. Each section is
+     * transformed right before it's placed. Must be set before the job starts.
+     *
+     * @param transform Transform to apply around the offset.
+     * @return <code>this</code>
+     */
+    public MapPlacementJob setTransform(GameMapTransform transform) {
+        if (sections != null)
+            throw new IllegalStateException("Placement has already started.");
+        this.transform = transform;
+        return this;
+    }
+
+    public boolean isDiff() {
+        return diff;
+    }
+
+    /**
+     * Set whether this job should only write what differs from the world, like
+     * {@link GameMapPlacer#placeGameMapDiff}. Non-player entities within the
+     * map's sections are replaced rather than added to. Must be set before the
+     * job starts.
+     *
+     * @param diff Use diff placement.
+     * @return <code>this</code>
+     */
+    public MapPlacementJob setDiff(boolean diff) {
+        if (sections != null)
+            throw new IllegalStateException("Placement has already started.");
+        this.diff = diff;
+        return this;
+    }
+
+    /**
+     * Get the number of block states and block entities written so far in diff
+     * mode. Block entities are always re-created outside of diff mode, so
+     * they're not counted there.
+     *
+     * @return Written block count.
+     */
+    public int getWrittenBlocks() {
+        return diff ? writtenBlocks : changedBlocks;
+    }
+
+    /**
+     * Get a future that completes once the whole map, including entities, has
+     * been placed.
+     *
+     * @return The future.
+     */
+    public CompletableFuture<Void> getFuture() {
+        return future;
+    }
+
+    /**
+     * Get the number of blocks that were changed so far.
+     *
+     * @return Changed block count.
+     */
+    public int getChangedBlocks() {
+        return changedBlocks;
+    }
+
+    /**
+     * Get the progress of this job.
+     *
+     * @return Progress, from 0 to 1.
+     */
+    public float getProgress() {
+        if (sections == null)
+            return 0;
+        return sections.isEmpty() ? 1 : (float) nextSection / sections.size();
+    }
+
+    @Override
+    public boolean tick(long deadline) {
+        if (future.isDone())
+            return true;
+
+        if (sections == null) {
+            sections = sortSections();
+            startTime = System.nanoTime();
+        }
+
+        // Always place at least one section so a tiny time share can't stall the job.
+        do {
+            if (nextSection >= sections.size())
+                break;
+
+            ChunkSectionPos mapPos = sections.get(nextSection++);
+            GameChunk chunk = map.getChunk(mapPos);
+            if (chunk == null)
+                continue;
+
+            ChunkSectionPos pos = mapPos;
+            if (!transform.isIdentity()) {
+                pos = transform.apply(mapPos);
+                chunk = transform.apply(chunk);
+            }
+            if (diff)
+                writtenBlocks += GameMapPlacer.placeGameChunkDiff(writer, pos, chunk, offset);
+            else
+                GameMapPlacer.placeGameChunk(writer, pos, chunk, offset);
+        } while (System.nanoTime() < deadline);
+
+        changedBlocks += writer.flush();
+
+        if (nextSection >= sections.size()) {
+            if (diff) {
+                // Whatever is left from the last placement would otherwise be duplicated.
+                GameMapPlacer.replaceEntities(world, map, offset, transform);
+            } else {
+                for (GameMapEntity ent : map.getEntities()) {
+                    if (!transform.isIdentity())
+                        ent = transform.apply(ent);
+                    Vec3d pos = ent.pos().add(offset.getX(), offset.getY(), offset.getZ());
+                    ent.withPos(pos).createEntities(world, world::spawnEntity);
+                }
+            }
+            MapMetrics.get().onOperation(GameMapMetrics.Operation.PLACE, System.nanoTime() - startTime,
+                    sections.size(), map.getEntities().size());
+            future.complete(null);
+            return true;
+        }
+        return false;
+    }
+
+    private List<ChunkSectionPos> sortSections() {
+        List<ChunkSectionPos> list = new ArrayList<>(map.getChunks().keySet());
+        switch (order) {
+            case BOTTOM_UP -> list.sort(Comparator.comparingInt(ChunkSectionPos::getY));
+            case NEAR_PLAYERS -> {
+                List<Vec3d> players = new ArrayList<>();
+                for (ServerPlayerEntity player : world.getPlayers()) {
+                    players.add(player.getPos());
+                }
+                if (!players.isEmpty())
+                    list.sort(Comparator.comparingDouble(pos -> distanceToPlayers(pos, players)));
+            }
+            case UNORDERED -> {
+            }
+        }
+        return list;
+    }
+
+    private double distanceToPlayers(ChunkSectionPos pos, List<Vec3d> players) {
+        pos = transform.apply(pos);
+        double x = pos.getMinX() + offset.getX() + 8;
+        double y = pos.getMinY() + offset.getY() + 8;
+        double z = pos.getMinZ() + offset.getZ() + 8;
+
+        double min = Double.MAX_VALUE;
+        for (Vec3d player : players) {
+            min = Math.min(min, player.squaredDistanceTo(x, y, z));
+        }
+        return min;
+    }
+
+    @Override
+    public void cancel() {
+        changedBlocks += writer.flush();
+        future.completeExceptionally(new CancellationException("Map placement was cancelled."));
+    }
+}
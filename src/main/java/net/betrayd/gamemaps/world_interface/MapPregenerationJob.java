@@ -0,0 +1,241 @@
+package net.betrayd.gamemaps.world_interface;
+
+import java.util.Comparator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.betrayd.gamemaps.scheduling.TickScheduler;
+import net.betrayd.gamemaps.scheduling.TickedJob;
+import net.minecraft.server.world.ChunkTicketType;
+import net.minecraft.server.world.ServerChunkManager;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.chunk.ChunkStatus;
+import net.minecraft.world.gen.chunk.ChunkGenerator;
+
+/**
+ * Generates every chunk of a game map world to full status ahead of time, so
+ * players don't wait on worldgen once a match starts. Chunks are requested a
+ * few at a time from the server thread and generated on the worldgen
+ * executor, with a cap on how many are in flight at once.
+ * <p>
+ * Every requested chunk gets a ticket that keeps it loaded until
+ * {@link #release()} is called. Use {@link #pregenerate} to create and
+ * schedule one.
+ */
+public class MapPregenerationJob implements TickedJob {
+
+    public static final ChunkTicketType<ChunkPos> TICKET_TYPE = ChunkTicketType.create("game_map_pregeneration",
+            Comparator.comparingLong(ChunkPos::toLong));
+
+    private final ServerWorld world;
+    private final LongList columns;
+
+    // Enough to keep every worldgen thread busy, even as chunks wait on their neighbors.
+    private int maxInFlight = Runtime.getRuntime().availableProcessors() * 8;
+
+    private int nextColumn;
+    private boolean started;
+    private boolean released;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger finished = new AtomicInteger();
+
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    /**
+     * Create a pregeneration job. It must be submitted to a
+     * {@link TickScheduler} to run.
+     *
+     * @param world   World to generate.
+     * @param columns Chunk columns to generate, as {@link ChunkPos#toLong}
+     *                positions.
+     */
+    public MapPregenerationJob(ServerWorld world, LongSet columns) {
+        this.world = world;
+        this.columns = new LongArrayList(columns);
+
+        // Start in the middle, so the area players usually spawn in is ready first.
+        if (!this.columns.isEmpty()) {
+            long sumX = 0, sumZ = 0;
+            for (long l : this.columns) {
+                sumX += ChunkPos.getPackedX(l);
+                sumZ += ChunkPos.getPackedZ(l);
+            }
+            int centerX = (int) (sumX / this.columns.size());
+            int centerZ = (int) (sumZ / this.columns.size());
+            this.columns.sort((long a, long b) -> Integer.compare(distanceSquared(a, centerX, centerZ),
+                    distanceSquared(b, centerX, centerZ)));
+        }
+    }
+
+    private static int distanceSquared(long pos, int x, int z) {
+        int dx = ChunkPos.getPackedX(pos) - x;
+        int dz = ChunkPos.getPackedZ(pos) - z;
+        return dx * dx + dz * dz;
+    }
+
+    /**
+     * Pregenerate all chunks of a world that uses one of the game map chunk
+     * generators, within the time budget of the server's {@link TickScheduler}.
+     *
+     * @param world World to generate.
+     * @return The pregeneration job. Use {@link #getFuture()} to find out when
+     *         it's done.
+     * @throws IllegalArgumentException If the world doesn't use a game map
+     *                                  generator.
+     */
+    public static MapPregenerationJob pregenerate(ServerWorld world) {
+        LongSet columns = getColumnPositions(world.getChunkManager().getChunkGenerator());
+        return TickScheduler.get(world.getServer()).submit(new MapPregenerationJob(world, columns));
+    }
+
+    /**
+     * Find all chunk columns that a game map chunk generator places blocks in.
+     *
+     * @param generator The chunk generator.
+     * @return A new set of {@link ChunkPos#toLong} positions.
+     * @throws IllegalArgumentException If the generator isn't a game map
+     *                                  generator.
+     */
+    public static LongSet getColumnPositions(ChunkGenerator generator) {
+        LongSet columns = new LongOpenHashSet();
+        if (generator instanceof TiledGameMapChunkGenerator tiled) {
+            for (int tileX = 0; tileX < tiled.getTilesX(); tileX++) {
+                for (int tileZ = 0; tileZ < tiled.getTilesZ(); tileZ++) {
+                    BlockPos offset = tiled.getTileOffset(tileX, tileZ);
+                    addColumns(columns, tiled.getIndex().getColumnPositions(), offset.getX() >> 4,
+                            offset.getZ() >> 4);
+                }
+            }
+        } else if (generator instanceof GameMapChunkGenerator gameMapGenerator) {
+            columns.addAll(gameMapGenerator.getIndex().getColumnPositions());
+        } else if (generator instanceof CompositeGameMapChunkGenerator composite) {
+            for (CompositeGameMapChunkGenerator.Placement placement : composite.getPlacements()) {
+                ChunkSectionPos offset = placement.offset();
+                addColumns(columns, placement.index().getColumnPositions(), offset.getX(), offset.getZ());
+            }
+        } else if (generator instanceof LazyGameMapChunkGenerator lazy) {
+            columns.addAll(lazy.getStore().getColumnPositions());
+        } else {
+            throw new IllegalArgumentException("Not a game map chunk generator: " + generator);
+        }
+        return columns;
+    }
+
+    private static void addColumns(LongSet columns, LongSet mapColumns, int offsetX, int offsetZ) {
+        for (long l : mapColumns) {
+            columns.add(ChunkPos.toLong(ChunkPos.getPackedX(l) + offsetX, ChunkPos.getPackedZ(l) + offsetZ));
+        }
+    }
+
+    public ServerWorld getWorld() {
+        return world;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Set how many chunks may be generating at once. Higher values keep more
+     * worldgen threads busy, at the cost of memory and server thread time spent
+     * scheduling. Must be set before the job starts.
+     *
+     * @param maxInFlight Max chunks in flight.
+     * @return <code>this</code>
+     */
+    public MapPregenerationJob setMaxInFlight(int maxInFlight) {
+        if (started)
+            throw new IllegalStateException("Pregeneration has already started.");
+        if (maxInFlight < 1)
+            throw new IllegalArgumentException("At least one chunk must be in flight.");
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * Get a future that completes once every chunk has reached full status.
+     *
+     * @return The future.
+     */
+    public CompletableFuture<Void> getFuture() {
+        return future;
+    }
+
+    public int getTotalChunks() {
+        return columns.size();
+    }
+
+    public int getFinishedChunks() {
+        return finished.get();
+    }
+
+    /**
+     * Get the progress of this job.
+     *
+     * @return Progress, from 0 to 1.
+     */
+    public float getProgress() {
+        return columns.isEmpty() ? 1 : (float) finished.get() / columns.size();
+    }
+
+    @Override
+    public boolean tick(long deadline) {
+        if (future.isDone())
+            return true;
+        started = true;
+
+        ServerChunkManager chunkManager = world.getChunkManager();
+        while (nextColumn < columns.size() && inFlight.get() < maxInFlight && System.nanoTime() < deadline) {
+            ChunkPos pos = new ChunkPos(columns.getLong(nextColumn++));
+            chunkManager.addTicket(TICKET_TYPE, pos, 0, pos);
+
+            inFlight.incrementAndGet();
+            chunkManager.getChunkFutureSyncOnMainThread(pos.x, pos.z, ChunkStatus.FULL, true)
+                    .whenComplete((result, e) -> {
+                        inFlight.decrementAndGet();
+                        if (e != null) {
+                            future.completeExceptionally(e);
+                        } else if (result.right().isPresent()) {
+                            future.completeExceptionally(
+                                    new IllegalStateException("Chunk " + pos + " was unloaded while generating."));
+                        } else if (finished.incrementAndGet() == columns.size()) {
+                            future.complete(null);
+                        }
+                    });
+        }
+
+        if (columns.isEmpty())
+            future.complete(null);
+        return future.isDone();
+    }
+
+    @Override
+    public void cancel() {
+        future.completeExceptionally(new CancellationException("Map pregeneration was cancelled."));
+    }
+
+    /**
+     * Remove the tickets that keep the generated chunks loaded. Call once the
+     * match no longer needs the map to be loaded, or after cancelling the job.
+     * Must be called on the server thread.
+     */
+    public void release() {
+        if (released)
+            return;
+        released = true;
+
+        ServerChunkManager chunkManager = world.getChunkManager();
+        for (int i = 0; i < nextColumn; i++) {
+            ChunkPos pos = new ChunkPos(columns.getLong(i));
+            chunkManager.removeTicket(TICKET_TYPE, pos, 0, pos);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package net.betrayd.gamemaps.world_interface;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.LightType;
+import net.minecraft.world.chunk.ChunkNibbleArray;
+import net.minecraft.world.chunk.light.LightingProvider;
+
+/**
+ * Light data for a generating chunk, taken from the game map it's generated
+ * from. When a chunk carries precomputed light, the light engine loads it the
+ * same way it loads the light of a saved chunk instead of propagating light
+ * through the chunk.
+ */
+public class PrecomputedLight {
+
+    /**
+     * Implemented on {@link net.minecraft.world.chunk.ProtoChunk} through a
+     * mixin.
+     */
+    public static interface Holder {
+
+        @Nullable
+        public PrecomputedLight gamemaps$getPrecomputedLight();
+
+        public void gamemaps$setPrecomputedLight(@Nullable PrecomputedLight light);
+    }
+
+    private final int bottomSectionCoord;
+
+    @Nullable
+    private ChunkNibbleArray[] skyLight;
+    @Nullable
+    private ChunkNibbleArray[] blockLight;
+
+    /**
+     * Create a precomputed light object.
+     *
+     * @param bottomSectionCoord Section Y of the first element of the arrays.
+     * @param skyLight           Sky light per section. Elements may be null.
+     * @param blockLight         Block light per section. Elements may be null.
+     */
+    public PrecomputedLight(int bottomSectionCoord, ChunkNibbleArray[] skyLight, ChunkNibbleArray[] blockLight) {
+        this.bottomSectionCoord = bottomSectionCoord;
+        this.skyLight = skyLight;
+        this.blockLight = blockLight;
+    }
+
+    /**
+     * Check if this light has been handed to the light engine.
+     *
+     * @return If {@link #enqueue} was called.
+     */
+    public boolean isEnqueued() {
+        return blockLight == null;
+    }
+
+    /**
+     * Hand this light to a lighting provider. Can only be called once.
+     *
+     * @param lightingProvider Lighting provider of the world.
+     * @param chunkPos         Position of the chunk.
+     */
+    public void enqueue(LightingProvider lightingProvider, ChunkPos chunkPos) {
+        if (isEnqueued())
+            throw new IllegalStateException("Precomputed light has already been enqueued.");
+
+        // Same as loading a lit chunk from disk.
+        lightingProvider.setRetainData(chunkPos, true);
+        for (int i = 0; i < blockLight.length; i++) {
+            ChunkSectionPos pos = ChunkSectionPos.from(chunkPos, bottomSectionCoord + i);
+            if (blockLight[i] != null)
+                lightingProvider.enqueueSectionData(LightType.BLOCK, pos, blockLight[i]);
+            if (skyLight[i] != null)
+                lightingProvider.enqueueSectionData(LightType.SKY, pos, skyLight[i]);
+        }
+
+        skyLight = null;
+        blockLight = null;
+    }
+}
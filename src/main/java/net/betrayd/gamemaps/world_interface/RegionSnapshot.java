@@ -0,0 +1,219 @@
+package net.betrayd.gamemaps.world_interface;
+
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
+import net.betrayd.gamemaps.GameMapEntity;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Box;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.chunk.PalettedContainer;
+import net.minecraft.world.chunk.WorldChunk;
+
+/**
+ * A copy-on-write snapshot of a region of the world, for quickly resetting an
+ * arena after a match. Each section is copied right before its first block
+ * changes, and only those sections are written back when the snapshot is
+ * restored, so both cost in proportion to how much of the region was changed.
+ * Block entities are copied up front, as their data can change without a hook
+ * seeing it first. Covers every section of each chunk column in the box, like
+ * {@link TrackedRegion}.
+ *
+ * @see DirtySectionTracker#snapshot
+ */
+public class RegionSnapshot {
+    private final DirtySectionTracker tracker;
+    private final ChunkSectionPos minPos;
+    private final ChunkSectionPos maxPos;
+
+    // Original blocks of every section that changed since the last restore.
+    private final Long2ObjectMap<PalettedContainer<BlockState>> savedSections = new Long2ObjectOpenHashMap<>();
+    private final Long2ObjectMap<NbtCompound> savedBlockEntities = new Long2ObjectOpenHashMap<>();
+    private final LongSet dirtyBlockEntities = new LongOpenHashSet();
+
+    @Nullable
+    private final List<GameMapEntity> savedEntities;
+
+    private boolean closed;
+
+    RegionSnapshot(DirtySectionTracker tracker, ChunkSectionPos minPos, ChunkSectionPos maxPos,
+            boolean includeEntities) {
+        this.tracker = tracker;
+        this.minPos = minPos;
+        this.maxPos = maxPos;
+
+        ServerWorld world = tracker.getWorld();
+        for (int x = minPos.getX(); x < maxPos.getX(); x++) {
+            for (int z = minPos.getZ(); z < maxPos.getZ(); z++) {
+                WorldChunk chunk = world.getChunk(x, z);
+                for (BlockEntity ent : chunk.getBlockEntities().values()) {
+                    savedBlockEntities.put(ent.getPos().asLong(), ent.createNbtWithId());
+                }
+            }
+        }
+
+        if (includeEntities) {
+            savedEntities = world.getOtherEntities(null, getBox(), e -> !(e instanceof PlayerEntity)).stream()
+                    .map(GameMapEntity::fromEntity).toList();
+        } else {
+            savedEntities = null;
+        }
+    }
+
+    public ServerWorld getWorld() {
+        return tracker.getWorld();
+    }
+
+    public ChunkSectionPos getMinPos() {
+        return minPos;
+    }
+
+    public ChunkSectionPos getMaxPos() {
+        return maxPos;
+    }
+
+    public boolean includesEntities() {
+        return savedEntities != null;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    boolean contains(int chunkX, int chunkZ) {
+        return minPos.getX() <= chunkX && chunkX < maxPos.getX()
+            && minPos.getZ() <= chunkZ && chunkZ < maxPos.getZ();
+    }
+
+    void beforeChange(int sectionX, int sectionY, int sectionZ) {
+        long key = ChunkSectionPos.asLong(sectionX, sectionY, sectionZ);
+        if (savedSections.containsKey(key))
+            return;
+
+        WorldChunk chunk = getWorld().getChunk(sectionX, sectionZ);
+        int index = chunk.sectionCoordToIndex(sectionY);
+        if (index < 0 || index >= chunk.countVerticalSections())
+            return;
+
+        savedSections.put(key, chunk.getSection(index).getBlockStateContainer().copy());
+    }
+
+    void markDirty(BlockPos pos) {
+        long key = pos.asLong();
+        if (savedBlockEntities.containsKey(key))
+            dirtyBlockEntities.add(key);
+    }
+
+    /**
+     * Get all sections that were modified since the snapshot was taken or last
+     * restored.
+     *
+     * @return An unmodifiable set of {@link ChunkSectionPos#asLong} positions.
+     */
+    public LongSet getModifiedSections() {
+        return LongSets.unmodifiable(savedSections.keySet());
+    }
+
+    /**
+     * Restore the region to how it was when the snapshot was taken. The
+     * snapshot stays active, so it can be restored again after the next match.
+     *
+     * @return The number of block states and block entities that were written.
+     */
+    public int restore() {
+        assertOpen();
+        ServerWorld world = getWorld();
+        WorldSectionWriter writer = new WorldSectionWriter(world);
+        int written = 0;
+
+        LongSet restoredSections = new LongOpenHashSet();
+        for (Long2ObjectMap.Entry<PalettedContainer<BlockState>> entry : savedSections.long2ObjectEntrySet()) {
+            ChunkSectionPos pos = ChunkSectionPos.from(entry.getLongKey());
+            PalettedContainer<BlockState> blocks = entry.getValue();
+            if (writer.sectionMatches(pos, blocks))
+                continue;
+
+            int changed = writer.setSection(pos, blocks);
+            if (changed > 0) {
+                written += changed;
+                restoredSections.add(entry.getLongKey());
+            }
+        }
+
+        // Block entities of restored blocks are re-created empty, so they need their data back.
+        LongSet blockEntities = new LongOpenHashSet(dirtyBlockEntities);
+        LongIterator savedIterator = savedBlockEntities.keySet().iterator();
+        while (savedIterator.hasNext()) {
+            long l = savedIterator.nextLong();
+            if (restoredSections.contains(ChunkSectionPos.fromBlockPos(l)))
+                blockEntities.add(l);
+        }
+
+        LongIterator iterator = blockEntities.iterator();
+        while (iterator.hasNext()) {
+            long l = iterator.nextLong();
+            NbtCompound nbt = savedBlockEntities.get(l);
+            if (nbt == null)
+                continue;
+
+            BlockPos pos = BlockPos.fromLong(l);
+            BlockEntity ent = writer.getBlockEntity(pos);
+            if (ent != null && ent.createNbtWithId().equals(nbt))
+                continue;
+            if (writer.setBlockEntity(pos, nbt) != null)
+                written++;
+        }
+
+        writer.flush();
+
+        if (savedEntities != null) {
+            for (Entity ent : world.getOtherEntities(null, getBox(), e -> !(e instanceof PlayerEntity))) {
+                ent.discard();
+            }
+            for (GameMapEntity ent : savedEntities) {
+                ent.createEntities(world, world::spawnEntity);
+            }
+        }
+
+        // Restoring went through the dirty hooks as well.
+        savedSections.clear();
+        dirtyBlockEntities.clear();
+        return written;
+    }
+
+    private Box getBox() {
+        return new Box(minPos.getMinX(), minPos.getMinY(), minPos.getMinZ(),
+                maxPos.getMinX(), maxPos.getMaxY() + 1, maxPos.getMinZ());
+    }
+
+    /**
+     * Stop tracking changes and discard the snapshot.
+     */
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        savedSections.clear();
+        savedBlockEntities.clear();
+        dirtyBlockEntities.clear();
+        tracker.remove(this);
+    }
+
+    private void assertOpen() {
+        if (closed)
+            throw new IllegalStateException("This region snapshot has been closed.");
+    }
+}
@@ -0,0 +1,213 @@
+package net.betrayd.gamemaps.world_interface;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.jetbrains.annotations.Nullable;
+
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import net.betrayd.gamemaps.GameMap;
+import net.betrayd.gamemaps.GameMapTransform;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.chunk.PalettedContainer;
+
+/**
+ * Keeps the generated blocks of game map chunk columns in memory, so other
+ * worlds opened from the same frozen map can copy whole sections instead of
+ * generating them block by block. Templates are keyed by map, transform and
+ * column position in the map's {@link GameMapIndex}, so every world showing
+ * the same view of a map shares templates, whatever its offset or tiling.
+ * <p>
+ * Maps are only referenced weakly; the templates of a map are dropped once it
+ * has been garbage collected. The least recently used templates are evicted
+ * once the store grows past its memory limit. Thread-safe.
+ *
+ * @see GameMapChunkGenerator#setTemplateStore
+ */
+public class TemplateChunkStore {
+
+    // Object headers and array slots, roughly.
+    private static final int SECTION_OVERHEAD = 64;
+
+    /**
+     * The blocks of a generated column.
+     *
+     * @param sections Block containers, indexed like the map column. Do not
+     *                 modify; copy them into chunks.
+     * @param size     Estimated size in bytes.
+     */
+    public static record Template(PalettedContainer<BlockState>[] sections, long size) {
+    }
+
+    private static class MapKey extends WeakReference<GameMap> {
+        MapKey(GameMap map, ReferenceQueue<GameMap> queue) {
+            super(map, queue);
+        }
+    }
+
+    private static record Key(MapKey map, GameMapTransform transform, long pos) {
+    }
+
+    private final Map<GameMap, MapKey> mapKeys = new WeakHashMap<>();
+    private final ReferenceQueue<GameMap> collectedMaps = new ReferenceQueue<>();
+
+    private final Map<Key, Template> templates = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxSize;
+    private long size;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * Create a template store.
+     *
+     * @param maxSize Memory limit in bytes. This is an estimate, based on the
+     *                encoded size of the stored sections.
+     */
+    public TemplateChunkStore(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Set the memory limit of this store, evicting templates if it's now over
+     * the limit.
+     *
+     * @param maxSize Memory limit in bytes.
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        evict();
+    }
+
+    /**
+     * Get the estimated memory use of this store.
+     *
+     * @return Size in bytes.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getTemplateCount() {
+        return templates.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get the template of a map column.
+     *
+     * @param map       Frozen map the column is from.
+     * @param transform Transform the map is generated with.
+     * @param chunkX    Column X in the map's index.
+     * @param chunkZ    Column Z in the map's index.
+     * @return The template, or <code>null</code> if it hasn't been stored or
+     *         was evicted.
+     */
+    @Nullable
+    public synchronized Template get(GameMap map, GameMapTransform transform, int chunkX, int chunkZ) {
+        purgeCollected();
+        MapKey mapKey = mapKeys.get(map);
+        Template template = mapKey != null
+                ? templates.get(new Key(mapKey, transform, ChunkPos.toLong(chunkX, chunkZ)))
+                : null;
+        if (template != null)
+            hits++;
+        else
+            misses++;
+        return template;
+    }
+
+    /**
+     * Store the template of a map column, copying the given sections.
+     *
+     * @param map       Frozen map the column is from.
+     * @param transform Transform the map is generated with.
+     * @param chunkX    Column X in the map's index.
+     * @param chunkZ    Column Z in the map's index.
+     * @param sections  Generated block containers, indexed like the column in
+     *                  {@link GameMapIndex#getColumn}. <code>null</code>
+     *                  entries are skipped when generating.
+     */
+    public void put(GameMap map, GameMapTransform transform, int chunkX, int chunkZ,
+            PalettedContainer<BlockState>[] sections) {
+        // Copy outside of the lock; the chunk is still ours.
+        @SuppressWarnings("unchecked")
+        PalettedContainer<BlockState>[] copies = new PalettedContainer[sections.length];
+        long templateSize = 0;
+        for (int i = 0; i < sections.length; i++) {
+            if (sections[i] == null)
+                continue;
+            copies[i] = sections[i].copy();
+            templateSize += copies[i].getPacketSize() + SECTION_OVERHEAD;
+        }
+
+        synchronized (this) {
+            if (templateSize > maxSize)
+                return;
+
+            purgeCollected();
+            MapKey mapKey = mapKeys.computeIfAbsent(map, m -> new MapKey(m, collectedMaps));
+            Template old = templates.put(new Key(mapKey, transform, ChunkPos.toLong(chunkX, chunkZ)),
+                    new Template(copies, templateSize));
+            if (old != null)
+                size -= old.size();
+            size += templateSize;
+            evict();
+        }
+    }
+
+    private void purgeCollected() {
+        Reference<? extends GameMap> ref = collectedMaps.poll();
+        if (ref == null)
+            return;
+
+        Set<Reference<? extends GameMap>> collected = new ReferenceOpenHashSet<>();
+        for (; ref != null; ref = collectedMaps.poll()) {
+            collected.add(ref);
+        }
+
+        Iterator<Map.Entry<Key, Template>> iterator = templates.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Template> entry = iterator.next();
+            if (collected.contains(entry.getKey().map())) {
+                size -= entry.getValue().size();
+                iterator.remove();
+            }
+        }
+    }
+
+    private void evict() {
+        Iterator<Template> iterator = templates.values().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            size -= iterator.next().size();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Remove all templates.
+     */
+    public synchronized void clear() {
+        templates.clear();
+        mapKeys.clear();
+        size = 0;
+    }
+}
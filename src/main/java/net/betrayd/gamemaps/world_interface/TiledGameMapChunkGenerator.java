@@ -0,0 +1,273 @@
+package net.betrayd.gamemaps.world_interface;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.betrayd.gamemaps.GameMap;
+import net.betrayd.gamemaps.GameMapEntity;
+import net.betrayd.gamemaps.GameMapTransform;
+import net.betrayd.gamemaps.map_markers.MapMarker;
+import net.minecraft.registry.entry.RegistryEntry;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.HeightLimitView;
+import net.minecraft.world.Heightmap.Type;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.biome.source.BiomeCoords;
+import net.minecraft.world.biome.source.util.MultiNoiseUtil.MultiNoiseSampler;
+import net.minecraft.world.gen.chunk.VerticalBlockSample;
+import net.minecraft.world.gen.noise.NoiseConfig;
+
+/**
+ * Generates a grid of copies of one game map, so a single world can host many
+ * instances of the same arena. All tiles share the same map and index; world
+ * coordinates are wrapped into the map as they're looked up, and the space
+ * between tiles is void.
+ * <p>
+ * Tile <code>(0, 0)</code> is generated where the map would be by
+ * {@link GameMapChunkGenerator}, and the others are offset from it by a
+ * multiple of the spacing. The map should be frozen, so its index can be
+ * shared with other generators.
+ */
+public class TiledGameMapChunkGenerator extends GameMapChunkGenerator {
+
+    private final int tilesX;
+    private final int tilesZ;
+    private final int spacing;
+
+    private final int minChunkX;
+    private final int minChunkZ;
+    private final int widthChunks;
+    private final int depthChunks;
+
+    /**
+     * Create a tiled generator.
+     *
+     * @param gameMap Game map to repeat.
+     * @param tilesX  Number of tiles along the X axis.
+     * @param tilesZ  Number of tiles along the Z axis.
+     * @param spacing Distance between the starts of neighboring tiles, in
+     *                chunks. Must be at least the size of the map.
+     */
+    public TiledGameMapChunkGenerator(GameMap gameMap, int tilesX, int tilesZ, int spacing) {
+        this(gameMap, GameMapIndex.of(gameMap), tilesX, tilesZ, spacing);
+    }
+
+    /**
+     * Create a tiled generator with a prebuilt index.
+     *
+     * @param gameMap Game map to repeat.
+     * @param index   Index of the game map.
+     * @param tilesX  Number of tiles along the X axis.
+     * @param tilesZ  Number of tiles along the Z axis.
+     * @param spacing Distance between the starts of neighboring tiles, in
+     *                chunks. Must be at least the size of the map.
+     */
+    public TiledGameMapChunkGenerator(GameMap gameMap, GameMapIndex index, int tilesX, int tilesZ, int spacing) {
+        this(gameMap, index, tilesX, tilesZ, spacing, new TiledBiomeSource(gameMap, index));
+    }
+
+    private TiledGameMapChunkGenerator(GameMap gameMap, GameMapIndex index, int tilesX, int tilesZ, int spacing,
+            TiledBiomeSource biomeSource) {
+        super(gameMap, index, biomeSource);
+        if (tilesX < 1 || tilesZ < 1)
+            throw new IllegalArgumentException("There must be at least one tile on each axis.");
+
+        this.tilesX = tilesX;
+        this.tilesZ = tilesZ;
+        this.spacing = spacing;
+
+        minChunkX = index.getMinX() >> 4;
+        minChunkZ = index.getMinZ() >> 4;
+        widthChunks = (index.getMaxX() >> 4) - minChunkX + 1;
+        depthChunks = (index.getMaxZ() >> 4) - minChunkZ + 1;
+
+        if (spacing < widthChunks || spacing < depthChunks)
+            throw new IllegalArgumentException("Tile spacing (" + spacing + ") is smaller than the map ("
+                    + widthChunks + "x" + depthChunks + " chunks).");
+
+        biomeSource.generator = this;
+    }
+
+    public int getTilesX() {
+        return tilesX;
+    }
+
+    public int getTilesZ() {
+        return tilesZ;
+    }
+
+    public int getTileCount() {
+        return tilesX * tilesZ;
+    }
+
+    public int getSpacing() {
+        return spacing;
+    }
+
+    /**
+     * Get the offset of a tile from the map's own coordinates.
+     *
+     * @param tileX Tile X, from 0 to <code>getTilesX() - 1</code>.
+     * @param tileZ Tile Z, from 0 to <code>getTilesZ() - 1</code>.
+     * @return The block offset.
+     */
+    public BlockPos getTileOffset(int tileX, int tileZ) {
+        return new BlockPos(tileX * spacing * 16, 0, tileZ * spacing * 16);
+    }
+
+    /**
+     * Get the markers of the map, transformed like its blocks and moved to a
+     * tile.
+     *
+     * @param tileX Tile X.
+     * @param tileZ Tile Z.
+     * @return Copies of the markers with world positions.
+     */
+    public List<MapMarker> getMarkers(int tileX, int tileZ) {
+        BlockPos offset = getTileOffset(tileX, tileZ);
+        GameMapTransform transform = getIndex().getTransform();
+        List<MapMarker> markers = new ArrayList<>(getGameMap().getMarkers().size());
+        for (MapMarker marker : getGameMap().getMarkers()) {
+            MapMarker copy = transform.apply(marker);
+            copy.setPos(copy.getPos().add(offset.getX(), offset.getY(), offset.getZ()));
+            markers.add(copy);
+        }
+        return markers;
+    }
+
+    /**
+     * Find the tile a chunk belongs to, including the void around its map.
+     *
+     * @param chunkX Chunk X.
+     * @return The tile X, which may be outside the grid.
+     */
+    public int getTileX(int chunkX) {
+        return Math.floorDiv(chunkX - minChunkX, spacing);
+    }
+
+    /**
+     * Find the tile a chunk belongs to, including the void around its map.
+     *
+     * @param chunkZ Chunk Z.
+     * @return The tile Z, which may be outside the grid.
+     */
+    public int getTileZ(int chunkZ) {
+        return Math.floorDiv(chunkZ - minChunkZ, spacing);
+    }
+
+    /**
+     * Wrap a world chunk X into the map.
+     *
+     * @return The chunk X in the map, or {@link Integer#MIN_VALUE} if the chunk
+     *         is outside of every tile.
+     */
+    private int toMapChunkX(int chunkX) {
+        int tile = getTileX(chunkX);
+        int local = Math.floorMod(chunkX - minChunkX, spacing);
+        if (tile < 0 || tile >= tilesX || local >= widthChunks)
+            return Integer.MIN_VALUE;
+        return minChunkX + local;
+    }
+
+    private int toMapChunkZ(int chunkZ) {
+        int tile = getTileZ(chunkZ);
+        int local = Math.floorMod(chunkZ - minChunkZ, spacing);
+        if (tile < 0 || tile >= tilesZ || local >= depthChunks)
+            return Integer.MIN_VALUE;
+        return minChunkZ + local;
+    }
+
+    @Override
+    @Nullable
+    protected ChunkPos getMapColumnPos(int chunkX, int chunkZ) {
+        int mapX = toMapChunkX(chunkX);
+        int mapZ = toMapChunkZ(chunkZ);
+        if (mapX == Integer.MIN_VALUE || mapZ == Integer.MIN_VALUE)
+            return null;
+        return new ChunkPos(mapX, mapZ);
+    }
+
+    @Override
+    protected List<GameMapEntity> getEntities(int chunkX, int chunkZ) {
+        int mapX = toMapChunkX(chunkX);
+        int mapZ = toMapChunkZ(chunkZ);
+        if (mapX == Integer.MIN_VALUE || mapZ == Integer.MIN_VALUE)
+            return Collections.emptyList();
+
+        List<GameMapEntity> entities = super.getEntities(mapX, mapZ);
+        if (entities.isEmpty() || (mapX == chunkX && mapZ == chunkZ))
+            return entities;
+
+        double offsetX = (chunkX - mapX) * 16;
+        double offsetZ = (chunkZ - mapZ) * 16;
+        List<GameMapEntity> moved = new ArrayList<>(entities.size());
+        for (GameMapEntity ent : entities) {
+            moved.add(ent.withPos(ent.pos().add(offsetX, 0, offsetZ)));
+        }
+        return moved;
+    }
+
+    @Override
+    public int getHeight(int x, int z, Type heightmap, HeightLimitView world, NoiseConfig noiseConfig) {
+        int mapX = toMapChunkX(x >> 4);
+        int mapZ = toMapChunkZ(z >> 4);
+        if (mapX == Integer.MIN_VALUE || mapZ == Integer.MIN_VALUE)
+            return 0;
+        return super.getHeight(mapX << 4 | x & 0xF, mapZ << 4 | z & 0xF, heightmap, world, noiseConfig);
+    }
+
+    @Override
+    public VerticalBlockSample getColumnSample(int x, int z, HeightLimitView world, NoiseConfig noiseConfig) {
+        int mapX = toMapChunkX(x >> 4);
+        int mapZ = toMapChunkZ(z >> 4);
+        if (mapX == Integer.MIN_VALUE || mapZ == Integer.MIN_VALUE)
+            return VOID_SAMPLE;
+        return super.getColumnSample(mapX << 4 | x & 0xF, mapZ << 4 | z & 0xF, world, noiseConfig);
+    }
+
+    @Override
+    public boolean isInBounds(int x, int y, int z) {
+        int mapX = toMapChunkX(x >> 4);
+        int mapZ = toMapChunkZ(z >> 4);
+        if (mapX == Integer.MIN_VALUE || mapZ == Integer.MIN_VALUE)
+            return false;
+        return super.isInBounds(mapX << 4 | x & 0xF, y, mapZ << 4 | z & 0xF);
+    }
+
+    @Override
+    public boolean isInBounds(int x, int z) {
+        int mapX = toMapChunkX(x >> 4);
+        int mapZ = toMapChunkZ(z >> 4);
+        if (mapX == Integer.MIN_VALUE || mapZ == Integer.MIN_VALUE)
+            return false;
+        return super.isInBounds(mapX << 4 | x & 0xF, mapZ << 4 | z & 0xF);
+    }
+
+    /**
+     * Wraps biome lookups into the map the same way as blocks.
+     */
+    private static class TiledBiomeSource extends GameMapBiomeSource {
+        private TiledGameMapChunkGenerator generator;
+
+        TiledBiomeSource(GameMap gameMap, GameMapIndex index) {
+            super(gameMap, index);
+        }
+
+        @Override
+        public RegistryEntry<Biome> getBiome(int x, int y, int z, MultiNoiseSampler noise) {
+            int chunkX = BiomeCoords.toChunk(x);
+            int chunkZ = BiomeCoords.toChunk(z);
+            int mapX = generator.toMapChunkX(chunkX);
+            int mapZ = generator.toMapChunkZ(chunkZ);
+            if (mapX == Integer.MIN_VALUE || mapZ == Integer.MIN_VALUE)
+                return getFallback();
+
+            return super.getBiome(x + BiomeCoords.fromChunk(mapX - chunkX), y,
+                    z + BiomeCoords.fromChunk(mapZ - chunkZ), noise);
+        }
+    }
+}
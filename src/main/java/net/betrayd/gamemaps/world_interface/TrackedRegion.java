@@ -0,0 +1,265 @@
+package net.betrayd.gamemaps.world_interface;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.jetbrains.annotations.Nullable;
+
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
+import net.betrayd.gamemaps.EntityFilter;
+import net.betrayd.gamemaps.GameChunk;
+import net.betrayd.gamemaps.GameMap;
+import net.betrayd.gamemaps.map_markers.MapMarker;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.registry.Registry;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.LightType;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkNibbleArray;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.light.LightingProvider;
+
+/**
+ * A region of a world that's captured into a game map and kept up to date by
+ * only recapturing the sections that changed since the last capture. Covers
+ * the same sections as {@link WorldAlignedMapCapture#capture} with the same
+ * bounds: every section of each chunk column in the box.
+ *
+ * @see DirtySectionTracker#track
+ */
+public class TrackedRegion {
+    private final DirtySectionTracker tracker;
+    private final ChunkSectionPos minPos;
+    private final ChunkSectionPos maxPos;
+    private final ChunkSectionPos origin;
+
+    @Nullable
+    private final EntityFilter entityFilter;
+
+    @Nullable
+    private final CaptureOptions options;
+
+    private final LongSet dirty = new LongOpenHashSet();
+    // Markers added by the entity filter in the last capture, which are replaced on recapture.
+    private final Set<MapMarker> filterMarkers = Collections.newSetFromMap(new IdentityHashMap<>());
+    private boolean closed;
+
+    TrackedRegion(DirtySectionTracker tracker, ChunkSectionPos minPos, ChunkSectionPos maxPos,
+            ChunkSectionPos origin, @Nullable EntityFilter entityFilter, @Nullable CaptureOptions options) {
+        this.tracker = tracker;
+        this.minPos = minPos;
+        this.maxPos = maxPos;
+        this.origin = origin;
+        this.entityFilter = entityFilter;
+        this.options = options;
+    }
+
+    public ServerWorld getWorld() {
+        return tracker.getWorld();
+    }
+
+    public ChunkSectionPos getMinPos() {
+        return minPos;
+    }
+
+    public ChunkSectionPos getMaxPos() {
+        return maxPos;
+    }
+
+    public ChunkSectionPos getOrigin() {
+        return origin;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Check if this region contains a chunk column. Like capture, the max pos is
+     * exclusive.
+     */
+    boolean contains(int chunkX, int chunkZ) {
+        return minPos.getX() <= chunkX && chunkX < maxPos.getX()
+            && minPos.getZ() <= chunkZ && chunkZ < maxPos.getZ();
+    }
+
+    void markDirty(long sectionPos) {
+        dirty.add(sectionPos);
+    }
+
+    public boolean isDirty() {
+        return !dirty.isEmpty();
+    }
+
+    /**
+     * Get all sections that changed since the last capture.
+     *
+     * @return An unmodifiable set of {@link ChunkSectionPos#asLong} positions in
+     *         world space.
+     */
+    public LongSet getDirtySections() {
+        return LongSets.unmodifiable(dirty);
+    }
+
+    /**
+     * Capture the entire region into a new map and clear the dirty sections.
+     *
+     * @return The captured map.
+     */
+    public GameMap capture() {
+        assertOpen();
+        dirty.clear();
+        GameMap map = WorldAlignedMapCapture.capture(getWorld(), minPos, maxPos, origin, entityFilter, options);
+
+        // Every marker in a fresh capture came from the filter.
+        filterMarkers.clear();
+        filterMarkers.addAll(map.getMarkers());
+        return map;
+    }
+
+    /**
+     * Update a map previously captured from this region, copying only the
+     * sections that changed since the last capture. Entities move around too
+     * often to be worth tracking, so they're always recaptured, and markers the
+     * entity filter added in the last capture are replaced. If light is
+     * captured, it should have been updated since the last block change; light
+     * updates are processed at the end of every tick.
+     *
+     * @param map Map to update. Must not be frozen.
+     * @return The map-space positions of all sections that were replaced or
+     *         removed.
+     */
+    public Set<ChunkSectionPos> recapture(GameMap map) {
+        assertOpen();
+        if (map.isFrozen())
+            throw new IllegalStateException("Cannot recapture into a frozen map.");
+
+        ServerWorld world = getWorld();
+        Registry<Biome> biomeRegistry = world.getRegistryManager().get(RegistryKeys.BIOME);
+        Set<ChunkSectionPos> changed = new HashSet<>();
+
+        LongIterator iterator = dirty.iterator();
+        while (iterator.hasNext()) {
+            long l = iterator.nextLong();
+            int x = ChunkSectionPos.unpackX(l);
+            int y = ChunkSectionPos.unpackY(l);
+            int z = ChunkSectionPos.unpackZ(l);
+
+            Chunk chunk = world.getChunk(x, z);
+            int index = chunk.sectionCoordToIndex(y);
+            if (index < 0 || index >= chunk.countVerticalSections())
+                continue;
+
+            ChunkSection section = chunk.getSection(index);
+            ChunkSectionPos mapPos = ChunkSectionPos.from(x - origin.getX(), y - origin.getY(), z - origin.getZ());
+
+            if (options != null && options.shouldSkip(section)) {
+                if (map.getChunks().remove(mapPos) != null)
+                    changed.add(mapPos);
+                continue;
+            }
+
+            GameChunk gameChunk = WorldAlignedMapCapture.captureChunkSection(section, biomeRegistry);
+            for (BlockPos pos : chunk.getBlockEntityPositions()) {
+                BlockEntity ent = chunk.getBlockEntity(pos);
+                if (ent != null && ChunkSectionPos.getSectionCoord(pos.getY()) == y)
+                    gameChunk.putBlockEntity(ent);
+            }
+
+            // Don't re-grow bounds that were trimmed away with something that's still empty.
+            if (options != null && options.trimBounds() && map.getChunk(mapPos) == null
+                    && !options.isOccupied(gameChunk))
+                continue;
+
+            map.putChunk(mapPos, gameChunk);
+            changed.add(mapPos);
+        }
+
+        if (options != null && options.captureLight()) {
+            recaptureLight(map, changed);
+        }
+        dirty.clear();
+
+        map.getEntities().clear();
+        map.getMarkers().removeIf(filterMarkers::contains);
+        filterMarkers.clear();
+
+        Set<MapMarker> oldMarkers = Collections.newSetFromMap(new IdentityHashMap<>());
+        oldMarkers.addAll(map.getMarkers());
+
+        BlockPos blockMin = new BlockPos(minPos.getMinX(), minPos.getMinY(), minPos.getMinZ());
+        BlockPos blockMax = new BlockPos(maxPos.getMaxX(), maxPos.getMaxY(), maxPos.getMaxZ());
+        WorldAlignedMapCapture.captureEntities(world, blockMin, blockMax, origin.getMinPos(), entityFilter, map);
+
+        for (MapMarker marker : map.getMarkers()) {
+            if (!oldMarkers.contains(marker))
+                filterMarkers.add(marker);
+        }
+
+        map.getMeta().setFromWorld(world);
+        return changed;
+    }
+
+    /**
+     * Recapture the light of all dirty sections and their neighbors, as light
+     * spreads across section borders. Sky light changes that reach further down
+     * than one section are not picked up.
+     */
+    private void recaptureLight(GameMap map, Set<ChunkSectionPos> changed) {
+        LightingProvider lightingProvider = getWorld().getLightingProvider();
+        LongSet sections = new LongOpenHashSet();
+
+        LongIterator iterator = dirty.iterator();
+        while (iterator.hasNext()) {
+            long l = iterator.nextLong();
+            for (int x = -1; x <= 1; x++) {
+                for (int y = -1; y <= 1; y++) {
+                    for (int z = -1; z <= 1; z++) {
+                        sections.add(ChunkSectionPos.offset(l, x, y, z));
+                    }
+                }
+            }
+        }
+
+        iterator = sections.iterator();
+        while (iterator.hasNext()) {
+            ChunkSectionPos pos = ChunkSectionPos.from(iterator.nextLong());
+            ChunkSectionPos mapPos = ChunkSectionPos.from(pos.getX() - origin.getX(), pos.getY() - origin.getY(),
+                    pos.getZ() - origin.getZ());
+            GameChunk gameChunk = map.getChunk(mapPos);
+            if (gameChunk == null)
+                continue;
+
+            ChunkNibbleArray blockLight = ChunkSnapshot.copyLight(lightingProvider, LightType.BLOCK, pos);
+            gameChunk.setLight(ChunkSnapshot.copyLight(lightingProvider, LightType.SKY, pos),
+                    blockLight != null ? blockLight : new ChunkNibbleArray());
+            changed.add(mapPos);
+        }
+    }
+
+    /**
+     * Stop tracking this region.
+     */
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        dirty.clear();
+        filterMarkers.clear();
+        tracker.remove(this);
+    }
+
+    private void assertOpen() {
+        if (closed)
+            throw new IllegalStateException("This tracked region has been closed.");
+    }
+}
@@ -1,5 +1,11 @@
 package net.betrayd.gamemaps.world_interface;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 import org.jetbrains.annotations.Nullable;
 
 import com.mojang.logging.LogUtils;
@@ -8,19 +14,26 @@ import net.betrayd.gamemaps.EntityFilter;
 import net.betrayd.gamemaps.GameChunk;
 import net.betrayd.gamemaps.GameMap;
 import net.betrayd.gamemaps.GameMapEntity;
+import net.betrayd.gamemaps.metrics.GameMapMetrics;
+import net.betrayd.gamemaps.metrics.MapMetrics;
+import net.betrayd.gamemaps.scheduling.TickScheduler;
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.registry.Registry;
 import net.minecraft.registry.RegistryKeys;
+import net.minecraft.registry.entry.RegistryEntry;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Box;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.ChunkSectionPos;
 import net.minecraft.util.math.Vec3i;
 import net.minecraft.world.World;
 import net.minecraft.world.biome.Biome;
 import net.minecraft.world.chunk.Chunk;
 import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.PalettedContainer;
 
 /**
  * Reads an mc world and creates a game map from it. Unlike
@@ -34,18 +47,27 @@ public class WorldAlignedMapCapture {
         return capture(world, pos1, pos2, origin, null);
     }
 
+    public static GameMap capture(World world, ChunkSectionPos pos1, ChunkSectionPos pos2,
+            @Nullable ChunkSectionPos origin, @Nullable EntityFilter entityFilter) {
+        return capture(world, pos1, pos2, origin, entityFilter, null);
+    }
+
     /**
      * Capture a game world from an MC world, querying chunk data directly.
      * 
-     * @param world  Minecraft world.
-     * @param pos1   One end of the bounding box (world space).
-     * @param pos2   Other end of the bounding box (world space).
-     * @param origin Chunk section pos to use as the origin.
+     * @param world        Minecraft world.
+     * @param pos1         One end of the bounding box (world space).
+     * @param pos2         Other end of the bounding box (world space).
+     * @param origin       Chunk section pos to use as the origin.
+     * @param entityFilter Entity filter to use.
+     * @param options      Options deciding which sections to keep.
+     *                     <code>null</code> keeps all of them.
      * @return The captured game map.
      */
     public static GameMap capture(World world, ChunkSectionPos pos1, ChunkSectionPos pos2,
-            @Nullable ChunkSectionPos origin, @Nullable EntityFilter entityFilter) {
+            @Nullable ChunkSectionPos origin, @Nullable EntityFilter entityFilter, @Nullable CaptureOptions options) {
 
+        long startTime = System.nanoTime();
         ChunkSectionPos minPos = min(pos1, pos2, ChunkSectionPos::from);
         ChunkSectionPos maxPos = max(pos1, pos2, ChunkSectionPos::from);
 
@@ -53,6 +75,7 @@ public class WorldAlignedMapCapture {
 
         Registry<Biome> biomeRegistry = world.getRegistryManager().get(RegistryKeys.BIOME);
         GameMap map = new GameMap(biomeRegistry);
+        int dropped = 0;
 
         for (int x = minPos.getX(); x < maxPos.getX(); x++) {
             for (int z = minPos.getZ(); z < maxPos.getZ(); z++) {
@@ -60,50 +83,283 @@ public class WorldAlignedMapCapture {
                 if (chunk == null)
                     continue;
 
-                GameChunk[] gameChunks = captureChunk(chunk, biomeRegistry);
-                for (int i = 0; i < gameChunks.length; i++) {
-                    if (gameChunks[i] == null)
-                        continue;
+                ChunkSnapshot snapshot = ChunkSnapshot.of(chunk, options);
+                dropped += snapshot.getSkippedSections();
+                putChunkColumn(map, snapshot.getPos(), snapshot.getBottomSectionCoord(),
+                        snapshot.build(biomeRegistry), origin);
+            }
+        }
+
+        if (options != null && options.trimBounds()) {
+            dropped += trimBounds(map, options);
+        }
+        logDropped(dropped);
+
+        if (world instanceof ServerWorld serverWorld) {
+            BlockPos blockMin = new BlockPos(minPos.getMinX(), minPos.getMinY(), minPos.getMinZ());
+            BlockPos blockMax = new BlockPos(maxPos.getMaxX(), maxPos.getMaxY(), maxPos.getMaxZ());
+
+            captureEntities(serverWorld, blockMin, blockMax, origin.getMinPos(), entityFilter, map);
+        } else {
+            LogUtils.getLogger().warn("Can only write entities if we're in a server world.");
+        }
+
+        map.getMeta().setFromWorld(world);
+
+        MapMetrics.get().onOperation(GameMapMetrics.Operation.CAPTURE, System.nanoTime() - startTime,
+                map.getChunks().size(), map.getEntities().size());
+        return map;
+    }
+
+    public static CompletableFuture<GameMap> captureParallel(World world, ChunkSectionPos pos1, ChunkSectionPos pos2,
+            @Nullable ChunkSectionPos origin, @Nullable EntityFilter entityFilter, Executor executor) {
+        return captureParallel(world, pos1, pos2, origin, entityFilter, null, executor);
+    }
+
+    /**
+     * Capture a game world from an MC world, doing as little work as possible on
+     * the calling thread. The calling thread (which must own the world) only
+     * takes snapshots of the chunks and captures entities; the game chunks are
+     * built and the map is assembled on <code>executor</code>.
+     * 
+     * @param world        Minecraft world.
+     * @param pos1         One end of the bounding box (world space).
+     * @param pos2         Other end of the bounding box (world space).
+     * @param origin       Chunk section pos to use as the origin.
+     * @param entityFilter Entity filter to use. Runs on the calling thread.
+     * @param options      Options deciding which sections to keep.
+     *                     <code>null</code> keeps all of them.
+     * @param executor     Executor to build the map on.
+     * @return A future that completes with the captured map.
+     */
+    public static CompletableFuture<GameMap> captureParallel(World world, ChunkSectionPos pos1, ChunkSectionPos pos2,
+            @Nullable ChunkSectionPos origin, @Nullable EntityFilter entityFilter, @Nullable CaptureOptions options,
+            Executor executor) {
+
+        long startTime = System.nanoTime();
+        ChunkSectionPos minPos = min(pos1, pos2, ChunkSectionPos::from);
+        ChunkSectionPos maxPos = max(pos1, pos2, ChunkSectionPos::from);
+
+        ChunkSectionPos mapOrigin = origin != null ? origin : ChunkSectionPos.from(0, 0, 0);
+
+        Registry<Biome> biomeRegistry = world.getRegistryManager().get(RegistryKeys.BIOME);
+        GameMap map = new GameMap(biomeRegistry);
+
+        List<CompletableFuture<BuiltColumn>> columns = new ArrayList<>();
 
-                    ChunkSectionPos pos = ChunkSectionPos.from(
-                            x - origin.getX(),
-                            chunk.sectionIndexToCoord(i) - origin.getY(),
-                            z - origin.getZ());
+        for (int x = minPos.getX(); x < maxPos.getX(); x++) {
+            for (int z = minPos.getZ(); z < maxPos.getZ(); z++) {
+                Chunk chunk = world.getChunk(x, z);
+                if (chunk == null)
+                    continue;
 
-                    map.putChunk(pos, gameChunks[i]);
-                }
+                columns.add(buildAsync(ChunkSnapshot.of(chunk, options), biomeRegistry, executor));
             }
         }
 
         if (world instanceof ServerWorld serverWorld) {
             BlockPos blockMin = new BlockPos(minPos.getMinX(), minPos.getMinY(), minPos.getMinZ());
             BlockPos blockMax = new BlockPos(maxPos.getMaxX(), maxPos.getMaxY(), maxPos.getMaxZ());
-            BlockPos originPos = origin.getMinPos();
-
-            for (Entity ent : serverWorld.iterateEntities()) {
-                if (boxContains(blockMin, blockMax, ent.getBlockPos())) {
-                    Entity filtered;
-                    if (entityFilter != null) {
-                        filtered = entityFilter.apply(ent, map);
-                    } else {
-                        filtered = ent;
-                    }
-                    
-                    if (filtered == null || filtered instanceof PlayerEntity)
-                        continue;
-
-                    map.addEntity(GameMapEntity.fromEntity(
-                            ent.getPos().subtract(originPos.getX(), originPos.getY(), originPos.getZ()), ent));
-                }
-            }
 
+            captureEntities(serverWorld, blockMin, blockMax, mapOrigin.getMinPos(), entityFilter, map);
         } else {
             LogUtils.getLogger().warn("Can only write entities if we're in a server world.");
         }
 
         map.getMeta().setFromWorld(world);
 
-        return map;
+        // All main-thread access to the map happens before this point.
+        return assembleAsync(map, columns, mapOrigin, options, executor).thenApply(result -> {
+            logDropped(result.droppedSections());
+            MapMetrics.get().onOperation(GameMapMetrics.Operation.CAPTURE, System.nanoTime() - startTime,
+                    result.map().getChunks().size(), result.map().getEntities().size());
+            return result.map();
+        });
+    }
+
+    /**
+     * Build the game chunks of a chunk snapshot on an executor.
+     */
+    static CompletableFuture<BuiltColumn> buildAsync(ChunkSnapshot snapshot, Registry<Biome> biomeRegistry,
+            Executor executor) {
+        return CompletableFuture.supplyAsync(() -> new BuiltColumn(snapshot.getPos(),
+                snapshot.getBottomSectionCoord(), snapshot.build(biomeRegistry), snapshot.getSkippedSections()),
+                executor);
+    }
+
+    /**
+     * Wait for a set of columns to build, and then add them to a map, trimming
+     * its bounds if the options ask for it.
+     */
+    static CompletableFuture<AssembledMap> assembleAsync(GameMap map, List<CompletableFuture<BuiltColumn>> columns,
+            ChunkSectionPos origin, @Nullable CaptureOptions options, Executor executor) {
+        return CompletableFuture.allOf(columns.toArray(CompletableFuture[]::new)).thenApplyAsync(v -> {
+            int dropped = 0;
+            for (CompletableFuture<BuiltColumn> future : columns) {
+                BuiltColumn column = future.join();
+                putChunkColumn(map, column.pos(), column.bottomSectionCoord(), column.gameChunks(), origin);
+                dropped += column.skippedSections();
+            }
+
+            if (options != null && options.trimBounds()) {
+                dropped += trimBounds(map, options);
+            }
+            return new AssembledMap(map, dropped);
+        }, executor);
+    }
+
+    static record BuiltColumn(ChunkPos pos, int bottomSectionCoord, GameChunk[] gameChunks, int skippedSections) {
+    }
+
+    static record AssembledMap(GameMap map, int droppedSections) {
+    }
+
+    /**
+     * Capture a game world from an MC world over the course of several ticks.
+     * Chunks are loaded asynchronously through chunk tickets, and at most
+     * <code>chunksPerTick</code> chunks are copied each tick, within the time
+     * budget of the server's {@link TickScheduler}.
+     * 
+     * @param world         Minecraft world.
+     * @param pos1          One end of the bounding box (world space).
+     * @param pos2          Other end of the bounding box (world space).
+     * @param origin        Chunk section pos to use as the origin.
+     * @param entityFilter  Entity filter to use.
+     * @param chunksPerTick Maximum number of chunk columns to copy per tick.
+     * @return The capture job. Use {@link MapCaptureJob#getFuture()} to obtain the
+     *         map once it's done.
+     */
+    public static MapCaptureJob captureAsync(ServerWorld world, ChunkSectionPos pos1, ChunkSectionPos pos2,
+            @Nullable ChunkSectionPos origin, @Nullable EntityFilter entityFilter, int chunksPerTick) {
+        return captureAsync(world, pos1, pos2, origin, entityFilter, null, chunksPerTick);
+    }
+
+    /**
+     * Capture a game world from an MC world over the course of several ticks.
+     * 
+     * @param world         Minecraft world.
+     * @param pos1          One end of the bounding box (world space).
+     * @param pos2          Other end of the bounding box (world space).
+     * @param origin        Chunk section pos to use as the origin.
+     * @param entityFilter  Entity filter to use.
+     * @param options       Options deciding which sections to keep.
+     *                      <code>null</code> keeps all of them.
+     * @param chunksPerTick Maximum number of chunk columns to copy per tick.
+     * @return The capture job.
+     * @see #captureAsync(ServerWorld, ChunkSectionPos, ChunkSectionPos,
+     *      ChunkSectionPos, EntityFilter, int)
+     */
+    public static MapCaptureJob captureAsync(ServerWorld world, ChunkSectionPos pos1, ChunkSectionPos pos2,
+            @Nullable ChunkSectionPos origin, @Nullable EntityFilter entityFilter, @Nullable CaptureOptions options,
+            int chunksPerTick) {
+        MapCaptureJob job = new MapCaptureJob(world, min(pos1, pos2, ChunkSectionPos::from),
+                max(pos1, pos2, ChunkSectionPos::from), origin != null ? origin : ChunkSectionPos.from(0, 0, 0),
+                entityFilter, chunksPerTick).setOptions(options);
+        return TickScheduler.get(world.getServer()).submit(job);
+    }
+
+    /**
+     * Remove all the outer layers of a map that only contain unoccupied
+     * sections, as decided by {@link CaptureOptions#isOccupied}.
+     * 
+     * @param map     Map to trim.
+     * @param options Capture options to use.
+     * @return The number of sections that were removed.
+     */
+    public static int trimBounds(GameMap map, CaptureOptions options) {
+        Map<ChunkSectionPos, GameChunk> chunks = map.getChunks();
+
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        int maxZ = Integer.MIN_VALUE;
+
+        for (var entry : chunks.entrySet()) {
+            if (!options.isOccupied(entry.getValue()))
+                continue;
+
+            ChunkSectionPos pos = entry.getKey();
+            minX = Math.min(minX, pos.getX());
+            minY = Math.min(minY, pos.getY());
+            minZ = Math.min(minZ, pos.getZ());
+            maxX = Math.max(maxX, pos.getX());
+            maxY = Math.max(maxY, pos.getY());
+            maxZ = Math.max(maxZ, pos.getZ());
+        }
+
+        int size = chunks.size();
+        // If nothing is occupied, minX > maxX and every section is removed.
+        ChunkSectionPos min = ChunkSectionPos.from(minX, minY, minZ);
+        ChunkSectionPos max = ChunkSectionPos.from(maxX, maxY, maxZ);
+        chunks.keySet().removeIf(pos -> !boxContains(min, max, pos));
+
+        return size - chunks.size();
+    }
+
+    private static void logDropped(int droppedSections) {
+        if (droppedSections > 0) {
+            LogUtils.getLogger().info("Left {} unoccupied sections out of the captured map.", droppedSections);
+        }
+    }
+
+    /**
+     * Add a captured chunk column to a game map.
+     * 
+     * @param map                Map to add to.
+     * @param chunkPos           Position of the chunk that was captured.
+     * @param bottomSectionCoord Section Y of the chunk's first section.
+     * @param gameChunks         Captured sections, as returned by
+     *                           {@link #captureChunk}.
+     * @param origin             Chunk section pos to use as the origin.
+     */
+    static void putChunkColumn(GameMap map, ChunkPos chunkPos, int bottomSectionCoord, GameChunk[] gameChunks,
+            ChunkSectionPos origin) {
+        for (int i = 0; i < gameChunks.length; i++) {
+            if (gameChunks[i] == null)
+                continue;
+
+            ChunkSectionPos pos = ChunkSectionPos.from(
+                    chunkPos.x - origin.getX(),
+                    i + bottomSectionCoord - origin.getY(),
+                    chunkPos.z - origin.getZ());
+
+            map.putChunk(pos, gameChunks[i]);
+        }
+    }
+
+    /**
+     * Capture all the entities within a box.
+     * 
+     * @param world        World to capture from.
+     * @param blockMin     Minimum block pos of the box (inclusive).
+     * @param blockMax     Maximum block pos of the box (inclusive).
+     * @param originPos    Block pos to use as the origin.
+     * @param entityFilter Entity filter to use.
+     * @param map          Map to add the entities to.
+     */
+    static void captureEntities(ServerWorld world, BlockPos blockMin, BlockPos blockMax, BlockPos originPos,
+            @Nullable EntityFilter entityFilter, GameMap map) {
+        // Only query the entity sections that overlap the box.
+        Box box = new Box(blockMin.getX(), blockMin.getY(), blockMin.getZ(),
+                blockMax.getX() + 1, blockMax.getY() + 1, blockMax.getZ() + 1);
+
+        for (Entity ent : world.getOtherEntities(null, box,
+                e -> boxContains(blockMin, blockMax, e.getBlockPos()))) {
+            Entity filtered;
+            if (entityFilter != null) {
+                filtered = entityFilter.apply(ent, map);
+            } else {
+                filtered = ent;
+            }
+            
+            if (filtered == null || filtered instanceof PlayerEntity)
+                continue;
+
+            map.addEntity(GameMapEntity.fromEntity(
+                    ent.getPos().subtract(originPos.getX(), originPos.getY(), originPos.getZ()), ent));
+        }
     }
 
     /**
@@ -116,28 +372,26 @@ public class WorldAlignedMapCapture {
      *         chunk Y from index. Some elements may be null.
      */
     public static GameChunk[] captureChunk(Chunk chunk, Registry<Biome> biomeRegistry) {
-        ChunkSection[] sections = chunk.getSectionArray();
-        GameChunk[] gameChunks = new GameChunk[sections.length];
-
-        for (int i = 0; i < sections.length; i++) {
-            gameChunks[i] = captureChunkSection(sections[i], biomeRegistry);
-        }
-
-        for (BlockPos pos : chunk.getBlockEntityPositions()) {
-            BlockEntity ent = chunk.getBlockEntity(pos);
-
-            int index = chunk.getSectionIndex(pos.getY());
-            if (index < 0 || index >= gameChunks.length) continue;
-
-            gameChunks[index].putBlockEntity(ent);
-        }
+        return captureChunk(chunk, biomeRegistry, null);
+    }
 
-        return gameChunks;
+    /**
+     * Capture a set of game chunks from an MC chunk, leaving out the sections
+     * that the capture options skip.
+     * 
+     * @param chunk         Chunk to capture.
+     * @param biomeRegistry Biome registry of the world.
+     * @param options       Capture options to use.
+     * @return An array of all captured game chunks. Skipped sections are null.
+     */
+    public static GameChunk[] captureChunk(Chunk chunk, Registry<Biome> biomeRegistry,
+            @Nullable CaptureOptions options) {
+        return ChunkSnapshot.of(chunk, options).build(biomeRegistry);
     }
 
-    private static GameChunk captureChunkSection(ChunkSection chunkSection, Registry<Biome> biomeRegistry) {
+    static GameChunk captureChunkSection(ChunkSection chunkSection, Registry<Biome> biomeRegistry) {
         return new GameChunk(chunkSection.getBlockStateContainer().copy(),
-                chunkSection.getBiomeContainer().slice().copy(), biomeRegistry);
+                ((PalettedContainer<RegistryEntry<Biome>>) chunkSection.getBiomeContainer()).copy(), biomeRegistry);
     }
 
     private static interface TriIntFunction<T> {
@@ -159,7 +413,7 @@ public class WorldAlignedMapCapture {
                 Math.max(a.getZ(), b.getZ()));
     }
 
-    private static boolean boxContains(BlockPos minPos, BlockPos maxPos, BlockPos pos) {
+    private static boolean boxContains(Vec3i minPos, Vec3i maxPos, Vec3i pos) {
         return minPos.getX() <= pos.getX() && pos.getX() <= maxPos.getX()
             && minPos.getY() <= pos.getY() && pos.getY() <= maxPos.getY()
             && minPos.getZ() <= pos.getZ() && pos.getZ() <= maxPos.getZ();
@@ -0,0 +1,397 @@
+package net.betrayd.gamemaps.world_interface;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.Nullable;
+
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.longs.Long2BooleanMap;
+import it.unimi.dsi.fastutil.longs.Long2BooleanOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.shorts.ShortOpenHashSet;
+import it.unimi.dsi.fastutil.shorts.ShortSet;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.network.listener.ClientPlayPacketListener;
+import net.minecraft.network.packet.Packet;
+import net.minecraft.network.packet.s2c.play.ChunkDeltaUpdateS2CPacket;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerChunkManager;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.Heightmap;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.PalettedContainer;
+import net.minecraft.world.chunk.WorldChunk;
+import net.minecraft.world.chunk.light.ChunkLightProvider;
+import net.minecraft.world.chunk.light.LightingProvider;
+
+/**
+ * Writes blocks straight into the sections of loaded chunks, bypassing
+ * {@link net.minecraft.world.World#setBlockState}. Blocks are not updated and
+ * don't get <code>onBlockAdded</code> or <code>onStateReplaced</code>, like
+ * when a structure is placed. Heightmaps, points of interest and the world's
+ * {@link DirtySectionTracker} are kept up to date as blocks are written;
+ * lighting and clients are updated in one batch when {@link #flush()} is
+ * called.
+ * <p>
+ * Must only be used from the server thread.
+ */
+public class WorldSectionWriter {
+
+    /**
+     * Chunks with at least this many changed blocks are sent to clients
+     * directly as one delta update per section, rather than being marked for
+     * update block by block. Light follows through the regular light updates.
+     */
+    public static final int DIRECT_SEND_THRESHOLD = 64;
+
+    private static class TouchedChunk {
+        final WorldChunk chunk;
+        final LongList changedBlocks = new LongArrayList();
+
+        TouchedChunk(WorldChunk chunk) {
+            this.chunk = chunk;
+        }
+    }
+
+    private final ServerWorld world;
+    private final LightingProvider lightingProvider;
+
+    private final Long2ObjectMap<TouchedChunk> touchedChunks = new Long2ObjectOpenHashMap<>();
+    // Whether each touched section was empty before it was first written to.
+    private final Long2BooleanMap sectionsWereEmpty = new Long2BooleanOpenHashMap();
+    private final LongList lightChecks = new LongArrayList();
+
+    // Reused by sectionMatches.
+    private final PacketByteBuf compareBuf1 = new PacketByteBuf(Unpooled.buffer());
+    private final PacketByteBuf compareBuf2 = new PacketByteBuf(Unpooled.buffer());
+
+    @Nullable
+    private TouchedChunk lastChunk;
+    private int changedBlocks;
+
+    public WorldSectionWriter(ServerWorld world) {
+        this.world = world;
+        this.lightingProvider = world.getChunkManager().getLightingProvider();
+    }
+
+    public ServerWorld getWorld() {
+        return world;
+    }
+
+    /**
+     * Get the number of blocks that were changed since the last flush.
+     *
+     * @return Changed block count.
+     */
+    public int getChangedBlocks() {
+        return changedBlocks;
+    }
+
+    public boolean setBlockState(BlockPos pos, BlockState state) {
+        return setBlockState(pos.getX(), pos.getY(), pos.getZ(), state);
+    }
+
+    /**
+     * Write a block state into the world, loading its chunk if needed.
+     *
+     * @param x     Block X.
+     * @param y     Block Y.
+     * @param z     Block Z.
+     * @param state State to write.
+     * @return <code>true</code> if the block changed; <code>false</code> if it
+     *         already had that state or is outside the world.
+     */
+    public boolean setBlockState(int x, int y, int z, BlockState state) {
+        TouchedChunk touched = getChunk(x >> 4, z >> 4);
+        WorldChunk chunk = touched.chunk;
+
+        int sectionIndex = chunk.getSectionIndex(y);
+        if (sectionIndex < 0 || sectionIndex >= chunk.countVerticalSections())
+            return false;
+
+        ChunkSection section = chunk.getSection(sectionIndex);
+        int localX = x & 0xF;
+        int localY = y & 0xF;
+        int localZ = z & 0xF;
+
+        BlockState oldState = section.getBlockState(localX, localY, localZ);
+        if (oldState == state)
+            return false;
+
+        long sectionPos = ChunkSectionPos.asLong(x >> 4, y >> 4, z >> 4);
+        if (!sectionsWereEmpty.containsKey(sectionPos))
+            sectionsWereEmpty.put(sectionPos, section.isEmpty());
+
+        BlockPos pos = new BlockPos(x, y, z);
+        DirtySectionTracker.beforeBlockChange(world, pos);
+        // Same as WorldChunk#setBlockState
+        if (oldState.hasBlockEntity() && !oldState.isOf(state.getBlock()))
+            chunk.removeBlockEntity(pos);
+
+        section.setBlockState(localX, localY, localZ, state);
+
+        for (Map.Entry<Heightmap.Type, Heightmap> heightmap : chunk.getHeightmaps()) {
+            heightmap.getValue().trackUpdate(localX, y, localZ, state);
+        }
+
+        if (state.hasBlockEntity())
+            chunk.getBlockEntity(pos, WorldChunk.CreationType.IMMEDIATE);
+
+        if (ChunkLightProvider.needsLightUpdate(chunk, pos, oldState, state))
+            lightChecks.add(pos.asLong());
+
+        world.onBlockChanged(pos, oldState, state);
+        DirtySectionTracker.markDirty(world, pos);
+        ChunkPacketCache.invalidate(chunk);
+
+        touched.changedBlocks.add(pos.asLong());
+        changedBlocks++;
+        return true;
+    }
+
+    /**
+     * Replace all blocks of a section at once, loading its chunk if needed. The
+     * section's block container is swapped for a copy of the given one, and
+     * heightmaps, points of interest and block entities are only updated for
+     * blocks that actually changed.
+     *
+     * @param sectionPos Section to write.
+     * @param blocks     Blocks to write. Copied, so it may be reused.
+     * @return The number of blocks that changed.
+     */
+    public int setSection(ChunkSectionPos sectionPos, PalettedContainer<BlockState> blocks) {
+        TouchedChunk touched = getChunk(sectionPos.getX(), sectionPos.getZ());
+        WorldChunk chunk = touched.chunk;
+
+        int sectionIndex = chunk.sectionCoordToIndex(sectionPos.getY());
+        if (sectionIndex < 0 || sectionIndex >= chunk.countVerticalSections())
+            return 0;
+
+        ChunkSection section = chunk.getSection(sectionIndex);
+        PalettedContainer<BlockState> oldBlocks = section.getBlockStateContainer();
+
+        // Indexed as y << 8 | z << 4 | x.
+        BitSet changedMask = new BitSet(4096);
+        for (int y = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    if (oldBlocks.get(x, y, z) != blocks.get(x, y, z))
+                        changedMask.set(y << 8 | z << 4 | x);
+                }
+            }
+        }
+        if (changedMask.isEmpty())
+            return 0;
+
+        int minX = sectionPos.getMinX();
+        int minY = sectionPos.getMinY();
+        int minZ = sectionPos.getMinZ();
+        BlockPos.Mutable pos = new BlockPos.Mutable(minX, minY, minZ);
+
+        long longPos = sectionPos.asLong();
+        if (!sectionsWereEmpty.containsKey(longPos))
+            sectionsWereEmpty.put(longPos, section.isEmpty());
+        DirtySectionTracker.beforeBlockChange(world, pos);
+
+        chunk.getSectionArray()[sectionIndex] = new ChunkSection(blocks.copy(), section.getBiomeContainer());
+
+        // Top down, so each heightmap column only has to be scanned once.
+        for (int i = changedMask.previousSetBit(4095); i >= 0; i = changedMask.previousSetBit(i - 1)) {
+            int x = i & 0xF;
+            int y = i >> 8;
+            int z = (i >> 4) & 0xF;
+            BlockState oldState = oldBlocks.get(x, y, z);
+            BlockState state = blocks.get(x, y, z);
+            pos.set(minX + x, minY + y, minZ + z);
+
+            if (oldState.hasBlockEntity() && !oldState.isOf(state.getBlock()))
+                chunk.removeBlockEntity(pos.toImmutable());
+
+            for (Map.Entry<Heightmap.Type, Heightmap> heightmap : chunk.getHeightmaps()) {
+                heightmap.getValue().trackUpdate(x, minY + y, z, state);
+            }
+
+            if (state.hasBlockEntity())
+                chunk.getBlockEntity(pos.toImmutable(), WorldChunk.CreationType.IMMEDIATE);
+
+            if (ChunkLightProvider.needsLightUpdate(chunk, pos, oldState, state))
+                lightChecks.add(pos.asLong());
+
+            world.onBlockChanged(pos, oldState, state);
+            DirtySectionTracker.markDirty(world, pos);
+            touched.changedBlocks.add(pos.asLong());
+        }
+        ChunkPacketCache.invalidate(chunk);
+
+        int changed = changedMask.cardinality();
+        changedBlocks += changed;
+        return changed;
+    }
+
+    /**
+     * Check if a section of the world contains exactly the same blocks as a
+     * container, by comparing their palettes and packed data. Containers with
+     * the same blocks but a different palette layout are reported as different.
+     *
+     * @param sectionPos Section to check.
+     * @param blocks     Blocks to compare with.
+     * @return <code>true</code> if the section matches; <code>false</code> if it
+     *         may not, or is outside the world.
+     */
+    public boolean sectionMatches(ChunkSectionPos sectionPos, PalettedContainer<BlockState> blocks) {
+        WorldChunk chunk = getChunk(sectionPos.getX(), sectionPos.getZ()).chunk;
+        int sectionIndex = chunk.sectionCoordToIndex(sectionPos.getY());
+        if (sectionIndex < 0 || sectionIndex >= chunk.countVerticalSections())
+            return false;
+
+        PalettedContainer<BlockState> worldBlocks = chunk.getSection(sectionIndex).getBlockStateContainer();
+        if (worldBlocks.getPacketSize() != blocks.getPacketSize())
+            return false;
+
+        compareBuf1.clear();
+        compareBuf2.clear();
+        worldBlocks.writePacket(compareBuf1);
+        blocks.writePacket(compareBuf2);
+        return ByteBufUtil.equals(compareBuf1, compareBuf2);
+    }
+
+    /**
+     * Get a block entity from the world, loading its chunk if needed.
+     *
+     * @param pos Position of the block entity.
+     * @return The block entity, or <code>null</code> if there is none.
+     */
+    @Nullable
+    public BlockEntity getBlockEntity(BlockPos pos) {
+        return getChunk(pos.getX() >> 4, pos.getZ() >> 4).chunk.getBlockEntity(pos);
+    }
+
+    /**
+     * Load a block entity into the world from NBT. The block state must have
+     * been written first.
+     *
+     * @param pos Position of the block entity.
+     * @param nbt Block entity NBT. Its position is ignored.
+     * @return The block entity, or <code>null</code> if it couldn't be created.
+     */
+    @Nullable
+    public BlockEntity setBlockEntity(BlockPos pos, NbtCompound nbt) {
+        TouchedChunk touched = getChunk(pos.getX() >> 4, pos.getZ() >> 4);
+        BlockEntity ent = BlockEntity.createFromNbt(pos, touched.chunk.getBlockState(pos), nbt);
+        if (ent == null)
+            return null;
+
+        touched.chunk.addBlockEntity(ent);
+        touched.changedBlocks.add(pos.asLong());
+        return ent;
+    }
+
+    /**
+     * Update lighting and send all changes to clients.
+     *
+     * @return The number of blocks that were changed since the last flush.
+     */
+    public int flush() {
+        // Section status has to be known to the light engine before its blocks are checked.
+        for (Long2BooleanMap.Entry entry : sectionsWereEmpty.long2BooleanEntrySet()) {
+            ChunkSectionPos sectionPos = ChunkSectionPos.from(entry.getLongKey());
+            WorldChunk chunk = touchedChunks.get(ChunkPos.toLong(sectionPos.getX(), sectionPos.getZ())).chunk;
+            boolean isEmpty = chunk.getSection(chunk.sectionCoordToIndex(sectionPos.getY())).isEmpty();
+            if (isEmpty != entry.getBooleanValue())
+                lightingProvider.setSectionStatus(sectionPos, isEmpty);
+        }
+
+        for (int i = 0; i < lightChecks.size(); i++) {
+            lightingProvider.checkBlock(BlockPos.fromLong(lightChecks.getLong(i)));
+        }
+
+        ServerChunkManager chunkManager = world.getChunkManager();
+        for (TouchedChunk touched : touchedChunks.values()) {
+            touched.chunk.setNeedsSaving(true);
+
+            if (touched.changedBlocks.size() < DIRECT_SEND_THRESHOLD) {
+                // Let the chunk holder batch these into delta updates.
+                for (int i = 0; i < touched.changedBlocks.size(); i++) {
+                    chunkManager.markForUpdate(BlockPos.fromLong(touched.changedBlocks.getLong(i)));
+                }
+            } else {
+                sendSectionUpdates(touched);
+            }
+        }
+
+        int changed = changedBlocks;
+        touchedChunks.clear();
+        sectionsWereEmpty.clear();
+        lightChecks.clear();
+        lastChunk = null;
+        changedBlocks = 0;
+        return changed;
+    }
+
+    private void sendSectionUpdates(TouchedChunk touched) {
+        WorldChunk chunk = touched.chunk;
+        List<ServerPlayerEntity> players = world.getChunkManager().threadedAnvilChunkStorage
+                .getPlayersWatchingChunk(chunk.getPos(), false);
+        if (players.isEmpty())
+            return;
+
+        // Not a full chunk packet, as the light engine hasn't caught up with the changes yet.
+        Long2ObjectMap<ShortSet> sections = new Long2ObjectOpenHashMap<>();
+        LongSet blockEntities = new LongOpenHashSet();
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+        for (int i = 0; i < touched.changedBlocks.size(); i++) {
+            long l = touched.changedBlocks.getLong(i);
+            pos.set(l);
+            sections.computeIfAbsent(ChunkSectionPos.fromBlockPos(l), k -> new ShortOpenHashSet())
+                    .add(ChunkSectionPos.packLocal(pos));
+            if (chunk.getBlockState(pos).hasBlockEntity())
+                blockEntities.add(l);
+        }
+
+        for (Long2ObjectMap.Entry<ShortSet> entry : sections.long2ObjectEntrySet()) {
+            ChunkSectionPos sectionPos = ChunkSectionPos.from(entry.getLongKey());
+            ChunkSection section = chunk.getSection(chunk.sectionCoordToIndex(sectionPos.getY()));
+            sendToAll(players, new ChunkDeltaUpdateS2CPacket(sectionPos, entry.getValue(), section));
+        }
+
+        LongIterator iterator = blockEntities.iterator();
+        while (iterator.hasNext()) {
+            BlockEntity ent = chunk.getBlockEntity(BlockPos.fromLong(iterator.nextLong()));
+            Packet<ClientPlayPacketListener> packet = ent != null ? ent.toUpdatePacket() : null;
+            if (packet != null)
+                sendToAll(players, packet);
+        }
+    }
+
+    private static void sendToAll(List<ServerPlayerEntity> players, Packet<?> packet) {
+        for (ServerPlayerEntity player : players) {
+            player.networkHandler.sendPacket(packet);
+        }
+    }
+
+    private TouchedChunk getChunk(int chunkX, int chunkZ) {
+        TouchedChunk touched = lastChunk;
+        if (touched != null && touched.chunk.getPos().x == chunkX && touched.chunk.getPos().z == chunkZ)
+            return touched;
+
+        touched = touchedChunks.computeIfAbsent(ChunkPos.toLong(chunkX, chunkZ),
+                l -> new TouchedChunk(world.getChunk(chunkX, chunkZ)));
+        lastChunk = touched;
+        return touched;
+    }
+}
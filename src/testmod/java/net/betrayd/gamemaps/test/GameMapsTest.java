@@ -2,12 +2,14 @@ package net.betrayd.gamemaps.test;
 
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
 
 public class GameMapsTest implements ModInitializer {
 
     @Override
     public void onInitialize() {
         CommandRegistrationCallback.EVENT.register(MapTestCommands::register);
+        ServerLifecycleEvents.SERVER_STARTED.register(MapTestCommands::startPreloader);
     }
     
 }
@@ -3,15 +3,17 @@ package net.betrayd.gamemaps.test;
 import static net.minecraft.server.command.CommandManager.argument;
 import static net.minecraft.server.command.CommandManager.literal;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
 import java.util.WeakHashMap;
 
 import com.mojang.brigadier.CommandDispatcher;
@@ -22,15 +24,34 @@ import com.mojang.brigadier.exceptions.SimpleCommandExceptionType;
 import com.mojang.logging.LogUtils;
 
 import net.betrayd.gamemaps.GameMap;
+import net.betrayd.gamemaps.GameMapTransform;
+import net.betrayd.gamemaps.metrics.MetricsRecorder;
+import net.betrayd.gamemaps.serialization.AnvilMapExporter;
+import net.betrayd.gamemaps.serialization.GameMapCache;
 import net.betrayd.gamemaps.serialization.GameMapDeserializer;
+import net.betrayd.gamemaps.serialization.GameMapPreloader;
 import net.betrayd.gamemaps.serialization.GameMapSerializer;
+import net.betrayd.gamemaps.serialization.IncrementalMapSerializer;
+import net.betrayd.gamemaps.world_interface.CaptureOptions;
+import net.betrayd.gamemaps.world_interface.DirtySectionTracker;
 import net.betrayd.gamemaps.world_interface.GameMapCapture;
 import net.betrayd.gamemaps.world_interface.GameMapChunkGenerator;
+import net.betrayd.gamemaps.world_interface.GameMapIndex;
 import net.betrayd.gamemaps.world_interface.GameMapPlacer;
+import net.betrayd.gamemaps.world_interface.MapCaptureJob;
+import net.betrayd.gamemaps.world_interface.MapPlacementJob;
+import net.betrayd.gamemaps.world_interface.MapPregenerationJob;
+import net.betrayd.gamemaps.world_interface.RegionSnapshot;
+import net.betrayd.gamemaps.world_interface.TemplateChunkStore;
+import net.betrayd.gamemaps.world_interface.TiledGameMapChunkGenerator;
+import net.betrayd.gamemaps.world_interface.TrackedRegion;
+import net.betrayd.gamemaps.world_interface.VoidChunkGenerator;
 import net.betrayd.gamemaps.world_interface.WorldAlignedMapCapture;
 import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.command.CommandRegistryAccess;
+import net.minecraft.command.argument.BlockMirrorArgumentType;
 import net.minecraft.command.argument.BlockPosArgumentType;
+import net.minecraft.command.argument.BlockRotationArgumentType;
 import net.minecraft.command.argument.IdentifierArgumentType;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.passive.ChickenEntity;
@@ -38,17 +59,26 @@ import net.minecraft.nbt.NbtCompound;
 import net.minecraft.nbt.NbtElement;
 import net.minecraft.nbt.NbtHelper;
 import net.minecraft.nbt.NbtList;
+import net.minecraft.registry.RegistryKey;
 import net.minecraft.registry.RegistryKeys;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.command.CommandManager.RegistrationEnvironment;
 import net.minecraft.server.command.ServerCommandSource;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.text.Text;
+import net.minecraft.util.BlockMirror;
+import net.minecraft.util.BlockRotation;
 import net.minecraft.util.Identifier;
+import net.minecraft.util.Util;
+import net.minecraft.util.WorldSavePath;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkSectionPos;
 import net.minecraft.util.math.Vec2f;
 import net.minecraft.util.math.Vec3d;
+import net.minecraft.util.math.Vec3i;
+import net.minecraft.world.HeightLimitView;
+import net.minecraft.world.biome.BiomeKeys;
+import net.minecraft.world.dimension.DimensionType;
 import xyz.nucleoid.fantasy.Fantasy;
 import xyz.nucleoid.fantasy.RuntimeWorldConfig;
 import xyz.nucleoid.fantasy.RuntimeWorldHandle;
@@ -56,8 +86,25 @@ import xyz.nucleoid.fantasy.RuntimeWorldHandle;
 public class MapTestCommands {
 
     private static Map<MinecraftServer, Map<Identifier, RuntimeWorldHandle>> worlds = new WeakHashMap<>();
+    private static Map<MinecraftServer, GameMapCache> caches = new WeakHashMap<>();
+    private static Map<MinecraftServer, GameMapPreloader> preloaders = new WeakHashMap<>();
+    private static Map<MinecraftServer, Map<Identifier, TrackedExport>> trackedExports = new WeakHashMap<>();
+    private static Map<MinecraftServer, RegionSnapshot> snapshots = new WeakHashMap<>();
+    private static Map<MinecraftServer, TemplateChunkStore> templateStores = new WeakHashMap<>();
+
+    // Installed when commands are first registered, so it sees everything after startup.
+    private static final MetricsRecorder metrics = MetricsRecorder.install();
+
+    private static record TrackedExport(TrackedRegion region, GameMap map, IncrementalMapSerializer serializer) {
+    }
+
+    private static final long CACHE_SIZE = 256 * 1024 * 1024;
+    private static final long TEMPLATE_STORE_SIZE = 128 * 1024 * 1024;
+    private static final int CHUNKS_PER_TICK = 8;
 
     private static final SimpleCommandExceptionType MAP_NOT_OPEN = new SimpleCommandExceptionType(Text.literal("The map world is not open."));
+    private static final SimpleCommandExceptionType MAP_NOT_TRACKED = new SimpleCommandExceptionType(Text.literal("The map is not being tracked."));
+    private static final SimpleCommandExceptionType NO_SNAPSHOT = new SimpleCommandExceptionType(Text.literal("No snapshot has been taken."));
     private static final SimpleCommandExceptionType ALREADY_OPEN = new SimpleCommandExceptionType(Text.literal("Map is already open!"));
 
     public static void register(CommandDispatcher<ServerCommandSource> dispatcher, CommandRegistryAccess registryAccess,
@@ -82,12 +129,34 @@ public class MapTestCommands {
         ).then(
             literal("place").then(
                 argument("pos", BlockPosArgumentType.blockPos()).then(
-                    argument("id", IdentifierArgumentType.identifier()).executes(MapTestCommands::place)
+                    argument("id", IdentifierArgumentType.identifier()).executes(MapTestCommands::place).then(
+                        argument("rotation", BlockRotationArgumentType.blockRotation()).executes(MapTestCommands::place).then(
+                            argument("mirror", BlockMirrorArgumentType.blockMirror()).executes(MapTestCommands::place)
+                        )
+                    )
+                )
+            ).then(
+                literal("reset").then(
+                    argument("pos", BlockPosArgumentType.blockPos()).then(
+                        argument("id", IdentifierArgumentType.identifier()).executes(MapTestCommands::reset)
+                    )
+                )
+            ).then(
+                literal("async").then(
+                    argument("pos", BlockPosArgumentType.blockPos()).then(
+                        argument("id", IdentifierArgumentType.identifier()).executes(MapTestCommands::placeAsync)
+                    )
                 )
             )
         ).then(
             literal("open").then(
-                argument("id", IdentifierArgumentType.identifier()).executes(MapTestCommands::open)
+                argument("id", IdentifierArgumentType.identifier()).executes(MapTestCommands::open).then(
+                    literal("tiled").then(
+                        argument("tiles", IntegerArgumentType.integer(1)).then(
+                            argument("spacing", IntegerArgumentType.integer(1)).executes(MapTestCommands::open)
+                        )
+                    )
+                )
             )
         ).then(
             literal("join").then(
@@ -97,6 +166,36 @@ public class MapTestCommands {
             literal("close").then(
                 argument("id", IdentifierArgumentType.identifier()).executes(MapTestCommands::close)
             )
+        ).then(
+            literal("pregen").then(
+                argument("id", IdentifierArgumentType.identifier()).executes(MapTestCommands::pregen)
+            )
+        ).then(
+            literal("track").then(
+                argument("radius", IntegerArgumentType.integer(0)).then(
+                    argument("id", IdentifierArgumentType.identifier()).executes(MapTestCommands::track)
+                )
+            )
+        ).then(
+            literal("update").then(
+                argument("id", IdentifierArgumentType.identifier()).executes(MapTestCommands::update)
+            )
+        ).then(
+            literal("snapshot").then(
+                argument("radius", IntegerArgumentType.integer(0)).executes(MapTestCommands::snapshot)
+            )
+        ).then(
+            literal("rollback").executes(MapTestCommands::rollback)
+        ).then(
+            literal("preload").executes(MapTestCommands::preloadStatus)
+        ).then(
+            literal("metrics").executes(MapTestCommands::metrics).then(
+                literal("reset").executes(MapTestCommands::resetMetrics)
+            )
+        ).then(
+            literal("bench").then(
+                argument("id", IdentifierArgumentType.identifier()).executes(MapTestCommands::bench)
+            )
         ));
     }
 
@@ -140,28 +239,133 @@ public class MapTestCommands {
         ChunkSectionPos maxPos = ChunkSectionPos.from(centerPos.getX() + radius + 1, maxY,
                 centerPos.getZ() + radius + 1);
 
-        GameMap map = WorldAlignedMapCapture.capture(context.getSource().getWorld(), minPos, maxPos, null,
-                MapTestCommands::processChickens);
-
+        ServerCommandSource source = context.getSource();
         Path path = idToPath(id);
 
-        try {
-            Files.createDirectories(path.getParent());
-            try(OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
-                new GameMapSerializer().serializeMap(map, out);
+        // The box spans the whole world height, so leave out the sky above the build.
+        CaptureOptions options = new CaptureOptions().setSkipEmptySections(true).setTrimBounds(true);
+
+        MapCaptureJob job = WorldAlignedMapCapture.captureAsync(source.getWorld(), minPos, maxPos, null,
+                MapTestCommands::processChickens, options, CHUNKS_PER_TICK);
+        job.getFuture().thenAcceptAsync(map -> {
+            try {
+                Files.createDirectories(path.getParent());
+                try(OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+                    new GameMapSerializer().serializeMap(map, out);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, Util.getIOWorkerExecutor()).whenCompleteAsync((v, e) -> {
+            if (e != null) {
+                LogUtils.getLogger().error("Error exporting map: " + id, e);
+                source.sendError(Text.literal("Error saving map to file. See console for details."));
+            } else {
+                source.sendFeedback(() -> Text.literal("Exported to " + path + " (left out "
+                        + job.getDroppedSections() + " empty sections)"), false);
             }
+        }, source.getServer());
 
-        } catch (IOException e) {
-            LogUtils.getLogger().error("Error exporting map: " + id, e);
-            throw new SimpleCommandExceptionType(Text.literal("Error saving map to file. See console for details."))
-                    .create();
-        }
+        return 1;
+    }
 
-        context.getSource().sendFeedback(() -> Text.literal("Exported to " + path), false);
+    private static int track(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
+        int radius = IntegerArgumentType.getInteger(context, "radius");
+        Identifier id = IdentifierArgumentType.getIdentifier(context, "id");
+        ServerCommandSource source = context.getSource();
+        ServerWorld world = source.getWorld();
+
+        ChunkSectionPos centerPos = ChunkSectionPos.from(source.getPosition());
+        ChunkSectionPos minPos = ChunkSectionPos.from(centerPos.getX() - radius,
+                ChunkSectionPos.getSectionCoord(world.getBottomY()), centerPos.getZ() - radius);
+        ChunkSectionPos maxPos = ChunkSectionPos.from(centerPos.getX() + radius + 1,
+                ChunkSectionPos.getSectionCoord(world.getTopY()), centerPos.getZ() + radius + 1);
+
+        TrackedExport old = getTrackedExports(source.getServer()).remove(id);
+        if (old != null)
+            old.region().close();
+
+        TrackedRegion region = DirtySectionTracker.get(world).track(minPos, maxPos, null,
+                MapTestCommands::processChickens,
+                new CaptureOptions().setSkipEmptySections(true).setCaptureLight(true));
+        TrackedExport export = new TrackedExport(region, region.capture(), new IncrementalMapSerializer());
+        getTrackedExports(source.getServer()).put(id, export);
+
+        writeTrackedExport(id, export);
+        source.sendFeedback(() -> Text.literal("Tracking changes to ").append(Text.of(id)), true);
+        return 1;
+    }
+
+    private static int update(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
+        Identifier id = IdentifierArgumentType.getIdentifier(context, "id");
+        TrackedExport export = getTrackedExports(context.getSource().getServer()).get(id);
+        if (export == null)
+            throw MAP_NOT_TRACKED.create();
+
+        long startTime = Util.getMeasuringTimeNano();
+        Set<ChunkSectionPos> changedSections = export.region().recapture(export.map());
+        // Light may have been updated in place.
+        export.serializer().invalidate(changedSections);
+        int changed = changedSections.size();
+        writeTrackedExport(id, export);
+        long time = (Util.getMeasuringTimeNano() - startTime) / 1_000_000;
+
+        context.getSource().sendFeedback(() -> Text.literal(
+                "Recaptured " + changed + " sections and saved " + id + " in " + time + "ms"), true);
+        return changed;
+    }
+
+    private static int snapshot(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
+        int radius = IntegerArgumentType.getInteger(context, "radius");
+        ServerCommandSource source = context.getSource();
+        ServerWorld world = source.getWorld();
+
+        ChunkSectionPos centerPos = ChunkSectionPos.from(source.getPosition());
+        ChunkSectionPos minPos = ChunkSectionPos.from(centerPos.getX() - radius,
+                ChunkSectionPos.getSectionCoord(world.getBottomY()), centerPos.getZ() - radius);
+        ChunkSectionPos maxPos = ChunkSectionPos.from(centerPos.getX() + radius + 1,
+                ChunkSectionPos.getSectionCoord(world.getTopY()), centerPos.getZ() + radius + 1);
 
+        RegionSnapshot old = snapshots.remove(source.getServer());
+        if (old != null)
+            old.close();
+
+        long startTime = Util.getMeasuringTimeNano();
+        snapshots.put(source.getServer(), DirtySectionTracker.get(world).snapshot(minPos, maxPos, true));
+        long time = (Util.getMeasuringTimeNano() - startTime) / 1_000_000;
+
+        source.sendFeedback(() -> Text.literal("Took snapshot in " + time + "ms"), true);
         return 1;
     }
 
+    private static int rollback(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
+        RegionSnapshot snapshot = snapshots.get(context.getSource().getServer());
+        if (snapshot == null)
+            throw NO_SNAPSHOT.create();
+
+        long startTime = Util.getMeasuringTimeNano();
+        int sections = snapshot.getModifiedSections().size();
+        int written = snapshot.restore();
+        long time = (Util.getMeasuringTimeNano() - startTime) / 1_000_000;
+
+        context.getSource().sendFeedback(() -> Text.literal(
+                "Restored " + sections + " sections (" + written + " blocks written) in " + time + "ms"), true);
+        return written;
+    }
+
+    private static void writeTrackedExport(Identifier id, TrackedExport export) throws CommandSyntaxException {
+        Path path = idToPath(id);
+        try {
+            Files.createDirectories(path.getParent());
+            try(BufferedOutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+                export.serializer().serializeMap(export.map(), out);
+            }
+        } catch (IOException e) {
+            LogUtils.getLogger().error("Error exporting map.", e);
+            throw new SimpleCommandExceptionType(Text.literal("Error exporting map. See console for details.")).create();
+        }
+    }
+
     /**
      * A silly method for testing entity filters
      */
@@ -196,18 +400,79 @@ public class MapTestCommands {
     private static int place(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
         BlockPos pos = BlockPosArgumentType.getBlockPos(context, "pos");
         Identifier id = IdentifierArgumentType.getIdentifier(context, "id");
+        BlockRotation rotation = hasArgument(context, "rotation")
+                ? BlockRotationArgumentType.getBlockRotation(context, "rotation")
+                : BlockRotation.NONE;
+        BlockMirror mirror = hasArgument(context, "mirror")
+                ? BlockMirrorArgumentType.getBlockMirror(context, "mirror")
+                : BlockMirror.NONE;
         Path path = idToPath(id);
         ServerWorld world = context.getSource().getWorld();
 
-        GameMapDeserializer deserializer = new GameMapDeserializer(world.getRegistryManager().get(RegistryKeys.BIOME));
-        try(BufferedInputStream in = new BufferedInputStream(Files.newInputStream(path))) {
-            GameMap map = deserializer.deserializeMap(in);
-            GameMapPlacer.placeGameMap(world, map, pos);
+        long time;
+        try {
+            GameMap map = getCache(context.getSource().getServer()).get(path);
+            long startTime = Util.getMeasuringTimeNano();
+            GameMapPlacer.placeGameMap(world, map, pos, GameMapTransform.of(mirror, rotation));
+            time = (Util.getMeasuringTimeNano() - startTime) / 1_000_000;
         } catch (Exception e) {
             LogUtils.getLogger().error("Error exporting map.", e);
             throw new SimpleCommandExceptionType(Text.literal("Error exporting map. See console for details.")).create();
         }
         
+        context.getSource().sendFeedback(() -> Text.literal("Placed " + id + " in " + time + "ms"), false);
+        return 1;
+    }
+
+    private static int reset(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
+        BlockPos pos = BlockPosArgumentType.getBlockPos(context, "pos");
+        Identifier id = IdentifierArgumentType.getIdentifier(context, "id");
+        Path path = idToPath(id);
+        ServerWorld world = context.getSource().getWorld();
+
+        long time;
+        int written;
+        try {
+            GameMap map = getCache(context.getSource().getServer()).get(path);
+            long startTime = Util.getMeasuringTimeNano();
+            written = GameMapPlacer.placeGameMapDiff(world, map, pos);
+            time = (Util.getMeasuringTimeNano() - startTime) / 1_000_000;
+        } catch (Exception e) {
+            LogUtils.getLogger().error("Error resetting map.", e);
+            throw new SimpleCommandExceptionType(Text.literal("Error resetting map. See console for details.")).create();
+        }
+
+        context.getSource().sendFeedback(() -> Text.literal("Reset " + id + " (" + written + " blocks written) in " + time + "ms"), false);
+        return 1;
+    }
+
+    private static int placeAsync(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
+        BlockPos pos = BlockPosArgumentType.getBlockPos(context, "pos");
+        Identifier id = IdentifierArgumentType.getIdentifier(context, "id");
+        ServerCommandSource source = context.getSource();
+
+        GameMap map;
+        try {
+            map = getCache(source.getServer()).get(idToPath(id));
+        } catch (Exception e) {
+            LogUtils.getLogger().error("Error loading map.", e);
+            throw new SimpleCommandExceptionType(Text.literal("Error loading map. See console for details.")).create();
+        }
+
+        long startTime = Util.getMeasuringTimeNano();
+        MapPlacementJob job = GameMapPlacer.placeGameMapAsync(source.getWorld(), map, pos,
+                MapPlacementJob.Order.NEAR_PLAYERS);
+        job.getFuture().whenComplete((v, e) -> {
+            if (e != null) {
+                LogUtils.getLogger().error("Error placing map: " + id, e);
+                source.sendError(Text.literal("Error placing map. See console for details."));
+            } else {
+                long time = (Util.getMeasuringTimeNano() - startTime) / 1_000_000;
+                source.sendFeedback(() -> Text.literal("Placed " + id + " (" + job.getChangedBlocks()
+                        + " blocks changed) in " + time + "ms"), false);
+            }
+        });
+
         return 1;
     }
 
@@ -219,24 +484,33 @@ public class MapTestCommands {
         }
 
         Path path = idToPath(id);
-        ServerWorld world = context.getSource().getWorld();
         
         GameMap map;
-        GameMapDeserializer deserializer = new GameMapDeserializer(world.getRegistryManager().get(RegistryKeys.BIOME));
-        // deserializer.getEntityFilters().add(ent -> {
-        //     ent.setId(EntityType.getId(EntityType.ARMOR_STAND));
-        //     return ent;
-        // });
-        try(BufferedInputStream in = new BufferedInputStream(Files.newInputStream(path))) {
-            map = deserializer.deserializeMap(in);
+        try {
+            map = getCache(context.getSource().getServer()).get(path);
         } catch (Exception e) {
             LogUtils.getLogger().error("Error opening map.", e);
             throw new SimpleCommandExceptionType(Text.literal("Error opening map. See console for details.")).create();
         }
 
+        GameMapChunkGenerator generator;
+        if (hasArgument(context, "tiles")) {
+            int tiles = IntegerArgumentType.getInteger(context, "tiles");
+            int spacing = IntegerArgumentType.getInteger(context, "spacing");
+            try {
+                generator = new TiledGameMapChunkGenerator(map, tiles, tiles, spacing);
+            } catch (IllegalArgumentException e) {
+                throw new SimpleCommandExceptionType(Text.literal(e.getMessage())).create();
+            }
+        } else {
+            generator = new GameMapChunkGenerator(map);
+        }
+        generator.setTemplateStore(templateStores.computeIfAbsent(context.getSource().getServer(),
+                s -> new TemplateChunkStore(TEMPLATE_STORE_SIZE)));
+
         RuntimeWorldConfig config = new RuntimeWorldConfig()
                 .setDimensionType(map.getMeta().getDimensionType())
-                .setGenerator(new GameMapChunkGenerator(map));
+                .setGenerator(generator);
 
         RuntimeWorldHandle runtimeWorld = Fantasy.get(context.getSource().getServer()).openTemporaryWorld(config);
         getWorlds(context.getSource().getServer()).put(id, runtimeWorld);
@@ -289,12 +563,172 @@ public class MapTestCommands {
 
         return 1;
     }
+
+    private static int pregen(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
+        Identifier id = IdentifierArgumentType.getIdentifier(context, "id");
+        ServerCommandSource source = context.getSource();
+
+        RuntimeWorldHandle world = getWorlds(source.getServer()).get(id);
+        if (world == null) {
+            throw MAP_NOT_OPEN.create();
+        }
+
+        // Tickets go away with the world when it's closed.
+        long startTime = Util.getMeasuringTimeNano();
+        MapPregenerationJob job = MapPregenerationJob.pregenerate(world.asWorld());
+        job.getFuture().whenComplete((v, e) -> {
+            if (e != null) {
+                LogUtils.getLogger().error("Error pregenerating map: " + id, e);
+                source.sendError(Text.literal("Error pregenerating map. See console for details."));
+            } else {
+                long time = (Util.getMeasuringTimeNano() - startTime) / 1_000_000;
+                source.sendFeedback(() -> Text.literal("Pregenerated " + job.getTotalChunks() + " chunks of " + id
+                        + " in " + time + "ms"), false);
+            }
+        });
+
+        return 1;
+    }
     
+    /**
+     * Compare the time-to-playable of a map opened through the chunk generator
+     * against one exported to Anvil region files first.
+     */
+    private static int bench(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
+        Identifier id = IdentifierArgumentType.getIdentifier(context, "id");
+        MinecraftServer server = context.getSource().getServer();
+
+        GameMap map;
+        try {
+            map = getCache(server).get(idToPath(id));
+        } catch (Exception e) {
+            LogUtils.getLogger().error("Error opening map.", e);
+            throw new SimpleCommandExceptionType(Text.literal("Error opening map. See console for details.")).create();
+        }
+
+        GameMapIndex index = GameMapIndex.of(map);
+        if (index.isEmpty()) {
+            throw new SimpleCommandExceptionType(Text.literal("Map is empty.")).create();
+        }
+
+        Fantasy fantasy = Fantasy.get(server);
+
+        long startTime = System.nanoTime();
+        RuntimeWorldHandle generatorWorld = fantasy.openTemporaryWorld(new RuntimeWorldConfig()
+                .setDimensionType(map.getMeta().getDimensionType())
+                .setGenerator(new GameMapChunkGenerator(map)));
+        loadAllChunks(generatorWorld.asWorld(), index);
+        long generatorTime = System.nanoTime() - startTime;
+        generatorWorld.delete();
+
+        Identifier worldId = new Identifier("game-maps-bench", id.getNamespace() + "/" + id.getPath());
+        Path dimensionDir = DimensionType.getSaveDirectory(RegistryKey.of(RegistryKeys.WORLD, worldId),
+                server.getSavePath(WorldSavePath.ROOT));
+        DimensionType dimensionType = server.getRegistryManager().get(RegistryKeys.DIMENSION_TYPE)
+                .getOrThrow(map.getMeta().getDimensionType());
+
+        startTime = System.nanoTime();
+        new AnvilMapExporter(HeightLimitView.create(dimensionType.minY(), dimensionType.height()), map.getBiomeRegistry())
+                .setSectionOffset(Vec3i.ZERO)
+                .export(map, dimensionDir, Util.getMainWorkerExecutor()).join();
+        long exportTime = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        RuntimeWorldHandle anvilWorld = fantasy.getOrOpenPersistentWorld(worldId, new RuntimeWorldConfig()
+                .setDimensionType(map.getMeta().getDimensionType())
+                .setGenerator(new VoidChunkGenerator(map.getBiomeRegistry().entryOf(BiomeKeys.THE_VOID))));
+        loadAllChunks(anvilWorld.asWorld(), index);
+        long anvilTime = System.nanoTime() - startTime;
+        anvilWorld.delete();
+
+        context.getSource().sendFeedback(() -> Text.literal(String.format(
+                "Generator: %d ms. Anvil: %d ms to load (+ %d ms to export).",
+                generatorTime / 1000000, anvilTime / 1000000, exportTime / 1000000)), false);
+        return 1;
+    }
+
+    private static void loadAllChunks(ServerWorld world, GameMapIndex index) {
+        for (int x = index.getMinX() >> 4; x <= index.getMaxX() >> 4; x++) {
+            for (int z = index.getMinZ() >> 4; z <= index.getMaxZ() >> 4; z++) {
+                world.getChunk(x, z);
+            }
+        }
+    }
+
+    private static int preloadStatus(CommandContext<ServerCommandSource> context) {
+        GameMapPreloader preloader = preloaders.get(context.getSource().getServer());
+        if (preloader == null) {
+            context.getSource().sendFeedback(() -> Text.literal("The preloader is not running."), false);
+            return 0;
+        }
+
+        GameMapPreloader.Progress progress = preloader.getProgress();
+        context.getSource().sendFeedback(() -> Text.literal(String.format("Preloaded %d/%d maps (%d failed, %d cancelled).",
+                progress.loaded(), progress.total(), progress.failed(), progress.cancelled())), false);
+
+        return progress.loaded();
+    }
+
+    private static int metrics(CommandContext<ServerCommandSource> context) {
+        SortedMap<String, Long> values = metrics.snapshot();
+        if (values.isEmpty()) {
+            context.getSource().sendFeedback(() -> Text.literal("No metrics recorded yet."), false);
+            return 0;
+        }
+
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            context.getSource().sendFeedback(() -> Text.literal(entry.getKey() + " = " + entry.getValue()), false);
+        }
+        return values.size();
+    }
+
+    private static int resetMetrics(CommandContext<ServerCommandSource> context) {
+        metrics.reset();
+        context.getSource().sendFeedback(() -> Text.literal("Reset metrics."), false);
+        return 1;
+    }
+
+    public static void startPreloader(MinecraftServer server) {
+        GameMapPreloader preloader = new GameMapPreloader(getCache(server), getMapsDir());
+        preloader.setMaxMaps(8);
+        preloaders.put(server, preloader);
+        preloader.start();
+    }
+
+    private static Path getMapsDir() {
+        return FabricLoader.getInstance().getGameDir().resolve("maps");
+    }
+
+    private static boolean hasArgument(CommandContext<ServerCommandSource> context, String name) {
+        try {
+            context.getArgument(name, Object.class);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
     private static Path idToPath(Identifier identifier) {
-        return FabricLoader.getInstance().getGameDir().resolve("maps").resolve(identifier.getNamespace()).resolve(identifier.getPath() + ".nbt");
+        return getMapsDir().resolve(identifier.getNamespace()).resolve(identifier.getPath() + ".nbt");
+    }
+
+    private static Map<Identifier, TrackedExport> getTrackedExports(MinecraftServer server) {
+        return trackedExports.computeIfAbsent(server, s -> new HashMap<>());
     }
 
     private static Map<Identifier, RuntimeWorldHandle> getWorlds(MinecraftServer server) {
         return worlds.computeIfAbsent(server, s -> new HashMap<>());
     }
+
+    private static GameMapCache getCache(MinecraftServer server) {
+        return caches.computeIfAbsent(server, s -> {
+            GameMapDeserializer deserializer = new GameMapDeserializer(
+                    s.getRegistryManager().get(RegistryKeys.BIOME));
+            // deserializer.getEntityFilters().add(ent -> {
+            //     ent.setId(EntityType.getId(EntityType.ARMOR_STAND));
+            //     return ent;
+            // });
+            return new GameMapCache(deserializer, CACHE_SIZE);
+        });
+    }
 }